@@ -0,0 +1,120 @@
+package benchmark;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import fields.Fields;
+
+/*
+ * A synthetic corpus of raw display records, generated from the values used by the transformer tests.
+ * The TYPICAL profile resembles what the scrapers send, LARGE adds long aggregated spec blobs as found on some retailer pages,
+ * and ADVERSARIAL adds very long values and near-miss values which make the regular expressions backtrack.
+ */
+public class RecordCorpus {
+    public enum Profile { TYPICAL, LARGE, ADVERSARIAL }
+    
+    private static final String[][] FIELD_VALUES = {
+        {Fields.BRAND, "mimo", "geek buying", "Acer", "ASUS", "dell"},
+        {Fields.SCREEN_SIZE, "27\"", "24.3 inches", "22in", "31.5 in"},
+        {Fields.RESOLUTION, "1600 x 1200", "1920 x 1200", "1920 x 1080", "2560x1440"},
+        {Fields.RESPONSE_TIME, "14ms", "4 ms", "5ms", "1 ms (MPRT)"},
+        {Fields.REFRESH_RATE, "144 hertz", "80 hz - 144 hz", "60 hertz", "75hz"},
+        {Fields.PANEL_TYPE, "mva", "va", "IPS panel", "TN"},
+        {Fields.ADAPTIVE_SYNC, "AMD Free-Sync", "G sync", "NVIDIA G-Sync supported", "none"},
+        {Fields.VGA, "1", "2", "no"},
+        {Fields.DVI, "yes", "no", "1"},
+        {Fields.HDMI, "3", "no", "2"},
+        {Fields.DISPLAY_PORT, "no", "yes, 2", "1"},
+        {Fields.VESA_MOUNT, "yes", "yes 100mm x 150mm", "100mm x 100mm"},
+        {Fields.ASPECT_RATIO, "16:9", "25:9", "21:9"},
+        {Fields.PIXEL_PITCH, "~0.233mm,0.0233cm,~0.0008ft", "~1.5890mm,0.0233cm,~0.0008ft"},
+        {Fields.PIXEL_DENSITY, "109ppi,42ppcm", "92ppi"},
+        {Fields.BRIGHTNESS, "400cd/m2", "455.50cd/m2", "250 cd/m2"},
+        {Fields.REMOVABLE_STAND, "yes", "no"},
+        {Fields.HEIGHT_ADJUSTMENT, "no", "true ~110mm,200cm,~5m", "yes"},
+        {Fields.PIVOT_ADJUSTMENT, "yes", "no"},
+        {Fields.SWIVEL_ADJUSTMENT, "yes", "no"},
+        {Fields.LEFT_SWIVEL, "-15 degrees", "-30 degrees"},
+        {Fields.RIGHT_SWIVEL, "+15 degrees", "+30 degrees"},
+        {Fields.TILT_ADJUSTMENT, "no", "yes"},
+        {Fields.FORWARD_TILT, "15*", "5*"},
+        {Fields.BACKWARD_TILT, "45deg", "20deg"},
+        {Fields.CURVATURE, "curved", "340cm", "1800R"},
+        {Fields.DISPLAY_AREA, "90.47%", "88.1%"},
+        {Fields.PRICE, "$150.40", "$899.99"}
+    };
+    private static final String[] CONNECTORS = {"dvi", "displayport 1.2", "d-sub", "hdmi 2.0", "usb-c", "audio out", "vga"};
+    private static final String[] ERGONOMICS = {"height-adjustable stand: 130mm", "tilt", "swivel", "pivot", "vesa 100 x 100",
+            "removable stand", "cable management"};
+    
+    private final List<byte[]> records;
+    
+    public RecordCorpus(int size, Profile profile, long seed) {
+        ObjectMapper objectMapper = new ObjectMapper();
+        Random random = new Random(seed);
+        this.records = new ArrayList<byte[]>(size);
+        
+        try {
+            for (int i = 0; i < size; i++) {
+                records.add(objectMapper.writeValueAsBytes(generateRecord(i, profile, random)));
+            }
+        } catch (Exception e) {
+            throw new IllegalStateException("Unable to generate the record corpus", e);
+        }
+    }
+    
+    public List<byte[]> getRecords() {
+        return records;
+    }
+    
+    public int size() {
+        return records.size();
+    }
+    
+    private static Map<String,String> generateRecord(int index, Profile profile, Random random) {
+        Map<String,String> record = new LinkedHashMap<String,String>();
+        record.put(Fields.CATEGORY, Fields.DISPLAY);
+        record.put(Fields.URL, "https://www.newegg.ca/Product/Product.aspx?Item=N82E1682"+String.format("%07d", index));
+        record.put(Fields.MODEL, "PH-"+random.nextInt(100000));
+        record.put(Fields.FOUNDTIME, String.valueOf(1500000000L + index));
+        
+        for (String[] fieldValues : FIELD_VALUES) {
+            if (random.nextInt(5) > 0) {
+                record.put(fieldValues[0], fieldValues[1 + random.nextInt(fieldValues.length - 1)]);
+            }
+        }
+        
+        int blobLines = profile == Profile.TYPICAL ? 4 : 100;
+        record.put(Fields.CONNECTORS, generateBlob(CONNECTORS, blobLines, random, true));
+        record.put(Fields.ERGONOMICS, generateBlob(ERGONOMICS, blobLines, random, false));
+        
+        if (profile == Profile.ADVERSARIAL) {
+            record.put(Fields.VESA_MOUNT, StringUtils.repeat("1 ", 2000)+"mm x");
+            record.put(Fields.HEIGHT_ADJUSTMENT, StringUtils.repeat("~", 1000)+StringUtils.repeat("1", 1000)+" m");
+            record.put(Fields.SCREEN_SIZE, StringUtils.repeat("24.3 ", 500)+"cm");
+            record.put(Fields.ERGONOMICS, record.get(Fields.ERGONOMICS).replace('\n', ' '));
+        }
+        return record;
+    }
+    
+    private static String generateBlob(String[] values, int lines, Random random, boolean counted) {
+        StringBuilder blob = new StringBuilder();
+        for (int line = 0; line < lines; line++) {
+            if (line > 0) {
+                blob.append(counted && random.nextBoolean() ? "," : "\n");
+            }
+            if (counted) {
+                blob.append(1 + random.nextInt(3)).append(" x ");
+            }
+            blob.append(values[random.nextInt(values.length)]);
+        }
+        return blob.toString();
+    }
+    }
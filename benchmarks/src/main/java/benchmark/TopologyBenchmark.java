@@ -0,0 +1,161 @@
+package benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+
+import org.apache.kafka.streams.StreamsConfig;
+import org.apache.kafka.test.ProcessorTopologyTestDriver;
+
+import batch.MappedLineReader;
+import config.KafkaConfig;
+import metrics.LatencyHistogram;
+import processor.ScyllaTopology;
+import settings.ScyllaSettings;
+import transformer.Transformer;
+import transformer.TransformerRegistry;
+
+/*
+ * Drives the whole processing topology in process with the Kafka Streams test driver, so that its throughput can be measured
+ * on a laptop or in CI without a broker. Records come from a generated corpus or from NDJSON files, and are fed one at a time,
+ * reading back the output of each record before the next so that the latency of every record through the topology is known.
+ * The topology is built from the same settings as the processor, so profiles and dedup apply as they would in production.
+ * With --no-cache the shared NormalizationCache is disabled, so that every value is normalized by the rules.
+ */
+public class TopologyBenchmark {
+    private static final String USAGE = "Usage: TopologyBenchmark [--records <count>] [--warmup <count>] [--profile TYPICAL|LARGE|ADVERSARIAL] [--no-cache] [<input file>...]";
+    
+    private final ProcessorTopologyTestDriver driver;
+    private final Set<String> acceptedTopics = new LinkedHashSet<String>();
+    private final Set<String> rejectedTopics = new LinkedHashSet<String>();
+    
+    public TopologyBenchmark(ScyllaSettings settings, TransformerRegistry registry) throws Exception {
+        Properties streamsProps = ScyllaTopology.streamsProperties(settings);
+        streamsProps.put(StreamsConfig.STATE_DIR_CONFIG, Files.createTempDirectory("scylla-benchmark").toString());
+        this.driver = new ProcessorTopologyTestDriver(new StreamsConfig(streamsProps), new ScyllaTopology(settings, registry).build());
+        
+        for (Transformer transformer : registry.getTransformers()) {
+            acceptedTopics.add(transformer.getSinkTopic());
+            rejectedTopics.add(transformer.getRejectedTopic());
+        }
+        rejectedTopics.add(KafkaConfig.DISPLAY_REJECTED_TOPIC);
+    }
+    
+    public static void main(String[] args) throws Exception {
+        int recordCount = 100000;
+        int warmupCount = 20000;
+        RecordCorpus.Profile profile = RecordCorpus.Profile.TYPICAL;
+        List<Path> inputs = new ArrayList<Path>();
+        
+        for (int i = 0; i < args.length; i++) {
+            if ("--records".equals(args[i]) && i + 1 < args.length) {
+                recordCount = Integer.parseInt(args[++i]);
+            } else if ("--warmup".equals(args[i]) && i + 1 < args.length) {
+                warmupCount = Integer.parseInt(args[++i]);
+            } else if ("--profile".equals(args[i]) && i + 1 < args.length) {
+                profile = RecordCorpus.Profile.valueOf(args[++i]);
+            } else if ("--no-cache".equals(args[i])) {
+                Transformer.getNormalizationCache().setEnabled(false);
+            } else if (args[i].startsWith("--")) {
+                System.err.println(USAGE);
+                System.exit(1);
+            } else {
+                inputs.add(Paths.get(args[i]));
+            }
+        }
+        
+        List<byte[]> records = inputs.isEmpty() ? new RecordCorpus(recordCount, profile, 42L).getRecords() : readRecords(inputs);
+        ScyllaSettings settings = ScyllaSettings.get();
+        TopologyBenchmark benchmark = new TopologyBenchmark(settings, TransformerRegistry.load(settings.get(ScyllaSettings.DEFAULT_CATEGORY)));
+        try {
+            benchmark.run(records, warmupCount);
+            System.out.println(benchmark.run(records, recordCount));
+        } finally {
+            benchmark.driver.close();
+        }
+    }
+    
+    private static List<byte[]> readRecords(List<Path> inputs) throws Exception {
+        List<byte[]> records = new ArrayList<byte[]>();
+        MappedLineReader reader = new MappedLineReader();
+        for (Path input : inputs) {
+            reader.forEachBatch(input, 65536, records::addAll);
+        }
+        return records;
+    }
+    
+    /*
+     * Here we feed the given number of records, cycling through the corpus, and measure each of them
+     */
+    public Result run(List<byte[]> records, int count) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        Result result = new Result();
+        
+        long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            long recordStart = System.nanoTime();
+            driver.process(KafkaConfig.DISPLAY_SOURCE_TOPIC, null, records.get(i % records.size()));
+            int accepted = drain(acceptedTopics);
+            int rejected = drain(rejectedTopics);
+            result.latency.recordSince(recordStart);
+            
+            result.accepted += accepted;
+            result.rejected += rejected;
+            if (accepted + rejected == 0) {
+                result.dropped++;
+            }
+        }
+        result.elapsedNanos = System.nanoTime() - start;
+        result.allocatedBytes = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+        result.count = count;
+        return result;
+    }
+    
+    private int drain(Set<String> topics) {
+        int drained = 0;
+        for (String topic : topics) {
+            while (driver.readOutput(topic) != null) {
+                drained++;
+            }
+        }
+        return drained;
+    }
+    
+    public static class Result {
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private long accepted;
+        private long rejected;
+        private long dropped;
+        private long count;
+        private long elapsedNanos;
+        private long allocatedBytes;
+        
+        public double getRecordsPerSecond() {
+            return count / (elapsedNanos / 1e9);
+        }
+        
+        public LatencyHistogram getLatency() {
+            return latency;
+        }
+        
+        @Override
+        public String toString() {
+            double seconds = elapsedNanos / 1e9;
+            return String.format("Records:    %d (%d accepted, %d rejected, %d dropped as unchanged)%n"
+                    + "Throughput: %.0f records/s%n"
+                    + "Latency:    p50 %.1fus, p99 %.1fus, p999 %.1fus, max %.1fus%n"
+                    + "Allocation: %.0f bytes/record, %.1f MB/s",
+                    count, accepted, rejected, dropped, getRecordsPerSecond(),
+                    latency.getP50Micros(), latency.getP99Micros(), latency.getP999Micros(), latency.getMaxMicros(),
+                    (double) allocatedBytes / count, allocatedBytes / seconds / (1024 * 1024));
+        }
+    }
+}
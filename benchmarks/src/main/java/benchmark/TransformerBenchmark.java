@@ -0,0 +1,176 @@
+package benchmark;
+
+import java.util.Collections;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.kafka.streams.KeyValue;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import model.ProductRecord;
+import processor.TransformerChain;
+import rules.MatchBudget;
+import rules.RuleProfiler;
+import serde.ProductRecordDeserializer;
+import serde.ProductRecordSerializer;
+import settings.ScyllaSettings;
+import transformer.DisplayTransformer;
+import transformer.Transformer;
+
+/*
+ * Benchmarks of each Transformer stage on its own, and of the full chain from consumed bytes to produced bytes.
+ * Every stage is measured on records which have already passed through the stages before it. Stages which modify the record
+ * work on a copy, so copyRecord gives the share of their score spent copying. The normalizationCache parameter turns the
+ * shared NormalizationCache off, so that normalizeFields and fullChain also report the cost of the rules on their own.
+ * preProcess, normalizeFields and fullChain run through a TransformerChain, as the topology does, so that the rules read the
+ * record through the match budget guard. The matchBudget parameter of 0 disables the guard to report what it costs.
+ * The profilerSampleRate parameter samples the rules with the RuleProfiler, and is off unless it is set on the command line
+ * (e.g -p profilerSampleRate=0,100).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransformerBenchmark {
+    
+    @Param({"1000"})
+    public int corpusSize;
+    
+    @Param({"TYPICAL", "LARGE", "ADVERSARIAL"})
+    public RecordCorpus.Profile profile;
+    
+    @Param({"42"})
+    public long seed;
+    
+    @Param({"true", "false"})
+    public boolean normalizationCache;
+    
+    @Param({"10000000", "0"})
+    public long matchBudget;
+    
+    @Param({"0"})
+    public int profilerSampleRate;
+    
+    private DisplayTransformer displayTransformer;
+    private TransformerChain chain;
+    private ProductRecordDeserializer deserializer;
+    private ProductRecordSerializer serializer;
+    
+    private byte[][] rawBytes;
+    private ProductRecord[] rawRecords;
+    private ProductRecord[] preProcessedRecords;
+    private ProductRecord[] normalizedRecords;
+    private ProductRecord[] postProcessedRecords;
+    private int cursor;
+    
+    @Setup
+    public void setUp() {
+        Transformer.getNormalizationCache().clear();
+        Transformer.getNormalizationCache().setEnabled(normalizationCache);
+        RuleProfiler.get().setSampleRate(profilerSampleRate);
+        displayTransformer = new DisplayTransformer();
+        Properties properties = new Properties();
+        properties.setProperty(ScyllaSettings.GUARD_MATCH_BUDGET.getName(), String.valueOf(matchBudget));
+        chain = new TransformerChain(displayTransformer, ScyllaSettings.load(properties, Collections.emptyMap()));
+        deserializer = new ProductRecordDeserializer();
+        serializer = new ProductRecordSerializer();
+        
+        RecordCorpus corpus = new RecordCorpus(corpusSize, profile, seed);
+        rawBytes = corpus.getRecords().toArray(new byte[0][]);
+        rawRecords = new ProductRecord[rawBytes.length];
+        preProcessedRecords = new ProductRecord[rawBytes.length];
+        normalizedRecords = new ProductRecord[rawBytes.length];
+        postProcessedRecords = new ProductRecord[rawBytes.length];
+        
+        for (int i = 0; i < rawBytes.length; i++) {
+            rawRecords[i] = deserializer.deserialize(null, rawBytes[i]);
+            preProcessedRecords[i] = chain.preProcess(rawRecords[i].copy());
+            normalizedRecords[i] = chain.normalizeFields(preProcessedRecords[i].copy());
+            postProcessedRecords[i] = displayTransformer.postProcess(normalizedRecords[i].copy());
+        }
+    }
+    
+    private int next() {
+        int index = cursor;
+        cursor = index + 1 == rawBytes.length ? 0 : index + 1;
+        return index;
+    }
+    
+    @Benchmark
+    public ProductRecord deserialize() {
+        return deserializer.deserialize(null, rawBytes[next()]);
+    }
+    
+    @Benchmark
+    public ProductRecord copyRecord() {
+        return rawRecords[next()].copy();
+    }
+    
+    @Benchmark
+    public boolean preValidate() {
+        return displayTransformer.preValidate(rawRecords[next()]);
+    }
+    
+    @Benchmark
+    public KeyValue<String,ProductRecord> generateKey() {
+        return Transformer.generateKey(null, rawRecords[next()]);
+    }
+    
+    @Benchmark
+    public ProductRecord preProcess() {
+        return chain.preProcess(rawRecords[next()].copy());
+    }
+    
+    /*
+     * The budget is started as pre-processing would have, as the chain ends it once the record is normalized
+     */
+    @Benchmark
+    public ProductRecord normalizeFields() {
+        MatchBudget.get().reset(matchBudget);
+        return chain.normalizeFields(preProcessedRecords[next()].copy());
+    }
+    
+    @Benchmark
+    public ProductRecord postProcess() {
+        return displayTransformer.postProcess(normalizedRecords[next()].copy());
+    }
+    
+    @Benchmark
+    public boolean postValidate() {
+        return displayTransformer.postValidate(postProcessedRecords[next()]);
+    }
+    
+    @Benchmark
+    public byte[] serialize() {
+        return serializer.serialize(null, postProcessedRecords[next()]);
+    }
+    
+    /*
+     * The same sequence of stages as the display topology, from consumed bytes to produced bytes
+     */
+    @Benchmark
+    public byte[] fullChain() {
+        ProductRecord record = deserializer.deserialize(null, rawBytes[next()]);
+        if (!chain.preValidate(record)) {
+            return serializer.serialize(null, record);
+        }
+        KeyValue<String,ProductRecord> keyValue = chain.generateKey(null, record);
+        record = chain.preProcess(keyValue.value);
+        record = chain.normalizeFields(record);
+        record = chain.postProcess(record);
+        chain.postValidate(record);
+        return serializer.serialize(null, record);
+    }
+}
@@ -0,0 +1,84 @@
+package batch;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Reads a newline delimited file through memory mapped segments, handing its non-empty lines over in batches.
+ * Segments always end on a line boundary, so files larger than a single mapping can be read.
+ */
+public class MappedLineReader {
+    private static final long DEFAULT_SEGMENT_SIZE = 1L << 30;
+    
+    public interface BatchHandler {
+        void handle(List<byte[]> lines) throws IOException;
+    }
+    
+    private final long segmentSize;
+    
+    public MappedLineReader() {
+        this(DEFAULT_SEGMENT_SIZE);
+    }
+    
+    public MappedLineReader(long segmentSize) {
+        this.segmentSize = segmentSize;
+    }
+    
+    public void forEachBatch(Path path, int batchSize, BatchHandler handler) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            long position = 0;
+            List<byte[]> lines = new ArrayList<byte[]>(batchSize);
+            
+            while (position < fileSize) {
+                long length = Math.min(segmentSize, fileSize - position);
+                boolean isLastSegment = position + length == fileSize;
+                MappedByteBuffer segment = channel.map(MapMode.READ_ONLY, position, length);
+                
+                int lineStart = 0;
+                for (int i = 0; i < length; i++) {
+                    if (segment.get(i) == '\n') {
+                        addLine(segment, lineStart, i, lines);
+                        lineStart = i + 1;
+                        if (lines.size() == batchSize) {
+                            handler.handle(lines);
+                            lines = new ArrayList<byte[]>(batchSize);
+                        }
+                    }
+                }
+                
+                if (isLastSegment) {
+                    addLine(segment, lineStart, (int) length, lines);
+                    position = fileSize;
+                } else if (lineStart == 0) {
+                    throw new IOException("Line longer than "+segmentSize+" bytes at offset "+position+" of "+path);
+                } else {
+                    // The incomplete last line is read again at the start of the next segment
+                    position += lineStart;
+                }
+            }
+            if (!lines.isEmpty()) {
+                handler.handle(lines);
+            }
+        }
+    }
+    
+    private static void addLine(MappedByteBuffer segment, int start, int end, List<byte[]> lines) {
+        if (end > start && segment.get(end - 1) == '\r') {
+            end--;
+        }
+        if (end > start) {
+            byte[] line = new byte[end - start];
+            for (int i = 0; i < line.length; i++) {
+                line[i] = segment.get(start + i);
+            }
+            lines.add(line);
+        }
+    }
+}
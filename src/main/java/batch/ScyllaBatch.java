@@ -0,0 +1,174 @@
+package batch;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+import org.apache.kafka.common.serialization.Serializer;
+import org.apache.log4j.Logger;
+
+import model.ProductRecord;
+import processor.CategoryRouter;
+import processor.TransformerChain;
+import processor.TransformerChain.Outcome;
+import rules.RuleReloader;
+import serde.ProductRecordSerializer;
+import serde.SinkFormat;
+import settings.ScyllaSettings;
+import transformer.Transformer;
+import transformer.TransformerRegistry;
+
+/*
+ * Replays newline delimited raw records from local files through the same Transformer chains as the processing topology,
+ * in parallel over all cores, writing the accepted and rejected records to files in their input order.
+ * Each output line holds the same bytes the topology would produce to the sink or rejected topic. In the compact sink format,
+ * which may contain newline bytes, each accepted record is instead preceded by its length as a four byte integer. Unchanged
+ * re-scrapes are not dropped, as there is no state to compare against. Records of a category without a Transformer are
+ * rejected unchanged.
+ */
+public class ScyllaBatch {
+    private static Logger logger = Logger.getLogger(ScyllaBatch.class);
+    private static final String USAGE = "Usage: ScyllaBatch --accepted <file> --rejected <file> [--threads <count>] [--batch-size <lines>] <input file>...";
+    private static final int DEFAULT_BATCH_SIZE = 65536;
+    
+    private final CategoryRouter router;
+    private final Map<Transformer, TransformerChain> chains;
+    private final ForkJoinPool pool;
+    private final int batchSize;
+    private final ProductRecordSerializer serializer = new ProductRecordSerializer();
+    private final Serializer<ProductRecord> sinkSerializer;
+    private final boolean isLengthPrefixed;
+    
+    private long acceptedCount;
+    private long rejectedCount;
+    
+    public ScyllaBatch(TransformerRegistry registry, SinkFormat sinkFormat, int threads, int batchSize) {
+        this.sinkSerializer = sinkFormat.serde().serializer();
+        this.isLengthPrefixed = sinkFormat == SinkFormat.COMPACT;
+        this.router = new CategoryRouter(registry);
+        this.chains = new IdentityHashMap<Transformer, TransformerChain>();
+        for (Transformer transformer : registry.getTransformers()) {
+            chains.put(transformer, new TransformerChain(transformer));
+        }
+        this.pool = new ForkJoinPool(threads);
+        this.batchSize = batchSize;
+    }
+    
+    public static void main(String[] args) throws Exception {
+        Path acceptedPath = null;
+        Path rejectedPath = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int batchSize = DEFAULT_BATCH_SIZE;
+        List<Path> inputs = new ArrayList<Path>();
+        
+        for (int i = 0; i < args.length; i++) {
+            if ("--accepted".equals(args[i]) && i + 1 < args.length) {
+                acceptedPath = Paths.get(args[++i]);
+            } else if ("--rejected".equals(args[i]) && i + 1 < args.length) {
+                rejectedPath = Paths.get(args[++i]);
+            } else if ("--threads".equals(args[i]) && i + 1 < args.length) {
+                threads = Integer.parseInt(args[++i]);
+            } else if ("--batch-size".equals(args[i]) && i + 1 < args.length) {
+                batchSize = Integer.parseInt(args[++i]);
+            } else {
+                inputs.add(Paths.get(args[i]));
+            }
+        }
+        if (acceptedPath == null || rejectedPath == null || inputs.isEmpty()) {
+            System.err.println(USAGE);
+            System.exit(1);
+        }
+        
+        ScyllaSettings settings = ScyllaSettings.get();
+        String rulesFile = settings.get(ScyllaSettings.RULES_FILE);
+        if (rulesFile != null) {
+            try (RuleReloader reloader = new RuleReloader()) {
+                if (!reloader.reload(rulesFile, Files.readAllBytes(Paths.get(rulesFile)))) {
+                    System.exit(1);
+                }
+            }
+        }
+        
+        ScyllaBatch batch = new ScyllaBatch(TransformerRegistry.load(settings.get(ScyllaSettings.DEFAULT_CATEGORY)),
+                SinkFormat.of(settings.get(ScyllaSettings.SINK_FORMAT)), threads, batchSize);
+        try (OutputStream accepted = new BufferedOutputStream(Files.newOutputStream(acceptedPath), 1 << 20);
+                OutputStream rejected = new BufferedOutputStream(Files.newOutputStream(rejectedPath), 1 << 20)) {
+            batch.run(inputs, accepted, rejected);
+        } finally {
+            batch.pool.shutdown();
+        }
+    }
+    
+    public void run(List<Path> inputs, OutputStream accepted, OutputStream rejected) throws IOException {
+        long start = System.nanoTime();
+        MappedLineReader reader = new MappedLineReader();
+        for (Path input : inputs) {
+            logger.info("Processing "+input);
+            reader.forEachBatch(input, batchSize, (lines) -> processBatch(lines, accepted, rejected));
+        }
+        
+        double seconds = (System.nanoTime() - start) / 1e9;
+        logger.info(String.format("Processed %d records (%d accepted, %d rejected) in %.1fs, %.0f records/s", acceptedCount + rejectedCount,
+                acceptedCount, rejectedCount, seconds, (acceptedCount + rejectedCount) / seconds));
+    }
+    
+    /*
+     * Here we process a batch of lines in parallel, then write the results in their input order
+     */
+    private void processBatch(List<byte[]> lines, OutputStream accepted, OutputStream rejected) throws IOException {
+        byte[][] values = new byte[lines.size()][];
+        boolean[] isAccepted = new boolean[lines.size()];
+        
+        try {
+            pool.submit(() -> IntStream.range(0, lines.size()).parallel().forEach((i) -> {
+                Transformer transformer = router.route(lines.get(i)).getTransformer();
+                if (transformer == null) {
+                    values[i] = lines.get(i);
+                    return;
+                }
+                TransformerChain chain = chains.get(transformer);
+                Outcome outcome = chain.process(null, chain.read(lines.get(i)));
+                isAccepted[i] = outcome.isAccepted();
+                values[i] = isAccepted[i] ? sinkSerializer.serialize(null, outcome.getRecord()) : serializer.serialize(null, outcome.getRecord());
+            })).get();
+        } catch (Exception e) {
+            throw new IOException("An error occured while processing batch", e);
+        }
+        
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] == null) {
+                continue;
+            }
+            if (isAccepted[i]) {
+                writeAccepted(accepted, values[i]);
+                acceptedCount++;
+            } else {
+                rejected.write(values[i]);
+                rejected.write('\n');
+                rejectedCount++;
+            }
+        }
+    }
+    
+    private void writeAccepted(OutputStream accepted, byte[] value) throws IOException {
+        if (isLengthPrefixed) {
+            accepted.write(value.length >>> 24);
+            accepted.write(value.length >>> 16);
+            accepted.write(value.length >>> 8);
+            accepted.write(value.length);
+            accepted.write(value);
+        } else {
+            accepted.write(value);
+            accepted.write('\n');
+        }
+    }
+}
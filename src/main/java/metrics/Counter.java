@@ -0,0 +1,20 @@
+package metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+public class Counter implements CounterMBean {
+    private final LongAdder count = new LongAdder();
+    
+    public void increment() {
+        count.increment();
+    }
+    
+    public void reset() {
+        count.reset();
+    }
+    
+    @Override
+    public long getCount() {
+        return count.sum();
+    }
+}
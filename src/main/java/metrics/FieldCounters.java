@@ -0,0 +1,41 @@
+package metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Counts how often the values of a field could, or could not, be normalized
+ */
+public class FieldCounters implements FieldCountersMBean {
+    private final LongAdder matched = new LongAdder();
+    private final LongAdder unmatched = new LongAdder();
+    
+    public void record(boolean isMatched) {
+        if (isMatched) {
+            matched.increment();
+        } else {
+            unmatched.increment();
+        }
+    }
+    
+    public void reset() {
+        matched.reset();
+        unmatched.reset();
+    }
+    
+    @Override
+    public long getMatched() {
+        return matched.sum();
+    }
+    
+    @Override
+    public long getUnmatched() {
+        return unmatched.sum();
+    }
+    
+    @Override
+    public double getMatchRate() {
+        long matchedCount = matched.sum();
+        long total = matchedCount + unmatched.sum();
+        return total == 0 ? 0 : (double) matchedCount / total;
+    }
+}
@@ -0,0 +1,7 @@
+package metrics;
+
+public interface FieldCountersMBean {
+    long getMatched();
+    long getUnmatched();
+    double getMatchRate();
+}
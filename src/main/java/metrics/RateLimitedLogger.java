@@ -0,0 +1,107 @@
+package metrics;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.apache.log4j.Logger;
+
+import settings.ScyllaSettings;
+
+/*
+ * A logger for messages about single records, which writes at most a set number of messages per second so that a burst of
+ * bad records (e.g during a scraper outage) costs a bounded amount of logging. Messages over the limit are neither built nor
+ * written, only counted in the "suppressed-log-messages" counter and reported with the next message which is written.
+ */
+public final class RateLimitedLogger {
+    private static final long WINDOW_MS = 1000;
+    
+    private final Logger logger;
+    private final int messagesPerSecond;
+    private final int maxRecordChars;
+    private final AtomicLong windowStart = new AtomicLong();
+    private final AtomicInteger windowMessages = new AtomicInteger();
+    private final AtomicLong suppressed = new AtomicLong();
+    private final Counter suppressedMessages;
+    
+    /*
+     * A limit of zero or less writes every message, and a maximum of zero or less includes whole records
+     */
+    public RateLimitedLogger(Logger logger, int messagesPerSecond, int maxRecordChars) {
+        this.logger = logger;
+        this.messagesPerSecond = messagesPerSecond;
+        this.maxRecordChars = maxRecordChars;
+        this.suppressedMessages = ScyllaMetrics.get().getCounter("suppressed-log-messages");
+    }
+    
+    public static RateLimitedLogger getLogger(Class<?> type) {
+        ScyllaSettings settings = ScyllaSettings.get();
+        return new RateLimitedLogger(Logger.getLogger(type), settings.get(ScyllaSettings.LOG_RECORD_ERRORS_PER_SECOND),
+                settings.get(ScyllaSettings.LOG_MAX_RECORD_CHARS));
+    }
+    
+    public void error(Supplier<String> message, Throwable e) {
+        if (isPermitted()) {
+            logger.error(withSuppressed(message.get()), e);
+        }
+    }
+    
+    public void warn(Supplier<String> message) {
+        if (isPermitted()) {
+            logger.warn(withSuppressed(message.get()));
+        }
+    }
+    
+    /*
+     * Here we shorten a record to the characters a message may include of it
+     */
+    public String abbreviate(String record) {
+        if (record == null || maxRecordChars <= 0 || record.length() <= maxRecordChars) {
+            return record;
+        }
+        return record.substring(0, maxRecordChars)+"... ("+record.length()+" characters)";
+    }
+    
+    /*
+     * Here we decode no more of the raw record than a message may include of it
+     */
+    public String abbreviate(byte[] record) {
+        if (record == null || maxRecordChars <= 0 || record.length <= maxRecordChars) {
+            return record == null ? null : new String(record, StandardCharsets.UTF_8);
+        }
+        return new String(record, 0, maxRecordChars, StandardCharsets.UTF_8)+"... ("+record.length+" bytes)";
+    }
+    
+    /*
+     * The messages suppressed since the last message which was written
+     */
+    public long getSuppressed() {
+        return suppressed.get();
+    }
+    
+    /*
+     * Here we count the message against the current one second window, starting a new window once it has passed
+     */
+    private boolean isPermitted() {
+        if (messagesPerSecond <= 0) {
+            return true;
+        }
+        long now = System.currentTimeMillis();
+        long start = windowStart.get();
+        if (now - start >= WINDOW_MS && windowStart.compareAndSet(start, now)) {
+            windowMessages.set(0);
+        }
+        if (windowMessages.incrementAndGet() <= messagesPerSecond) {
+            return true;
+        }
+        suppressed.incrementAndGet();
+        suppressedMessages.increment();
+        return false;
+    }
+    
+    private String withSuppressed(String message) {
+        long count = suppressed.getAndSet(0);
+        return count == 0 ? message : message+" ("+count+" similar messages suppressed)";
+    }
+}
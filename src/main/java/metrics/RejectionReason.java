@@ -0,0 +1,37 @@
+package metrics;
+
+/*
+ * The reasons a record is sent to the rejected topic, written with the record as a header where headers can be written, and as
+ * a prefix of its key unless scylla.rejected.reason.key is turned off
+ */
+public enum RejectionReason {
+    PRE_VALIDATION("pre-validation"),
+    MALFORMED("malformed"),
+    MISSING_FIELDS("missing-fields"),
+    PROCESSING_ERROR("processing-error"),
+    POST_VALIDATION("post-validation"),
+    UNKNOWN_CATEGORY("unknown-category"),
+    RECORD_TOO_LARGE("record-too-large"),
+    FIELD_TOO_LARGE("field-too-large"),
+    MATCH_BUDGET_EXCEEDED("match-budget-exceeded"),
+    PARTIAL_WITHOUT_BASE("partial-without-base");
+    
+    public static final String HEADER = "scylla-rejection-reason";
+    
+    private final String metricName;
+    
+    RejectionReason(String metricName) {
+        this.metricName = metricName;
+    }
+    
+    public String getMetricName() {
+        return metricName;
+    }
+    
+    /*
+     * Here we prefix the key of a rejected record with the reason (e.g missing-fields:<key>)
+     */
+    public String prefix(String key) {
+        return metricName+":"+(key == null ? "" : key);
+    }
+}
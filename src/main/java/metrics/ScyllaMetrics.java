@@ -0,0 +1,151 @@
+package metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.log4j.Logger;
+
+/*
+ * The metrics of the processor: a latency histogram per stage, match counters per normalized field and rejection counters per
+ * reason. Once registered, every metric is exposed as a JMX MBean under the "scylla" domain.
+ */
+public final class ScyllaMetrics {
+    private static Logger logger = Logger.getLogger(ScyllaMetrics.class);
+    private static final ScyllaMetrics instance = new ScyllaMetrics();
+    public static final String DOMAIN = "scylla";
+    
+    private final Map<Stage, LatencyHistogram> stageLatencies = new EnumMap<Stage, LatencyHistogram>(Stage.class);
+    private final Map<RejectionReason, Counter> rejections = new EnumMap<RejectionReason, Counter>(RejectionReason.class);
+    private final ConcurrentHashMap<String, FieldCounters> fieldCounters = new ConcurrentHashMap<String, FieldCounters>();
+    private final ConcurrentHashMap<String, Counter> counters = new ConcurrentHashMap<String, Counter>();
+    private volatile MBeanServer mBeanServer;
+    
+    private ScyllaMetrics() {
+        for (Stage stage : Stage.values()) {
+            stageLatencies.put(stage, new LatencyHistogram());
+        }
+        for (RejectionReason reason : RejectionReason.values()) {
+            rejections.put(reason, new Counter());
+        }
+    }
+    
+    public static ScyllaMetrics get() {
+        return instance;
+    }
+    
+    public LatencyHistogram getStageLatency(Stage stage) {
+        return stageLatencies.get(stage);
+    }
+    
+    /*
+     * Here we record the time a stage took, given the System.nanoTime() at which it started
+     */
+    public void recordStage(Stage stage, long startNanos) {
+        stageLatencies.get(stage).recordSince(startNanos);
+    }
+    
+    public Counter getRejections(RejectionReason reason) {
+        return rejections.get(reason);
+    }
+    
+    public void recordRejection(RejectionReason reason) {
+        rejections.get(reason).increment();
+    }
+    
+    public FieldCounters getFieldCounters(String field) {
+        FieldCounters counters = fieldCounters.get(field);
+        if (counters == null) {
+            FieldCounters newCounters = new FieldCounters();
+            counters = fieldCounters.putIfAbsent(field, newCounters);
+            if (counters == null) {
+                counters = newCounters;
+                registerMBean(newCounters, "type=FieldNormalization,field="+ObjectName.quote(field));
+            }
+        }
+        return counters;
+    }
+    
+    public void recordField(String field, boolean isMatched) {
+        getFieldCounters(field).record(isMatched);
+    }
+    
+    /*
+     * Here we return a named counter for any other event worth counting (e.g suppressed duplicates)
+     */
+    public Counter getCounter(String name) {
+        Counter counter = counters.get(name);
+        if (counter == null) {
+            Counter newCounter = new Counter();
+            counter = counters.putIfAbsent(name, newCounter);
+            if (counter == null) {
+                counter = newCounter;
+                registerMBean(newCounter, "type=Counters,name="+ObjectName.quote(name));
+            }
+        }
+        return counter;
+    }
+    
+    /*
+     * Here we set every metric back to zero, so that work done before processing starts (e.g warm-up) is not reported
+     */
+    public void reset() {
+        for (LatencyHistogram stageLatency : stageLatencies.values()) {
+            stageLatency.reset();
+        }
+        for (Counter rejection : rejections.values()) {
+            rejection.reset();
+        }
+        for (FieldCounters counters : fieldCounters.values()) {
+            counters.reset();
+        }
+        for (Counter counter : counters.values()) {
+            counter.reset();
+        }
+    }
+    
+    /*
+     * Here we register every metric, and any metric created afterwards, with the platform MBean server.
+     */
+    public synchronized void registerMBeans(Iterable<String> fields) {
+        if (mBeanServer != null) {
+            return;
+        }
+        mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        
+        for (Map.Entry<Stage, LatencyHistogram> stageLatency : stageLatencies.entrySet()) {
+            registerMBean(stageLatency.getValue(), "type=StageLatency,stage="+stageLatency.getKey().getMetricName());
+        }
+        for (Map.Entry<RejectionReason, Counter> rejection : rejections.entrySet()) {
+            registerMBean(rejection.getValue(), "type=Rejections,reason="+rejection.getKey().getMetricName());
+        }
+        for (String field : fields) {
+            getFieldCounters(field);
+        }
+        for (Map.Entry<String, FieldCounters> counters : fieldCounters.entrySet()) {
+            registerMBean(counters.getValue(), "type=FieldNormalization,field="+ObjectName.quote(counters.getKey()));
+        }
+        for (Map.Entry<String, Counter> counter : counters.entrySet()) {
+            registerMBean(counter.getValue(), "type=Counters,name="+ObjectName.quote(counter.getKey()));
+        }
+    }
+    
+    public void registerMBean(Object mBean, String properties) {
+        MBeanServer server = mBeanServer;
+        if (server == null) {
+            return;
+        }
+        try {
+            ObjectName name = new ObjectName(DOMAIN+":"+properties);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(mBean, name);
+            }
+        } catch (Exception e) {
+            logger.warn("Unable to register metrics MBean: "+properties, e);
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package metrics;
+
+/*
+ * The stages of the processing topology, in the order records pass through them
+ */
+public enum Stage {
+    PRE_VALIDATE("pre-validate"),
+    GENERATE_KEY("generate-key"),
+    PRE_PROCESS("pre-process"),
+    NORMALIZE("normalize"),
+    POST_PROCESS("post-process"),
+    POST_VALIDATE("post-validate");
+    
+    private final String metricName;
+    
+    Stage(String metricName) {
+        this.metricName = metricName;
+    }
+    
+    public String getMetricName() {
+        return metricName;
+    }
+}
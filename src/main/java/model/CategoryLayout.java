@@ -0,0 +1,93 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import fields.Fields;
+
+/*
+ * The layout of the categorized fields (e.g Ergonomics, Connectivity), compiled once from the Fields class into numbers of the
+ * FieldIndex, so that a record is restructured in a single pass instead of looking up and removing each categorized field in
+ * turn. Categories keep the order of the layout, and so do the fields within each category.
+ */
+public final class CategoryLayout {
+    private static volatile CategoryLayout current;
+    
+    private final FieldIndex index;
+    private final String[] categories;
+    private final int[][] categoryFields;
+    
+    public CategoryLayout(FieldIndex index, Map<String, List<String>> categorizedFields) {
+        this.index = index;
+        this.categories = categorizedFields.keySet().toArray(new String[0]);
+        this.categoryFields = new int[categories.length][];
+        for (int category = 0; category < categories.length; category++) {
+            List<String> fields = categorizedFields.get(categories[category]);
+            categoryFields[category] = new int[fields.size()];
+            for (int i = 0; i < fields.size(); i++) {
+                int number = index.numberOf(fields.get(i));
+                if (number < 0) {
+                    throw new IllegalArgumentException("Categorized field "+fields.get(i)+" is not part of the field index");
+                }
+                categoryFields[category][i] = number;
+            }
+        }
+    }
+    
+    /*
+     * Here we return the layout of the Fields class, compiling it the first time it is needed
+     */
+    public static CategoryLayout get() {
+        CategoryLayout layout = current;
+        if (layout == null) {
+            synchronized (CategoryLayout.class) {
+                if (current == null) {
+                    current = new CategoryLayout(FieldIndex.get(), new Fields().getCategorizedFields());
+                }
+                layout = current;
+            }
+        }
+        return layout;
+    }
+    
+    /*
+     * Here we move every categorized field of the record into its category. A category none of whose fields are present is
+     * attached empty, unless empty categories are omitted.
+     */
+    public ProductRecord apply(ProductRecord record, boolean omitEmptyCategories) {
+        boolean[] isMoved = new boolean[index.size()];
+        for (int category = 0; category < categories.length; category++) {
+            Map<String,String> fields = null;
+            for (int number : categoryFields[category]) {
+                int position = isMoved[number] ? -1 : record.positionOfNumber(number);
+                if (position < 0) {
+                    continue;
+                }
+                if (fields == null) {
+                    fields = new LinkedHashMap<String,String>();
+                }
+                fields.put(record.nameAt(position), record.valueAt(position));
+                isMoved[number] = true;
+            }
+            if (fields == null) {
+                if (omitEmptyCategories) {
+                    continue;
+                }
+                fields = new LinkedHashMap<String,String>();
+            }
+            record.putCategory(categories[category], fields);
+        }
+        record.removeNumbers(isMoved);
+        return record;
+    }
+    
+    public List<String> getCategories() {
+        List<String> categoryNames = new ArrayList<String>();
+        for (String category : categories) {
+            categoryNames.add(category);
+        }
+        return categoryNames;
+    }
+}
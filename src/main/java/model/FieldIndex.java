@@ -0,0 +1,78 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import fields.Fields;
+
+/*
+ * A numbering of every field name known to the Fields class, so that a ProductRecord can find its known fields by number
+ * instead of hashing into a map of its own. Fields outside of the index can still be stored in a record, they are only
+ * looked up more slowly.
+ */
+public final class FieldIndex {
+    private static volatile FieldIndex current;
+    
+    private final List<String> names;
+    private final Map<String, Integer> numbers;
+    
+    public FieldIndex(List<String> names) {
+        this.names = Collections.unmodifiableList(new ArrayList<String>(names));
+        this.numbers = new HashMap<String, Integer>();
+        for (int i = 0; i < names.size(); i++) {
+            numbers.putIfAbsent(names.get(i), i);
+        }
+    }
+    
+    /*
+     * Here we return the index of the Fields class, building it the first time it is needed
+     */
+    public static FieldIndex get() {
+        FieldIndex index = current;
+        if (index == null) {
+            synchronized (FieldIndex.class) {
+                if (current == null) {
+                    current = fromFields(new Fields());
+                }
+                index = current;
+            }
+        }
+        return index;
+    }
+    
+    /*
+     * Here we number every field the rules know of, the fields which are passed through, the aggregated fields which are
+     * expanded, and every categorized field
+     */
+    public static FieldIndex fromFields(Fields fields) {
+        TreeSet<String> names = new TreeSet<String>(fields.getFieldValues().keySet());
+        for (String field : new String[] {Fields.CATEGORY, Fields.URL, Fields.FOUNDTIME, Fields.MODEL, Fields.PRICE, Fields.CONNECTORS,
+                Fields.ERGONOMICS}) {
+            names.add(field);
+        }
+        for (List<String> categoryFields : fields.getCategorizedFields().values()) {
+            names.addAll(categoryFields);
+        }
+        return new FieldIndex(new ArrayList<String>(names));
+    }
+    
+    /*
+     * The number of the field, or -1 if the field is not part of the index
+     */
+    public int numberOf(String field) {
+        Integer number = numbers.get(field);
+        return number == null ? -1 : number;
+    }
+    
+    public String nameOf(int number) {
+        return names.get(number);
+    }
+    
+    public int size() {
+        return names.size();
+    }
+}
@@ -0,0 +1,431 @@
+package model;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import metrics.RejectionReason;
+
+/*
+ * A scraped product record, parsed once at the source and modified in place by each stage of the topology.
+ * Flat fields are kept in arrays in arrival order, with categorized fields (e.g Ergonomics, Connectivity) nested after them,
+ * and fields of the FieldIndex are found through their number, so that no map entry is allocated per field. Fields can also
+ * be visited by position, which is how the stages walk a record.
+ */
+public class ProductRecord {
+    private static final int INITIAL_CAPACITY = 32;
+    
+    private final FieldIndex index;
+    private final int[] positions;
+    private String[] names;
+    private String[] values;
+    private int[] numbers;
+    private int size;
+    private Map<String,Map<String,String>> categories;
+    private byte[] raw;
+    private byte[] source;
+    private RejectionReason quarantineReason;
+    private Set<String> updatedFields;
+    private Map<String,String> fieldsView;
+    
+    public ProductRecord() {
+        this(FieldIndex.get());
+    }
+    
+    private ProductRecord(FieldIndex index) {
+        this.index = index;
+        this.positions = new int[index.size()];
+        this.names = new String[INITIAL_CAPACITY];
+        this.values = new String[INITIAL_CAPACITY];
+        this.numbers = new int[INITIAL_CAPACITY];
+    }
+    
+    /*
+     * Here we copy the record, so that it can be modified without affecting the original
+     */
+    public ProductRecord copy() {
+        ProductRecord copy = new ProductRecord(index);
+        System.arraycopy(positions, 0, copy.positions, 0, positions.length);
+        copy.names = names.clone();
+        copy.values = values.clone();
+        copy.numbers = numbers.clone();
+        copy.size = size;
+        copy.raw = raw;
+        copy.source = source;
+        copy.quarantineReason = quarantineReason;
+        copy.updatedFields = updatedFields != null ? new HashSet<String>(updatedFields) : null;
+        if (categories != null) {
+            for (Map.Entry<String,Map<String,String>> category : categories.entrySet()) {
+                copy.putCategory(category.getKey(), new LinkedHashMap<String,String>(category.getValue()));
+            }
+        }
+        return copy;
+    }
+    
+    /*
+     * Here we keep the original bytes of a record that could not be parsed, so it can be forwarded untouched.
+     */
+    public static ProductRecord malformed(byte[] raw) {
+        ProductRecord record = new ProductRecord();
+        record.raw = raw;
+        return record;
+    }
+    
+    public boolean isMalformed() {
+        return raw != null;
+    }
+    
+    public byte[] getRaw() {
+        return raw;
+    }
+    
+    /*
+     * Here we keep the bytes the record was parsed from, so that a quarantined record can be forwarded as it arrived
+     */
+    public void setSource(byte[] source) {
+        this.source = source;
+    }
+    
+    public byte[] getSource() {
+        return source;
+    }
+    
+    /*
+     * Here we mark the record to be sent to the rejected topic as it arrived, without passing through any further stage
+     */
+    public void quarantine(RejectionReason reason) {
+        this.quarantineReason = reason;
+    }
+    
+    public boolean isQuarantined() {
+        return quarantineReason != null;
+    }
+    
+    public RejectionReason getQuarantineReason() {
+        return quarantineReason;
+    }
+    
+    /*
+     * Here we mark the record as a partial update, which replaces only the given fields of the last record of its key
+     */
+    public void setUpdatedFields(Set<String> updatedFields) {
+        this.updatedFields = updatedFields;
+    }
+    
+    /*
+     * The fields a partial update replaces, or null if the record is a full record
+     */
+    public Set<String> getUpdatedFields() {
+        return updatedFields;
+    }
+    
+    public boolean isPartialUpdate() {
+        return updatedFields != null;
+    }
+    
+    public String get(String field) {
+        int position = positionOf(field);
+        return position < 0 ? null : values[position];
+    }
+    
+    public boolean has(String field) {
+        return positionOf(field) >= 0;
+    }
+    
+    /*
+     * Here we set the value of the field, keeping its position if it is already present or adding it after every other field
+     */
+    public void put(String field, String value) {
+        int position = positionOf(field);
+        if (position >= 0) {
+            values[position] = value;
+            return;
+        }
+        if (size == names.length) {
+            names = Arrays.copyOf(names, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+            numbers = Arrays.copyOf(numbers, size * 2);
+        }
+        int number = index.numberOf(field);
+        names[size] = field;
+        values[size] = value;
+        numbers[size] = number;
+        size++;
+        if (number >= 0) {
+            positions[number] = size;
+        }
+    }
+    
+    public String remove(String field) {
+        int position = positionOf(field);
+        if (position < 0) {
+            return null;
+        }
+        String value = values[position];
+        removeAt(position);
+        return value;
+    }
+    
+    /*
+     * The name of the field at the position, in arrival order
+     */
+    public String nameAt(int position) {
+        return names[position];
+    }
+    
+    public String valueAt(int position) {
+        return values[position];
+    }
+    
+    public void setValueAt(int position, String value) {
+        values[position] = value;
+    }
+    
+    /*
+     * Here we remove the field at the position, moving every later field one position down
+     */
+    public void removeAt(int position) {
+        if (numbers[position] >= 0) {
+            positions[numbers[position]] = 0;
+        }
+        size--;
+        System.arraycopy(names, position + 1, names, position, size - position);
+        System.arraycopy(values, position + 1, values, position, size - position);
+        System.arraycopy(numbers, position + 1, numbers, position, size - position);
+        names[size] = null;
+        values[size] = null;
+        for (int i = position; i < size; i++) {
+            if (numbers[i] >= 0) {
+                positions[numbers[i]] = i + 1;
+            }
+        }
+    }
+    
+    /*
+     * The position of the field with the number in the FieldIndex, or -1 if the record does not have it
+     */
+    public int positionOfNumber(int number) {
+        return positions[number] - 1;
+    }
+    
+    /*
+     * Here we remove every field whose number in the FieldIndex is flagged, in a single pass which keeps the order of the others
+     */
+    public void removeNumbers(boolean[] isRemoved) {
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            int number = numbers[i];
+            if (number >= 0 && isRemoved[number]) {
+                positions[number] = 0;
+                continue;
+            }
+            names[kept] = names[i];
+            values[kept] = values[i];
+            numbers[kept] = number;
+            if (number >= 0) {
+                positions[number] = kept + 1;
+            }
+            kept++;
+        }
+        for (int i = kept; i < size; i++) {
+            names[i] = null;
+            values[i] = null;
+        }
+        size = kept;
+    }
+    
+    public Set<String> fieldNames() {
+        return getFields().keySet();
+    }
+    
+    /*
+     * A live view of the flat fields, in arrival order
+     */
+    public Map<String,String> getFields() {
+        if (fieldsView == null) {
+            fieldsView = new FieldsView();
+        }
+        return fieldsView;
+    }
+    
+    public int size() {
+        return size;
+    }
+    
+    public Map<String,String> getCategory(String category) {
+        return categories == null ? null : categories.get(category);
+    }
+    
+    public void putCategory(String category, Map<String,String> categoryFields) {
+        if (categories == null) {
+            categories = new LinkedHashMap<String,Map<String,String>>();
+        }
+        categories.put(category, categoryFields);
+    }
+    
+    public Map<String,Map<String,String>> getCategories() {
+        if (categories == null) {
+            return Collections.emptyMap();
+        }
+        return categories;
+    }
+    
+    private int positionOf(Object field) {
+        if (!(field instanceof String)) {
+            return -1;
+        }
+        int number = index.numberOf((String) field);
+        if (number >= 0) {
+            return positions[number] - 1;
+        }
+        for (int i = 0; i < size; i++) {
+            if (numbers[i] < 0 && names[i].equals(field)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+    
+    private final class FieldsView extends AbstractMap<String,String> {
+        private final Set<Map.Entry<String,String>> entries = new AbstractSet<Map.Entry<String,String>>() {
+            @Override
+            public Iterator<Map.Entry<String,String>> iterator() {
+                return new FieldIterator();
+            }
+            
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+        
+        @Override
+        public Set<Map.Entry<String,String>> entrySet() {
+            return entries;
+        }
+        
+        @Override
+        public int size() {
+            return size;
+        }
+        
+        @Override
+        public boolean containsKey(Object field) {
+            return positionOf(field) >= 0;
+        }
+        
+        @Override
+        public String get(Object field) {
+            int position = positionOf(field);
+            return position < 0 ? null : values[position];
+        }
+        
+        @Override
+        public String put(String field, String value) {
+            String previousValue = ProductRecord.this.get(field);
+            ProductRecord.this.put(field, value);
+            return previousValue;
+        }
+        
+        @Override
+        public String remove(Object field) {
+            int position = positionOf(field);
+            if (position < 0) {
+                return null;
+            }
+            String value = values[position];
+            removeAt(position);
+            return value;
+        }
+        
+        @Override
+        public void clear() {
+            while (size > 0) {
+                removeAt(size - 1);
+            }
+        }
+    }
+    
+    private final class FieldIterator implements Iterator<Map.Entry<String,String>> {
+        private int next;
+        private int last = -1;
+        
+        @Override
+        public boolean hasNext() {
+            return next < size;
+        }
+        
+        @Override
+        public Map.Entry<String,String> next() {
+            if (next >= size) {
+                throw new NoSuchElementException();
+            }
+            last = next++;
+            return new FieldEntry(last);
+        }
+        
+        @Override
+        public void remove() {
+            if (last < 0) {
+                throw new IllegalStateException();
+            }
+            removeAt(last);
+            next = last;
+            last = -1;
+        }
+    }
+    
+    /*
+     * An entry of the view, only valid until a field before it is removed
+     */
+    private final class FieldEntry implements Map.Entry<String,String> {
+        private final int position;
+        
+        FieldEntry(int position) {
+            this.position = position;
+        }
+        
+        @Override
+        public String getKey() {
+            return names[position];
+        }
+        
+        @Override
+        public String getValue() {
+            return values[position];
+        }
+        
+        @Override
+        public String setValue(String value) {
+            String previousValue = values[position];
+            values[position] = value;
+            return previousValue;
+        }
+        
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Map.Entry)) {
+                return false;
+            }
+            Map.Entry<?,?> entry = (Map.Entry<?,?>) other;
+            return getKey().equals(entry.getKey()) && (getValue() == null ? entry.getValue() == null : getValue().equals(entry.getValue()));
+        }
+        
+        @Override
+        public int hashCode() {
+            return getKey().hashCode() ^ (getValue() == null ? 0 : getValue().hashCode());
+        }
+        
+        @Override
+        public String toString() {
+            return getKey()+"="+getValue();
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package model;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/*
+ * A bounded table of canonical values (e.g "VA", "G-Sync", "true" or "144"), shared by all stream threads, so that every
+ * record holds the same instance of a normalized value instead of a copy of its own. Values are only ever added, until the
+ * table is full, and are looked up without locking. Values that are too long or arrive once the table is full are returned
+ * as they are.
+ */
+public final class ValueInterner {
+    public static final int DEFAULT_CAPACITY = 8192;
+    public static final int DEFAULT_MAX_VALUE_LENGTH = 32;
+    private static final ValueInterner shared = new ValueInterner(DEFAULT_CAPACITY, DEFAULT_MAX_VALUE_LENGTH);
+    
+    private final AtomicReferenceArray<String> table;
+    private final int mask;
+    private final int maxSize;
+    private final int maxValueLength;
+    private final AtomicInteger size = new AtomicInteger();
+    
+    public ValueInterner(int capacity, int maxValueLength) {
+        int tableSize = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.table = new AtomicReferenceArray<String>(tableSize);
+        this.mask = tableSize - 1;
+        this.maxSize = tableSize / 2;
+        this.maxValueLength = maxValueLength;
+    }
+    
+    public static ValueInterner get() {
+        return shared;
+    }
+    
+    /*
+     * Here we return the canonical instance of the value, adding the value as the canonical instance if there is none yet
+     */
+    public String intern(String value) {
+        if (value == null || value.length() > maxValueLength) {
+            return value;
+        }
+        int slot = spread(value.hashCode()) & mask;
+        while (true) {
+            String canonical = table.get(slot);
+            if (canonical == null) {
+                if (size.get() >= maxSize) {
+                    return value;
+                }
+                if (table.compareAndSet(slot, null, value)) {
+                    size.incrementAndGet();
+                    return value;
+                }
+                continue;
+            }
+            if (canonical.equals(value)) {
+                return canonical;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+    
+    /*
+     * Here we return the canonical instance of the characters, or null if there is none, without creating a String
+     */
+    public String lookup(char[] characters, int offset, int length) {
+        if (length > maxValueLength) {
+            return null;
+        }
+        int hash = 0;
+        for (int i = offset; i < offset + length; i++) {
+            hash = 31 * hash + characters[i];
+        }
+        int slot = spread(hash) & mask;
+        while (true) {
+            String canonical = table.get(slot);
+            if (canonical == null) {
+                return null;
+            }
+            if (equals(canonical, characters, offset, length)) {
+                return canonical;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+    
+    public int size() {
+        return size.get();
+    }
+    
+    private static boolean equals(String value, char[] characters, int offset, int length) {
+        if (value.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (value.charAt(i) != characters[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,119 @@
+package processor;
+
+import org.apache.log4j.Logger;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import fields.Fields;
+import transformer.Transformer;
+import transformer.TransformerRegistry;
+
+/*
+ * Routes raw records to the Transformer of their Category. The category is read by scanning the record only up to its
+ * Category field, without parsing the rest of it, or up to its URL as well when the URL is also needed.
+ */
+public class CategoryRouter {
+    private static Logger logger = Logger.getLogger(CategoryRouter.class);
+    private static final JsonFactory jsonFactory = new JsonFactory();
+    
+    private final TransformerRegistry registry;
+    
+    public CategoryRouter(TransformerRegistry registry) {
+        this.registry = registry;
+    }
+    
+    public Routed route(byte[] value) {
+        return new Routed(registry.get(readCategory(value)), value, null);
+    }
+    
+    /*
+     * Here we route a raw record and read its URL in the same scan
+     */
+    public Routed routeWithUrl(byte[] value) {
+        String[] values = readFields(value, Fields.CATEGORY, Fields.URL);
+        return new Routed(registry.get(values[0]), value, values[1]);
+    }
+    
+    /*
+     * Here we return the Category of a raw record, or null if it has none or cannot be read
+     */
+    public static String readCategory(byte[] value) {
+        return readField(value, Fields.CATEGORY);
+    }
+    
+    /*
+     * Here we return the value of a top level field of a raw record, scanning no further than that field
+     */
+    public static String readField(byte[] value, String field) {
+        return readFields(value, field)[0];
+    }
+    
+    /*
+     * Here we return the values of several top level fields of a raw record, in the order asked for, scanning no further than
+     * the last of them. A field which is missing, or not a string, is null.
+     */
+    public static String[] readFields(byte[] value, String... fields) {
+        String[] values = new String[fields.length];
+        if (value == null) {
+            return values;
+        }
+        try (JsonParser parser = jsonFactory.createParser(value)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return values;
+            }
+            boolean[] isRead = new boolean[fields.length];
+            int remaining = fields.length;
+            while (remaining > 0 && parser.nextToken() == JsonToken.FIELD_NAME) {
+                int index = indexOf(fields, parser.getCurrentName());
+                JsonToken token = parser.nextToken();
+                if (index >= 0 && !isRead[index]) {
+                    values[index] = token == JsonToken.VALUE_STRING ? parser.getText() : null;
+                    isRead[index] = true;
+                    remaining--;
+                }
+                parser.skipChildren();
+            }
+        } catch (Exception e) {
+            logger.debug("Unable to read the "+String.join(", ", fields)+" of a record", e);
+        }
+        return values;
+    }
+    
+    private static int indexOf(String[] fields, String field) {
+        for (int i = 0; i < fields.length; i++) {
+            if (fields[i].equals(field)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+    
+    public static class Routed {
+        private final Transformer transformer;
+        private final byte[] value;
+        private final String url;
+        
+        public Routed(Transformer transformer, byte[] value, String url) {
+            this.transformer = transformer;
+            this.value = value;
+            this.url = url;
+        }
+        
+        public Transformer getTransformer() {
+            return transformer;
+        }
+        
+        public byte[] getValue() {
+            return value;
+        }
+        
+        /*
+         * The URL of the record, if it was routed with its URL
+         */
+        public String getUrl() {
+            return url;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package processor;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+
+import org.apache.log4j.Logger;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/*
+ * A small local HTTP endpoint for the orchestrator. /health/live answers 200 while the processor is live and /health/ready
+ * while it is ready to process records, 503 otherwise, both with the status of the streams (state, tasks and per-partition
+ * lag) as JSON.
+ */
+public class HealthServer implements Closeable {
+    private static Logger logger = Logger.getLogger(HealthServer.class);
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    
+    private final HttpServer server;
+    
+    public HealthServer(int port, StreamsHealth health) throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext("/health/live", (exchange) -> respond(exchange, health.isLive(), health));
+        server.createContext("/health/ready", (exchange) -> respond(exchange, health.isReady(), health));
+        server.start();
+        logger.info("Serving health on port "+getPort());
+    }
+    
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+    
+    private static void respond(HttpExchange exchange, boolean isHealthy, StreamsHealth health) throws IOException {
+        try {
+            byte[] body = objectMapper.writeValueAsBytes(health.status());
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(isHealthy ? 200 : 503, body.length);
+            try (OutputStream output = exchange.getResponseBody()) {
+                output.write(body);
+            }
+        } catch (Exception e) {
+            logger.error("An error occured while reporting health",e);
+            exchange.sendResponseHeaders(500, -1);
+        } finally {
+            exchange.close();
+        }
+    }
+    
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+}
@@ -0,0 +1,87 @@
+package processor;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.streams.KafkaClientSupplier;
+
+/*
+ * Creates the clients of the stream threads the same way Kafka Streams does, keeping hold of their consumers so that the lag
+ * of every partition they consume can be reported. Kafka Streams 1.0 does not expose the metrics of its consumers itself.
+ */
+public class MonitoredClientSupplier implements KafkaClientSupplier {
+    private static final String FETCH_METRICS_GROUP = "consumer-fetch-manager-metrics";
+    private static final String LAG_METRIC = "records-lag";
+    
+    private final List<Consumer<byte[], byte[]>> consumers = new CopyOnWriteArrayList<Consumer<byte[], byte[]>>();
+    
+    @Override
+    public Producer<byte[], byte[]> getProducer(Map<String, Object> config) {
+        return new KafkaProducer<byte[], byte[]>(config, new ByteArraySerializer(), new ByteArraySerializer());
+    }
+    
+    @Override
+    public Consumer<byte[], byte[]> getConsumer(Map<String, Object> config) {
+        Consumer<byte[], byte[]> consumer = new KafkaConsumer<byte[], byte[]>(config, new ByteArrayDeserializer(), new ByteArrayDeserializer());
+        consumers.add(consumer);
+        return consumer;
+    }
+    
+    @Override
+    public Consumer<byte[], byte[]> getRestoreConsumer(Map<String, Object> config) {
+        return new KafkaConsumer<byte[], byte[]>(config, new ByteArrayDeserializer(), new ByteArrayDeserializer());
+    }
+    
+    /*
+     * Here we return the lag of every partition as of the last fetch of its consumer, in records
+     */
+    public Map<TopicPartition, Long> getLag() {
+        Map<TopicPartition, Long> lag = new HashMap<TopicPartition, Long>();
+        for (Consumer<byte[], byte[]> consumer : consumers) {
+            for (Map.Entry<MetricName, ? extends Metric> metric : consumer.metrics().entrySet()) {
+                TopicPartition partition = lagPartitionOf(metric.getKey());
+                Object value = partition == null ? null : metric.getValue().metricValue();
+                if (value instanceof Number && !Double.isNaN(((Number) value).doubleValue())) {
+                    lag.put(partition, ((Number) value).longValue());
+                }
+            }
+        }
+        return lag;
+    }
+    
+    /*
+     * Here we return the partition of a lag metric, named "<topic>-<partition>.records-lag" by Kafka 1.0 and "records-lag"
+     * with topic and partition tags by later versions, or null if the metric is not a lag metric
+     */
+    static TopicPartition lagPartitionOf(MetricName name) {
+        if (!FETCH_METRICS_GROUP.equals(name.group())) {
+            return null;
+        }
+        try {
+            if (LAG_METRIC.equals(name.name()) && name.tags().containsKey("topic") && name.tags().containsKey("partition")) {
+                return new TopicPartition(name.tags().get("topic"), Integer.parseInt(name.tags().get("partition")));
+            }
+            if (name.name().endsWith("."+LAG_METRIC)) {
+                String partition = name.name().substring(0, name.name().length() - LAG_METRIC.length() - 1);
+                int separator = partition.lastIndexOf('-');
+                if (separator > 0) {
+                    return new TopicPartition(partition.substring(0, separator), Integer.parseInt(partition.substring(separator + 1)));
+                }
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,49 @@
+package processor;
+
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/*
+ * Tracks the offsets of a partition whose records are processed out of order. The committable offset is that of the earliest
+ * record not yet finished, so a commit never skips over a record that could still be lost. Offsets are dispatched and committed
+ * from the polling thread, and completed from any thread.
+ */
+public class OffsetTracker {
+    private final ConcurrentSkipListSet<Long> pending = new ConcurrentSkipListSet<Long>();
+    private long nextOffset = -1;
+    private long committedOffset = -1;
+    
+    public void dispatched(long offset) {
+        pending.add(offset);
+        nextOffset = offset + 1;
+    }
+    
+    /*
+     * Here we take back the last dispatched offset, when its record could not be handed to a worker
+     */
+    public void withdrawn(long offset) {
+        pending.remove(offset);
+        nextOffset = offset;
+    }
+    
+    public void completed(long offset) {
+        pending.remove(offset);
+    }
+    
+    public boolean isIdle() {
+        return pending.isEmpty();
+    }
+    
+    /*
+     * Here we return the offset to commit, or -1 if nothing has finished since the last commit
+     */
+    public long committableOffset() {
+        long next = nextOffset;
+        Long earliestPending = pending.ceiling(Long.MIN_VALUE);
+        long committable = earliestPending != null ? earliestPending : next;
+        return committable > committedOffset ? committable : -1;
+    }
+    
+    public void committed(long offset) {
+        committedOffset = Math.max(committedOffset, offset);
+    }
+}
@@ -0,0 +1,80 @@
+package processor;
+
+import java.io.Closeable;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.apache.log4j.Logger;
+
+/*
+ * A pool of workers each draining its own bounded queue, so that tasks submitted under the same ordering key run one at a time
+ * in the order they were submitted, while tasks of different keys run in parallel. Submitting blocks while the queue of the
+ * key's worker is full, while offering returns at once.
+ */
+public class OrderedWorkerPool implements Closeable {
+    private static Logger logger = Logger.getLogger(OrderedWorkerPool.class);
+    private static final Runnable STOP = () -> {};
+    
+    private final BlockingQueue<Runnable>[] queues;
+    private final Thread[] workers;
+    
+    @SuppressWarnings("unchecked")
+    public OrderedWorkerPool(String name, int workerCount, int queueDepth) {
+        this.queues = (BlockingQueue<Runnable>[]) new BlockingQueue[workerCount];
+        this.workers = new Thread[workerCount];
+        for (int i = 0; i < workerCount; i++) {
+            BlockingQueue<Runnable> queue = new ArrayBlockingQueue<Runnable>(queueDepth);
+            queues[i] = queue;
+            workers[i] = new Thread(() -> work(queue), name+"-"+i);
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+    }
+    
+    public void submit(Object orderingKey, Runnable task) throws InterruptedException {
+        queueOf(orderingKey).put(task);
+    }
+    
+    /*
+     * Here we queue the task unless the queue of the key's worker is full, returning whether it was queued
+     */
+    public boolean offer(Object orderingKey, Runnable task) {
+        return queueOf(orderingKey).offer(task);
+    }
+    
+    private BlockingQueue<Runnable> queueOf(Object orderingKey) {
+        int hash = orderingKey.hashCode();
+        return queues[Math.floorMod(hash ^ (hash >>> 16), queues.length)];
+    }
+    
+    private static void work(BlockingQueue<Runnable> queue) {
+        try {
+            for (Runnable task = queue.take(); task != STOP; task = queue.take()) {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    logger.error("An error occured while running a task", e);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    /*
+     * Here we let every worker finish the tasks already queued, then stop it
+     */
+    @Override
+    public void close() {
+        try {
+            for (BlockingQueue<Runnable> queue : queues) {
+                queue.put(STOP);
+            }
+            for (Thread worker : workers) {
+                worker.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,342 @@
+package processor;
+
+import java.io.Closeable;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRebalanceListener;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.internals.RecordHeader;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.Serializer;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.apache.log4j.Logger;
+
+import config.KafkaConfig;
+import metrics.RejectionReason;
+import metrics.ScyllaMetrics;
+import model.ProductRecord;
+import processor.CategoryRouter.Routed;
+import processor.TransformerChain.Outcome;
+import serde.ProductRecordSerializer;
+import serde.SinkFormat;
+import settings.ScyllaSettings;
+import transformer.Transformer;
+import transformer.TransformerRegistry;
+
+/*
+ * An alternative to the processing topology, for when the source topic has fewer partitions than there are cores. Records of
+ * each partition are handed to a pool of workers, with records of the same URL always going to the same worker so that they
+ * are processed and produced in order. The offset of a partition is only committed up to its earliest unfinished record, so
+ * records are processed at least once, as in the topology. Polling never waits on a worker: a record whose worker queue is full
+ * is held, with the records after it, and its partition paused until the queue has room. Unchanged re-scrapes are not dropped,
+ * as there is no state store. Rejected records carry their reason in a header, which the topology cannot write.
+ */
+public class ParallelProcessor implements Closeable {
+    private static Logger logger = Logger.getLogger(ParallelProcessor.class);
+    
+    private final String sourceTopic;
+    private final int maxInFlight;
+    private final long commitIntervalMs;
+    private final boolean isReasonKey;
+    private final KafkaConsumer<String, byte[]> consumer;
+    private final KafkaProducer<String, byte[]> producer;
+    private final OrderedWorkerPool workers;
+    private final CategoryRouter router;
+    private final Map<Transformer, TransformerChain> chains;
+    private final ProductRecordSerializer serializer = new ProductRecordSerializer();
+    private final Serializer<ProductRecord> sinkSerializer;
+    
+    private final Map<TopicPartition, OffsetTracker> trackers = new ConcurrentHashMap<TopicPartition, OffsetTracker>();
+    private final Map<TopicPartition, Deque<HeldRecord>> held = new HashMap<TopicPartition, Deque<HeldRecord>>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final CountDownLatch stopped = new CountDownLatch(1);
+    private volatile boolean isRunning = true;
+    private volatile Exception failure;
+    
+    public ParallelProcessor(String sourceTopic, TransformerRegistry registry, ScyllaSettings settings) {
+        this.sourceTopic = sourceTopic;
+        this.maxInFlight = settings.get(ScyllaSettings.PARALLEL_MAX_IN_FLIGHT);
+        this.commitIntervalMs = settings.get(ScyllaSettings.PARALLEL_COMMIT_INTERVAL_MS);
+        this.isReasonKey = settings.get(ScyllaSettings.REJECTED_REASON_KEY);
+        this.sinkSerializer = SinkFormat.of(settings.get(ScyllaSettings.SINK_FORMAT)).serde().serializer();
+        this.consumer = new KafkaConsumer<String, byte[]>(consumerProperties(settings), new StringDeserializer(), new ByteArrayDeserializer());
+        this.producer = new KafkaProducer<String, byte[]>(producerProperties(settings), new StringSerializer(), new ByteArraySerializer());
+        this.workers = new OrderedWorkerPool("scylla-worker", settings.get(ScyllaSettings.PARALLEL_WORKERS),
+                settings.get(ScyllaSettings.PARALLEL_QUEUE_DEPTH));
+        this.router = new CategoryRouter(registry);
+        this.chains = new IdentityHashMap<Transformer, TransformerChain>();
+        for (Transformer transformer : registry.getTransformers()) {
+            chains.put(transformer, new TransformerChain(transformer));
+        }
+    }
+    
+    /*
+     * Offsets are committed by hand, and the consumer shares the group of the processing topology, so either can pick up from the
+     * offsets the other committed
+     */
+    private static Properties consumerProperties(ScyllaSettings settings) {
+        Properties properties = settings.consumerProperties();
+        properties.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, "false");
+        properties.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        return properties;
+    }
+    
+    /*
+     * Idempotence keeps the records each worker sends in order, even when a send is retried
+     */
+    private static Properties producerProperties(ScyllaSettings settings) {
+        Properties properties = settings.producerProperties();
+        properties.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, "true");
+        properties.put(ProducerConfig.ACKS_CONFIG, "all");
+        return properties;
+    }
+    
+    /*
+     * Here we poll and dispatch records until closed, pausing the source partitions while too many records are in flight, and
+     * each partition with held records until they are dispatched.
+     */
+    public void run() {
+        try {
+            consumer.subscribe(Collections.singletonList(sourceTopic), new CommitOnRevoke());
+            long nextCommit = System.currentTimeMillis() + commitIntervalMs;
+            
+            while (isRunning && failure == null) {
+                dispatchHeld();
+                if (inFlight.get() >= maxInFlight) {
+                    consumer.pause(consumer.assignment());
+                } else if (!consumer.paused().isEmpty()) {
+                    Set<TopicPartition> resumed = new HashSet<TopicPartition>(consumer.paused());
+                    resumed.removeAll(held.keySet());
+                    consumer.resume(resumed);
+                }
+                
+                ConsumerRecords<String, byte[]> records = consumer.poll(100);
+                for (ConsumerRecord<String, byte[]> record : records) {
+                    TopicPartition partition = new TopicPartition(record.topic(), record.partition());
+                    HeldRecord heldRecord = new HeldRecord(record, router.routeWithUrl(record.value()));
+                    Deque<HeldRecord> partitionHeld = held.get(partition);
+                    if (partitionHeld != null) {
+                        partitionHeld.add(heldRecord);
+                    } else if (!dispatch(partition, heldRecord)) {
+                        partitionHeld = new ArrayDeque<HeldRecord>();
+                        partitionHeld.add(heldRecord);
+                        held.put(partition, partitionHeld);
+                        consumer.pause(Collections.singleton(partition));
+                    }
+                }
+                
+                if (System.currentTimeMillis() >= nextCommit) {
+                    commit(trackers.keySet());
+                    nextCommit = System.currentTimeMillis() + commitIntervalMs;
+                }
+            }
+        } catch (Exception e) {
+            logger.error("An error occured while processing records in parallel", e);
+        } finally {
+            if (failure != null) {
+                logger.error("Stopping without committing records after the failed one", failure);
+            }
+            awaitIdle(trackers.keySet());
+            commit(trackers.keySet());
+            workers.close();
+            producer.close();
+            consumer.close();
+            stopped.countDown();
+        }
+    }
+    
+    /*
+     * Here we hand the held records of each partition to their workers in order, until a worker queue is full
+     */
+    private void dispatchHeld() {
+        Iterator<Map.Entry<TopicPartition, Deque<HeldRecord>>> partitions = held.entrySet().iterator();
+        while (partitions.hasNext()) {
+            Map.Entry<TopicPartition, Deque<HeldRecord>> partitionHeld = partitions.next();
+            Deque<HeldRecord> records = partitionHeld.getValue();
+            while (!records.isEmpty() && dispatch(partitionHeld.getKey(), records.peek())) {
+                records.poll();
+            }
+            if (records.isEmpty()) {
+                partitions.remove();
+            }
+        }
+    }
+    
+    /*
+     * Here we hand the record to the worker of its URL, returning false without waiting if the queue of that worker is full
+     */
+    private boolean dispatch(TopicPartition partition, HeldRecord heldRecord) {
+        ConsumerRecord<String, byte[]> record = heldRecord.record;
+        Transformer transformer = heldRecord.routed.getTransformer();
+        OffsetTracker tracker = trackers.computeIfAbsent(partition, (key) -> new OffsetTracker());
+        tracker.dispatched(record.offset());
+        inFlight.incrementAndGet();
+        
+        Object orderingKey = heldRecord.routed.getUrl();
+        if (orderingKey == null) {
+            orderingKey = record.key() != null ? record.key() : partition;
+        }
+        if (!workers.offer(orderingKey, () -> process(record, transformer, tracker))) {
+            tracker.withdrawn(record.offset());
+            inFlight.decrementAndGet();
+            return false;
+        }
+        return true;
+    }
+    
+    /*
+     * Here we run the record through the chain of its category and produce the result, completing its offset once sent
+     */
+    private void process(ConsumerRecord<String, byte[]> record, Transformer transformer, OffsetTracker tracker) {
+        try {
+            if (transformer == null) {
+                ScyllaMetrics.get().recordRejection(RejectionReason.UNKNOWN_CATEGORY);
+                send(KafkaConfig.DISPLAY_REJECTED_TOPIC, record.key(), record.value(), RejectionReason.UNKNOWN_CATEGORY, record.offset(), tracker);
+                return;
+            }
+            
+            TransformerChain chain = chains.get(transformer);
+            Outcome outcome = chain.process(record.key(), chain.read(record.value()));
+            if (outcome.isAccepted()) {
+                String topic = transformer.getSinkTopic();
+                send(topic, outcome.getKey(), sinkSerializer.serialize(topic, outcome.getRecord()), null, record.offset(), tracker);
+            } else {
+                String topic = transformer.getRejectedTopic();
+                send(topic, outcome.getKey(), serializer.serialize(topic, outcome.getRecord()), outcome.getRejectionReason(), record.offset(),
+                        tracker);
+            }
+        } catch (Exception e) {
+            failure = e;
+        }
+    }
+    
+    /*
+     * Here we send a record, with the reason it was rejected for in a header if it was rejected
+     */
+    private void send(String topic, String key, byte[] value, RejectionReason reason, long offset, OffsetTracker tracker) {
+        ProducerRecord<String, byte[]> producerRecord;
+        if (reason == null) {
+            producerRecord = new ProducerRecord<String, byte[]>(topic, key, value);
+        } else {
+            Header header = new RecordHeader(RejectionReason.HEADER, reason.getMetricName().getBytes(StandardCharsets.UTF_8));
+            producerRecord = new ProducerRecord<String, byte[]>(topic, null, isReasonKey ? reason.prefix(key) : key, value,
+                    Collections.singletonList(header));
+        }
+        producer.send(producerRecord, (metadata, exception) -> {
+            if (exception != null) {
+                failure = exception;
+                return;
+            }
+            tracker.completed(offset);
+            inFlight.decrementAndGet();
+        });
+    }
+    
+    private void commit(Collection<TopicPartition> partitions) {
+        Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<TopicPartition, OffsetAndMetadata>();
+        for (TopicPartition partition : partitions) {
+            OffsetTracker tracker = trackers.get(partition);
+            long committable = tracker != null ? tracker.committableOffset() : -1;
+            if (committable >= 0) {
+                offsets.put(partition, new OffsetAndMetadata(committable));
+            }
+        }
+        if (offsets.isEmpty()) {
+            return;
+        }
+        
+        try {
+            consumer.commitSync(offsets);
+            for (Map.Entry<TopicPartition, OffsetAndMetadata> offset : offsets.entrySet()) {
+                trackers.get(offset.getKey()).committed(offset.getValue().offset());
+            }
+        } catch (Exception e) {
+            logger.error("Unable to commit offsets "+offsets, e);
+        }
+    }
+    
+    /*
+     * Here we wait for the records already dispatched from the partitions to be sent, unless a record has failed
+     */
+    private void awaitIdle(Collection<TopicPartition> partitions) {
+        for (TopicPartition partition : partitions) {
+            OffsetTracker tracker = trackers.get(partition);
+            while (tracker != null && !tracker.isIdle() && failure == null) {
+                try {
+                    Thread.sleep(10);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+    
+    /*
+     * Here we stop polling, then wait for the records in flight to be sent and committed
+     */
+    @Override
+    public void close() {
+        isRunning = false;
+        try {
+            stopped.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    /*
+     * Before partitions move to another instance, we finish and commit the records already dispatched from them
+     */
+    private class CommitOnRevoke implements ConsumerRebalanceListener {
+        @Override
+        public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
+            held.keySet().removeAll(partitions);
+            awaitIdle(partitions);
+            commit(partitions);
+            trackers.keySet().removeAll(partitions);
+        }
+        
+        @Override
+        public void onPartitionsAssigned(Collection<TopicPartition> partitions) {
+        }
+    }
+    
+    /*
+     * A polled record, routed once when it is polled
+     */
+    private static class HeldRecord {
+        private final ConsumerRecord<String, byte[]> record;
+        private final Routed routed;
+        
+        HeldRecord(ConsumerRecord<String, byte[]> record, Routed routed) {
+            this.record = record;
+            this.routed = routed;
+        }
+    }
+}
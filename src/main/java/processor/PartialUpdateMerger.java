@@ -0,0 +1,165 @@
+package processor;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.streams.KeyValue;
+import org.apache.kafka.streams.kstream.Transformer;
+import org.apache.kafka.streams.processor.ProcessorContext;
+import org.apache.kafka.streams.state.KeyValueStore;
+import org.apache.kafka.streams.state.StoreBuilder;
+import org.apache.kafka.streams.state.Stores;
+
+import fields.Fields;
+import metrics.Counter;
+import metrics.RateLimitedLogger;
+import metrics.RejectionReason;
+import metrics.ScyllaMetrics;
+import model.ProductRecord;
+import rules.CompiledRules;
+import rules.ExpansionRule;
+import serde.ProductRecordDeserializer;
+import serde.ProductRecordSerializer;
+
+/*
+ * Merges partial updates, which carry only the fields that changed since the last scrape of a product, into the last
+ * normalized record of the same key. That record is kept per key in a persistent state store, before it is post-processed.
+ * It is stored as JSON rather than in the compact format, whose schema version changes with the fields, so that the stored
+ * records can still be read after a field is added or renamed. Full records replace the stored record, and a merged record is
+ * stored and passed on as a full record, so that post-processing and post-validation see every field. A partial update whose
+ * key has no stored record yet is quarantined.
+ */
+public class PartialUpdateMerger implements Transformer<String, ProductRecord, KeyValue<String, ProductRecord>> {
+    private static RateLimitedLogger logger = RateLimitedLogger.getLogger(PartialUpdateMerger.class);
+    
+    /*
+     * The field marking a record as a partial update, when set to "true"
+     */
+    public static final String MARKER_FIELD = "PartialUpdate";
+    
+    private final String storeName;
+    private final Counter merged;
+    private final ProductRecordSerializer serializer = new ProductRecordSerializer();
+    private final ProductRecordDeserializer deserializer = new ProductRecordDeserializer();
+    private KeyValueStore<String, byte[]> records;
+    
+    public PartialUpdateMerger(String storeName) {
+        this.storeName = storeName;
+        this.merged = ScyllaMetrics.get().getCounter(storeName+"-merged");
+    }
+    
+    public static StoreBuilder<KeyValueStore<String, byte[]>> storeBuilder(String storeName) {
+        return Stores.keyValueStoreBuilder(Stores.persistentKeyValueStore(storeName), Serdes.String(), Serdes.ByteArray());
+    }
+    
+    /*
+     * Here we check whether the record is marked as a partial update, without changing it
+     */
+    public static boolean isMarked(ProductRecord record) {
+        return record != null && !record.isMalformed() && "true".equalsIgnoreCase(record.get(MARKER_FIELD));
+    }
+    
+    /*
+     * Here we remove the marker of a partial update, and record which fields the update replaces. An aggregated field replaces
+     * every field it can be expanded into, since the fields it no longer lists must not be kept from the last record.
+     */
+    public static ProductRecord markPartial(ProductRecord record) {
+        if (record == null || record.isMalformed() || record.isQuarantined() || !record.has(MARKER_FIELD)) {
+            return record;
+        }
+        if (!"true".equalsIgnoreCase(record.remove(MARKER_FIELD))) {
+            return record;
+        }
+        
+        CompiledRules rules = CompiledRules.get();
+        Set<String> updatedFields = new HashSet<String>();
+        for (int i = 0; i < record.size(); i++) {
+            String field = record.nameAt(i);
+            updatedFields.add(field);
+            if (Fields.CONNECTORS.equals(field)) {
+                addFields(updatedFields, rules.getConnectorRules());
+            } else if (Fields.ERGONOMICS.equals(field)) {
+                addFields(updatedFields, rules.getErgonomicRules());
+            }
+        }
+        record.setUpdatedFields(updatedFields);
+        return record;
+    }
+    
+    private static void addFields(Set<String> fields, List<ExpansionRule> expansionRules) {
+        for (ExpansionRule expansionRule : expansionRules) {
+            fields.add(expansionRule.getField());
+        }
+    }
+    
+    @Override
+    @SuppressWarnings("unchecked")
+    public void init(ProcessorContext context) {
+        this.records = (KeyValueStore<String, byte[]>) context.getStateStore(storeName);
+    }
+    
+    @Override
+    public KeyValue<String, ProductRecord> transform(String key, ProductRecord record) {
+        if (key == null || record == null || record.isMalformed() || record.isQuarantined()) {
+            return KeyValue.pair(key, record);
+        }
+        if (!record.isPartialUpdate()) {
+            records.put(key, serializer.serialize(null, record));
+            return KeyValue.pair(key, record);
+        }
+        
+        ProductRecord lastRecord = read(records.get(key));
+        if (lastRecord == null) {
+            logger.warn( () -> "Quarantining partial update ("+RejectionReason.PARTIAL_WITHOUT_BASE.getMetricName()+"): no record for key "+key);
+            record.quarantine(RejectionReason.PARTIAL_WITHOUT_BASE);
+            return KeyValue.pair(key, record);
+        }
+        ProductRecord mergedRecord = merge(lastRecord, record);
+        records.put(key, serializer.serialize(null, mergedRecord));
+        merged.increment();
+        return KeyValue.pair(key, mergedRecord);
+    }
+    
+    @Override
+    @Deprecated
+    public KeyValue<String, ProductRecord> punctuate(long timestamp) {
+        return null;
+    }
+    
+    @Override
+    public void close() {
+    }
+    
+    /*
+     * Here we read the stored record, treating a record that can no longer be read (e.g. written in the compact format) as missing
+     */
+    private ProductRecord read(byte[] data) {
+        if (data == null) {
+            return null;
+        }
+        ProductRecord record = deserializer.deserialize(null, data);
+        return record.isMalformed() ? null : record;
+    }
+    
+    /*
+     * Here we replace the fields of the last record with the normalized fields of the update, in place. Fields the update
+     * carried but which did not normalize to a value are removed, as they would be missing from a full record, while the
+     * pass-through fields added empty by the normalization are only kept if the update carried them.
+     */
+    static ProductRecord merge(ProductRecord lastRecord, ProductRecord update) {
+        Set<String> updatedFields = update.getUpdatedFields();
+        for (String field : updatedFields) {
+            if (!update.has(field)) {
+                lastRecord.remove(field);
+            }
+        }
+        for (int i = 0; i < update.size(); i++) {
+            if (update.valueAt(i) != null || updatedFields.contains(update.nameAt(i))) {
+                lastRecord.put(update.nameAt(i), update.valueAt(i));
+            }
+        }
+        return lastRecord;
+    }
+}
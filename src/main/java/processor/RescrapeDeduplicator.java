@@ -0,0 +1,146 @@
+package processor;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.streams.KeyValue;
+import org.apache.kafka.streams.kstream.Transformer;
+import org.apache.kafka.streams.processor.ProcessorContext;
+import org.apache.kafka.streams.state.KeyValueStore;
+import org.apache.kafka.streams.state.StoreBuilder;
+import org.apache.kafka.streams.state.Stores;
+
+import fields.Fields;
+import metrics.Counter;
+import metrics.ScyllaMetrics;
+import model.ProductRecord;
+
+/*
+ * Drops re-scraped records whose normalized content has not changed since the last record emitted for the same key.
+ * A fingerprint of the last emitted record and the time it was emitted are kept per key in a persistent state store.
+ * If a maximum age is set, an unchanged record is emitted again once that long has passed since the last emit.
+ */
+public class RescrapeDeduplicator implements Transformer<String, ProductRecord, KeyValue<String, ProductRecord>> {
+    private static final int FINGERPRINT_LENGTH = 16;
+    
+    private final String storeName;
+    private final long maxAgeMs;
+    private final Counter suppressed;
+    private ProcessorContext context;
+    private KeyValueStore<String, byte[]> fingerprints;
+    private MessageDigest digester;
+    
+    /*
+     * A maximum age of zero or less means unchanged records are never emitted again
+     */
+    public RescrapeDeduplicator(String storeName, long maxAgeMs) {
+        this.storeName = storeName;
+        this.maxAgeMs = maxAgeMs;
+        this.suppressed = ScyllaMetrics.get().getCounter(storeName+"-suppressed");
+    }
+    
+    public static StoreBuilder<KeyValueStore<String, byte[]>> storeBuilder(String storeName) {
+        return Stores.keyValueStoreBuilder(Stores.persistentKeyValueStore(storeName), Serdes.String(), Serdes.ByteArray());
+    }
+    
+    @Override
+    @SuppressWarnings("unchecked")
+    public void init(ProcessorContext context) {
+        this.context = context;
+        this.fingerprints = (KeyValueStore<String, byte[]>) context.getStateStore(storeName);
+        try {
+            this.digester = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 is not available", e);
+        }
+    }
+    
+    @Override
+    public KeyValue<String, ProductRecord> transform(String key, ProductRecord record) {
+        if (key == null || record == null) {
+            return KeyValue.pair(key, record);
+        }
+        
+        byte[] fingerprint = fingerprint(digester, record);
+        long timestamp = context.timestamp();
+        
+        if (!shouldEmit(fingerprints.get(key), fingerprint, timestamp, maxAgeMs)) {
+            suppressed.increment();
+            return null;
+        }
+        fingerprints.put(key, toEntry(fingerprint, timestamp));
+        return KeyValue.pair(key, record);
+    }
+    
+    @Override
+    @Deprecated
+    public KeyValue<String, ProductRecord> punctuate(long timestamp) {
+        return null;
+    }
+    
+    @Override
+    public void close() {
+    }
+    
+    /*
+     * Here we decide whether a record must be emitted, given the entry stored for its key
+     */
+    static boolean shouldEmit(byte[] previousEntry, byte[] fingerprint, long timestamp, long maxAgeMs) {
+        if (previousEntry == null || previousEntry.length != Long.BYTES + FINGERPRINT_LENGTH) {
+            return true;
+        }
+        ByteBuffer entry = ByteBuffer.wrap(previousEntry);
+        long emittedAt = entry.getLong();
+        if (maxAgeMs > 0 && timestamp - emittedAt >= maxAgeMs) {
+            return true;
+        }
+        return !Arrays.equals(Arrays.copyOfRange(previousEntry, Long.BYTES, previousEntry.length), fingerprint);
+    }
+    
+    static byte[] toEntry(byte[] fingerprint, long timestamp) {
+        return ByteBuffer.allocate(Long.BYTES + FINGERPRINT_LENGTH).putLong(timestamp).put(fingerprint).array();
+    }
+    
+    /*
+     * Here we hash the normalized content of the record. The FoundTime changes with every scrape so it is left out, and
+     * fields are hashed in name order so the order they were scraped in does not matter.
+     */
+    static byte[] fingerprint(MessageDigest digester, ProductRecord record) {
+        digester.reset();
+        updateFields(digester, record.getFields());
+        for (Entry<String, Map<String,String>> category : new TreeMap<String, Map<String,String>>(record.getCategories()).entrySet()) {
+            update(digester, category.getKey());
+            digester.update((byte) '{');
+            updateFields(digester, category.getValue());
+            digester.update((byte) '}');
+        }
+        return digester.digest();
+    }
+    
+    private static void updateFields(MessageDigest digester, Map<String,String> fields) {
+        for (Entry<String,String> field : new TreeMap<String,String>(fields).entrySet()) {
+            if (Fields.FOUNDTIME.equals(field.getKey())) {
+                continue;
+            }
+            update(digester, field.getKey());
+            if (field.getValue() == null) {
+                digester.update((byte) 1);
+            } else {
+                digester.update((byte) 2);
+                update(digester, field.getValue());
+            }
+        }
+    }
+    
+    private static void update(MessageDigest digester, String value) {
+        digester.update(value.getBytes(StandardCharsets.UTF_8));
+        digester.update((byte) 0);
+    }
+}
@@ -0,0 +1,61 @@
+package processor;
+
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.streams.processor.AbstractProcessor;
+import org.apache.kafka.streams.processor.ProcessorContext;
+import org.apache.kafka.streams.state.KeyValueStore;
+import org.apache.kafka.streams.state.StoreBuilder;
+import org.apache.kafka.streams.state.Stores;
+import org.apache.log4j.Logger;
+
+import rules.RuleReloader;
+
+/*
+ * Keeps the global rules store up to date from the compacted rules topic, handing each new rules document to the RuleReloader.
+ * Only the document under RULES_KEY is used. On startup the document restored into the store is reloaded, as restoring the
+ * store does not pass through this processor.
+ */
+public class RuleUpdateProcessor extends AbstractProcessor<String, byte[]> {
+    private static Logger logger = Logger.getLogger(RuleUpdateProcessor.class);
+    
+    public static final String RULES_STORE = "scylla-rules";
+    public static final String RULES_KEY = "rules";
+    
+    private final RuleReloader reloader;
+    private KeyValueStore<String, byte[]> rulesStore;
+    
+    public RuleUpdateProcessor(RuleReloader reloader) {
+        this.reloader = reloader;
+    }
+    
+    public static StoreBuilder<KeyValueStore<String, byte[]>> storeBuilder() {
+        return Stores.keyValueStoreBuilder(Stores.inMemoryKeyValueStore(RULES_STORE), Serdes.String(), Serdes.ByteArray())
+                .withLoggingDisabled();
+    }
+    
+    @Override
+    @SuppressWarnings("unchecked")
+    public void init(ProcessorContext context) {
+        super.init(context);
+        this.rulesStore = (KeyValueStore<String, byte[]>) context.getStateStore(RULES_STORE);
+        
+        byte[] document = rulesStore.get(RULES_KEY);
+        if (document != null) {
+            reloader.submit("rules topic", document);
+        }
+    }
+    
+    @Override
+    public void process(String key, byte[] value) {
+        if (!RULES_KEY.equals(key)) {
+            logger.warn("Ignoring rules document under key "+key+", rules are only read from key "+RULES_KEY);
+            return;
+        }
+        if (value == null) {
+            rulesStore.delete(key);
+            return;
+        }
+        rulesStore.put(key, value);
+        reloader.submit("rules topic", value);
+    }
+}
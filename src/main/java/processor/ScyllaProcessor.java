@@ -1,73 +1,151 @@
 package processor;
 
+import java.nio.file.Paths;
 import java.security.NoSuchAlgorithmException;
 import java.util.Properties;
+import java.util.concurrent.TimeUnit;
 
-import org.apache.kafka.common.serialization.Serdes;
-import org.apache.kafka.streams.Consumed;
 import org.apache.kafka.streams.KafkaStreams;
-import org.apache.kafka.streams.StreamsBuilder;
 import org.apache.kafka.streams.StreamsConfig;
-import org.apache.kafka.streams.kstream.KStream;
+import org.apache.kafka.streams.Topology;
 import org.apache.log4j.Logger;
 
 import config.KafkaConfig;
+import metrics.ScyllaMetrics;
+import rules.CompiledRules;
+import rules.RuleProfiler;
+import rules.RuleReloader;
+import settings.ScyllaSettings;
 import transformer.*;
 
 
 public class ScyllaProcessor {
     
     private static Logger logger = Logger.getLogger(ScyllaProcessor.class);
-    private static StreamsBuilder builder = new StreamsBuilder();
     private static Properties streamsProps;
+    private static RuleReloader ruleReloader = new RuleReloader();
+    private static ScyllaSettings settings = ScyllaSettings.get();
     
     public static void main(String[] args) throws NoSuchAlgorithmException {
         initializeProperties();
-        defineStream();
+        registerMetrics();
+        if (settings.get(ScyllaSettings.PARALLEL_ENABLED)) {
+            runParallel();
+            return;
+        }
+        watchRulesFile();
+        TransformerRegistry registry = loadRegistry();
+        WarmUp.runIfEnabled(registry, settings);
+        Topology topology = new ScyllaTopology(settings, registry).withRuleReloader(ruleReloader).build();
         
-        KafkaStreams streams = new KafkaStreams(builder.build(), streamsProps);
-        Runtime.getRuntime().addShutdownHook(new Thread(streams::close));
+        MonitoredClientSupplier clientSupplier = new MonitoredClientSupplier();
+        KafkaStreams streams = new KafkaStreams(topology, new StreamsConfig(streamsProps), clientSupplier);
+        StreamsHealth health = new StreamsHealth(clientSupplier);
+        health.watch(streams);
+        HealthServer healthServer = startHealthServer(health);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> close(streams, health), "scylla-shutdown"));
         try {
             streams.start();
-            Thread.sleep(Long.MAX_VALUE);
+            health.awaitStop();
         } catch (Exception e) {
             logger.error("An error occured while executing streams application",e);
         } finally {
-            streams.close();
-            streams.cleanUp();
+            close(streams, health);
+            if (healthServer != null) {
+                healthServer.close();
+            }
+            ruleReloader.close();
+        }
+        if (health.isFailed()) {
+            System.exit(1);
+        }
+    }
+    
+    /*
+     * Here we close the streams, keeping the local state so that a restart resumes from it instead of restoring every store
+     * from its changelog
+     */
+    private static void close(KafkaStreams streams, StreamsHealth health) {
+        health.setClosing();
+        long timeoutMs = settings.get(ScyllaSettings.SHUTDOWN_TIMEOUT_MS);
+        if (!streams.close(timeoutMs, TimeUnit.MILLISECONDS)) {
+            logger.warn("Streams did not close within "+timeoutMs+"ms, stores which were not checkpointed will be restored on restart");
+        }
+    }
+    
+    private static HealthServer startHealthServer(StreamsHealth health) {
+        int port = settings.get(ScyllaSettings.HEALTH_PORT);
+        if (port <= 0) {
+            return null;
+        }
+        try {
+            return new HealthServer(port, health);
+        } catch (Exception e) {
+            logger.error("Unable to serve health on port "+port,e);
         }
+        return null;
     }
     
+    /*
+     * Here we build the streams properties from the settings, logging where each setting came from
+     */
     protected static void initializeProperties() throws NoSuchAlgorithmException {
-        streamsProps = new Properties();
-        
-        streamsProps.put(StreamsConfig.APPLICATION_ID_CONFIG, KafkaConfig.SCYLLA_GROUP_ID);
-        streamsProps.put(StreamsConfig.BOOTSTRAP_SERVERS_CONFIG, KafkaConfig.BOOTSTRAP_SERVER);
-        streamsProps.put(StreamsConfig.DEFAULT_KEY_SERDE_CLASS_CONFIG, Serdes.String().getClass());
-        streamsProps.put(StreamsConfig.DEFAULT_VALUE_SERDE_CLASS_CONFIG, Serdes.String().getClass());
+        settings.logEffectiveValues();
+        streamsProps = ScyllaTopology.streamsProperties(settings);
     }
     
-    private static void defineStream() {
-        DisplayTransformer displayTransformer = new DisplayTransformer();
-        
-        KStream<String, String>[] displaysPreValidated = builder
-                .stream(KafkaConfig.DISPLAY_SOURCE_TOPIC, Consumed.with(Serdes.String(), Serdes.String()))
-                .branch( (key, value) -> displayTransformer.preValidate(value), (key, value) -> true);
-        
-        KStream<String, String> displaysPreProcessed = displaysPreValidated[0]
-                .map( (key, value) -> displayTransformer.generateKey(key, value))
-                .mapValues( (value) -> displayTransformer.preProcess(value));
+    /*
+     * Here we expose the stage latencies, field match counters, rejection counters, normalization cache and rule profiler over JMX
+     */
+    protected static void registerMetrics() {
+        ScyllaMetrics metrics = ScyllaMetrics.get();
+        metrics.registerMBeans(CompiledRules.get().getFieldRules().keySet());
+        metrics.registerMBean(Transformer.getNormalizationCache(), "type=NormalizationCache");
         
-        KStream<String,String> displaysPostProcessed = displaysPreProcessed
-                .mapValues( (value) -> displayTransformer.normalizeFields(value))
-                .mapValues( (value) -> displayTransformer.postProcess(value));
-        
-        KStream<String, String>[] displaysPostValidated = displaysPostProcessed
-                .branch( (key, value) -> displayTransformer.postValidate(value), (key, value) -> true);
-        
-        displaysPostValidated[0].to(KafkaConfig.DISPLAY_SINK_TOPIC);
+        RuleProfiler profiler = RuleProfiler.get();
+        profiler.configure(settings.get(ScyllaSettings.PROFILER_SAMPLE_RATE), settings.get(ScyllaSettings.PROFILER_REPORT_INTERVAL_MS),
+                settings.get(ScyllaSettings.PROFILER_REPORT_SIZE));
+        metrics.registerMBean(profiler, "type=RuleProfiler");
+    }
+    
+    /*
+     * Here we process the source topic with a ParallelProcessor instead of the topology. State stores are not available to it,
+     * so unchanged re-scrapes are not dropped, partial updates are not merged and rules are only reloaded from the rules file.
+     */
+    private static void runParallel() {
+        if (settings.get(ScyllaSettings.DEDUP_ENABLED) || settings.get(ScyllaSettings.RULES_TOPIC) != null) {
+            logger.warn("Dedup and the rules topic are not supported when processing in parallel, and are ignored");
+        }
+        watchRulesFile();
+        TransformerRegistry registry = loadRegistry();
+        for (Transformer transformer : registry.getTransformers()) {
+            if (ScyllaTopology.isPartialEnabled(settings, transformer)) {
+                logger.warn("Partial updates are not supported when processing in parallel: "+transformer.getCategory()
+                        +" partial updates are not merged, and are rejected at pre-validation like any incomplete record");
+            }
+        }
+        WarmUp.runIfEnabled(registry, settings);
         
-        displaysPreValidated[1].to(KafkaConfig.DISPLAY_REJECTED_TOPIC);
-        displaysPostValidated[1].to(KafkaConfig.DISPLAY_REJECTED_TOPIC);
+        ParallelProcessor processor = new ParallelProcessor(KafkaConfig.DISPLAY_SOURCE_TOPIC, registry, settings);
+        Runtime.getRuntime().addShutdownHook(new Thread(processor::close));
+        try {
+            processor.run();
+        } finally {
+            ruleReloader.close();
+        }
+    }
+    
+    private static TransformerRegistry loadRegistry() {
+        return TransformerRegistry.load(settings.get(ScyllaSettings.DEFAULT_CATEGORY));
+    }
+    
+    /*
+     * Here we load the rules file, if set, before processing starts, and watch it for changes
+     */
+    private static void watchRulesFile() {
+        String rulesFile = settings.get(ScyllaSettings.RULES_FILE);
+        if (rulesFile != null) {
+            ruleReloader.watch(Paths.get(rulesFile), settings.get(ScyllaSettings.RULES_POLL_MS));
+        }
     }
 }
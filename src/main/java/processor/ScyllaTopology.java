@@ -0,0 +1,202 @@
+package processor;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.function.Function;
+
+import org.apache.kafka.common.serialization.Serde;
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.streams.Consumed;
+import org.apache.kafka.streams.KeyValue;
+import org.apache.kafka.streams.StreamsBuilder;
+import org.apache.kafka.streams.StreamsConfig;
+import org.apache.kafka.streams.Topology;
+import org.apache.kafka.streams.kstream.KStream;
+import org.apache.kafka.streams.kstream.Predicate;
+import org.apache.kafka.streams.kstream.Produced;
+
+import config.KafkaConfig;
+import metrics.RejectionReason;
+import metrics.ScyllaMetrics;
+import model.ProductRecord;
+import processor.CategoryRouter.Routed;
+import rules.RuleReloader;
+import serde.ProductRecordSerde;
+import serde.SinkFormat;
+import settings.ScyllaSettings;
+import transformer.Transformer;
+import transformer.TransformerRegistry;
+
+/*
+ * Builds the processing topology from the settings and the registered Transformers. Each call to build() returns a new
+ * Topology, so the same topology can be run by KafkaStreams or driven in process by a test driver.
+ */
+public class ScyllaTopology {
+    private final ScyllaSettings settings;
+    private final TransformerRegistry registry;
+    private RuleReloader ruleReloader;
+    
+    public ScyllaTopology(ScyllaSettings settings, TransformerRegistry registry) {
+        this.settings = settings;
+        this.registry = registry;
+    }
+    
+    /*
+     * Rules documents read from the rules topic are handed to the reloader. Without one, the rules topic is not read.
+     */
+    public ScyllaTopology withRuleReloader(RuleReloader ruleReloader) {
+        this.ruleReloader = ruleReloader;
+        return this;
+    }
+    
+    public Topology build() {
+        StreamsBuilder builder = new StreamsBuilder();
+        defineRuleSources(builder);
+        defineStream(builder);
+        return builder.build();
+    }
+    
+    /*
+     * Here we build the streams properties from the settings, with String serdes as the default
+     */
+    public static Properties streamsProperties(ScyllaSettings settings) {
+        Properties streamsProps = settings.streamsProperties();
+        streamsProps.put(StreamsConfig.DEFAULT_KEY_SERDE_CLASS_CONFIG, Serdes.String().getClass());
+        streamsProps.put(StreamsConfig.DEFAULT_VALUE_SERDE_CLASS_CONFIG, Serdes.String().getClass());
+        return streamsProps;
+    }
+    
+    /*
+     * Here we read the rules topic, if set, into a global store on every instance, so that rule changes are picked up without
+     * a restart.
+     */
+    private void defineRuleSources(StreamsBuilder builder) {
+        String rulesTopic = settings.get(ScyllaSettings.RULES_TOPIC);
+        if (rulesTopic != null && ruleReloader != null) {
+            builder.addGlobalStore(RuleUpdateProcessor.storeBuilder(), rulesTopic, "scylla-rules-source",
+                    Consumed.with(Serdes.String(), Serdes.ByteArray()), "scylla-rules-updater", () -> new RuleUpdateProcessor(ruleReloader));
+        }
+    }
+    
+    /*
+     * Here we drop re-scraped records whose normalized content is unchanged
+     */
+    private KStream<String, ProductRecord> deduplicate(StreamsBuilder builder, KStream<String, ProductRecord> stream, String storeName) {
+        long maxAgeMs = settings.get(ScyllaSettings.DEDUP_MAX_AGE_MS);
+        builder.addStateStore(RescrapeDeduplicator.storeBuilder(storeName));
+        return stream.transform(() -> new RescrapeDeduplicator(storeName, maxAgeMs), storeName);
+    }
+    
+    /*
+     * Here we merge partial updates into the last normalized record of their key
+     */
+    private KStream<String, ProductRecord> mergePartialUpdates(StreamsBuilder builder, KStream<String, ProductRecord> stream,
+            String storeName) {
+        builder.addStateStore(PartialUpdateMerger.storeBuilder(storeName));
+        return stream.transform(() -> new PartialUpdateMerger(storeName), storeName);
+    }
+    
+    /*
+     * Whether partial updates of the Transformer's category are merged, which only the topology can do
+     */
+    public static boolean isPartialEnabled(ScyllaSettings settings, Transformer transformer) {
+        String category = transformer.getCategory().toLowerCase(Locale.ROOT);
+        return settings.getBoolean("scylla."+category+".partial.enabled", settings.get(ScyllaSettings.PARTIAL_ENABLED));
+    }
+    
+    /*
+     * Here we count each rejected record under its reason, and prefix its key with the reason if set. Kafka Streams cannot write
+     * headers, so the key is the only place the reason can be kept without changing the rejected record itself.
+     */
+    private <V> KStream<String, V> rejected(KStream<String, V> stream, Function<V, RejectionReason> reasonOf) {
+        ScyllaMetrics metrics = ScyllaMetrics.get();
+        boolean isReasonKey = settings.get(ScyllaSettings.REJECTED_REASON_KEY);
+        return stream.map( (key, value) -> {
+            RejectionReason reason = reasonOf.apply(value);
+            metrics.recordRejection(reason);
+            return KeyValue.pair(isReasonKey ? reason.prefix(key) : key, value);
+        });
+    }
+    
+    /*
+     * Here we route each source record to the Transformer of its Category, then define one chain per category. When routing
+     * through topics, each category is read back from its own routed topic, making it a separate sub-topology whose parallelism
+     * follows the partition count of that topic.
+     */
+    private void defineStream(StreamsBuilder builder) {
+        CategoryRouter router = new CategoryRouter(registry);
+        List<Transformer> transformers = registry.getTransformers();
+        boolean routeThroughTopics = settings.get(ScyllaSettings.ROUTING_TOPICS);
+        
+        @SuppressWarnings("unchecked")
+        Predicate<String, Routed>[] routes = (Predicate<String, Routed>[]) new Predicate[transformers.size() + 1];
+        for (int i = 0; i < transformers.size(); i++) {
+            Transformer transformer = transformers.get(i);
+            routes[i] = (key, value) -> value.getTransformer() == transformer;
+        }
+        routes[transformers.size()] = (key, value) -> true;
+        
+        KStream<String, Routed>[] routed = builder
+                .stream(KafkaConfig.DISPLAY_SOURCE_TOPIC, Consumed.with(Serdes.String(), Serdes.ByteArray()))
+                .mapValues( (value) -> router.route(value))
+                .branch(routes);
+        
+        for (int i = 0; i < transformers.size(); i++) {
+            Transformer transformer = transformers.get(i);
+            KStream<String, byte[]> categoryStream = routed[i].mapValues( (value) -> value.getValue());
+            if (routeThroughTopics) {
+                categoryStream = categoryStream.through(transformer.getRoutedTopic(), Produced.with(Serdes.String(), Serdes.ByteArray()));
+            }
+            defineCategoryStream(builder, transformer, categoryStream);
+        }
+        
+        // Records of a category without a Transformer, when there is no default Transformer
+        rejected(routed[transformers.size()].mapValues( (value) -> value.getValue()), (value) -> RejectionReason.UNKNOWN_CATEGORY)
+                .to(KafkaConfig.DISPLAY_REJECTED_TOPIC, Produced.with(Serdes.String(), Serdes.ByteArray()));
+    }
+    
+    private void defineCategoryStream(StreamsBuilder builder, Transformer transformer, KStream<String, byte[]> categoryStream) {
+        String category = transformer.getCategory().toLowerCase(Locale.ROOT);
+        boolean isPartialEnabled = isPartialEnabled(settings, transformer);
+        boolean isDedupEnabled = settings.getBoolean("scylla."+category+".dedup.enabled", settings.get(ScyllaSettings.DEDUP_ENABLED));
+        TransformerChain chain = new TransformerChain(transformer, settings, isPartialEnabled);
+        ProductRecordSerde recordSerde = new ProductRecordSerde();
+        Serde<ProductRecord> sinkSerde = SinkFormat.of(settings.get(ScyllaSettings.SINK_FORMAT)).serde();
+        
+        KStream<String, ProductRecord>[] preValidated = categoryStream
+                .mapValues( (value) -> chain.read(value))
+                .branch( (key, value) -> chain.preValidate(value), (key, value) -> true);
+        
+        // Records are repartitioned by their generated key before the stores kept per key, so that every record of a URL reaches
+        // the same store. Partial updates are marked after the repartition, as the repartition topic carries the marker field.
+        KStream<String, ProductRecord> keyed = preValidated[0].map( (key, value) -> chain.generateKey(key, value));
+        if (isDedupEnabled || isPartialEnabled) {
+            keyed = keyed.through(transformer.getKeyedTopic(), Produced.with(Serdes.String(), recordSerde));
+        }
+        if (isPartialEnabled) {
+            keyed = keyed.mapValues( (value) -> PartialUpdateMerger.markPartial(value));
+        }
+        KStream<String, ProductRecord> preProcessed = keyed.mapValues( (value) -> chain.preProcess(value));
+        
+        KStream<String, ProductRecord> normalized = preProcessed.mapValues( (value) -> chain.normalizeFields(value));
+        if (isPartialEnabled) {
+            normalized = mergePartialUpdates(builder, normalized, category+"-last-records");
+        }
+        KStream<String, ProductRecord> postProcessed = normalized.mapValues( (value) -> chain.postProcess(value));
+        
+        KStream<String, ProductRecord>[] postValidated = postProcessed
+                .branch( (key, value) -> chain.postValidate(value), (key, value) -> true);
+        
+        KStream<String, ProductRecord> accepted = postValidated[0];
+        if (isDedupEnabled) {
+            accepted = deduplicate(builder, accepted, category+"-fingerprints");
+        }
+        accepted.to(transformer.getSinkTopic(), Produced.with(Serdes.String(), sinkSerde));
+        
+        rejected(preValidated[1], (value) -> TransformerChain.rejectionReasonOf(value, RejectionReason.PRE_VALIDATION))
+                .to(transformer.getRejectedTopic(), Produced.with(Serdes.String(), recordSerde));
+        rejected(postValidated[1], (value) -> TransformerChain.rejectionReasonOf(value, RejectionReason.POST_VALIDATION))
+                .to(transformer.getRejectedTopic(), Produced.with(Serdes.String(), recordSerde));
+    }
+}
@@ -0,0 +1,145 @@
+package processor;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.streams.KafkaStreams;
+import org.apache.kafka.streams.processor.TaskMetadata;
+import org.apache.kafka.streams.processor.ThreadMetadata;
+import org.apache.log4j.Logger;
+
+import metrics.Counter;
+import metrics.ScyllaMetrics;
+
+/*
+ * The health of the KafkaStreams instance, as told by its state listener and uncaught exception handler. The processor is live
+ * until its streams fail (every stream thread died) or stop without being closed, and ready while its streams are RUNNING, that
+ * is once partitions are assigned and their state is restored.
+ */
+public class StreamsHealth implements KafkaStreams.StateListener, Thread.UncaughtExceptionHandler {
+    private static Logger logger = Logger.getLogger(StreamsHealth.class);
+    
+    private final MonitoredClientSupplier clientSupplier;
+    private final CountDownLatch stopped = new CountDownLatch(1);
+    private final Counter threadFailures;
+    private volatile KafkaStreams streams;
+    private volatile KafkaStreams.State state = KafkaStreams.State.CREATED;
+    private volatile boolean isClosing;
+    
+    public StreamsHealth(MonitoredClientSupplier clientSupplier) {
+        this.clientSupplier = clientSupplier;
+        this.threadFailures = ScyllaMetrics.get().getCounter("stream-thread-failures");
+    }
+    
+    /*
+     * Here we start listening to the streams, which must not have been started yet
+     */
+    public void watch(KafkaStreams streams) {
+        this.streams = streams;
+        streams.setStateListener(this);
+        streams.setUncaughtExceptionHandler(this);
+    }
+    
+    @Override
+    public void onChange(KafkaStreams.State newState, KafkaStreams.State oldState) {
+        state = newState;
+        if (newState == KafkaStreams.State.ERROR) {
+            logger.error("Streams failed, changing state from "+oldState+" to "+newState);
+        } else {
+            logger.info("Streams changed state from "+oldState+" to "+newState);
+        }
+        if (newState == KafkaStreams.State.NOT_RUNNING || newState == KafkaStreams.State.ERROR) {
+            stopped.countDown();
+        }
+    }
+    
+    @Override
+    public void uncaughtException(Thread thread, Throwable e) {
+        threadFailures.increment();
+        logger.error("Stream thread "+thread.getName()+" died, its partitions will be reassigned",e);
+    }
+    
+    /*
+     * Here we wait until the streams stop, either because they are closed or because they failed
+     */
+    public void awaitStop() throws InterruptedException {
+        stopped.await();
+    }
+    
+    public void setClosing() {
+        this.isClosing = true;
+    }
+    
+    public KafkaStreams.State getState() {
+        return state;
+    }
+    
+    public boolean isLive() {
+        return state != KafkaStreams.State.ERROR && (state != KafkaStreams.State.NOT_RUNNING || isClosing);
+    }
+    
+    public boolean isReady() {
+        return state == KafkaStreams.State.RUNNING;
+    }
+    
+    public boolean isFailed() {
+        return state == KafkaStreams.State.ERROR;
+    }
+    
+    /*
+     * Here we describe the streams for the health endpoint: their state, the tasks of each thread and the lag of every
+     * partition assigned to this instance (null until its consumer has fetched it)
+     */
+    public Map<String, Object> status() {
+        Map<String, Object> status = new LinkedHashMap<String, Object>();
+        status.put("state", state.name());
+        status.put("live", isLive());
+        status.put("ready", isReady());
+        status.put("threadFailures", threadFailures.getCount());
+        
+        List<Map<String, Object>> threads = new ArrayList<Map<String, Object>>();
+        Map<String, Long> lag = new TreeMap<String, Long>();
+        long totalLag = 0;
+        KafkaStreams watchedStreams = streams;
+        if (watchedStreams != null && (state == KafkaStreams.State.RUNNING || state == KafkaStreams.State.REBALANCING)) {
+            Map<TopicPartition, Long> partitionLag = clientSupplier.getLag();
+            try {
+                for (ThreadMetadata thread : watchedStreams.localThreadsMetadata()) {
+                    Map<String, Object> threadStatus = new LinkedHashMap<String, Object>();
+                    threadStatus.put("name", thread.threadName());
+                    threadStatus.put("state", thread.threadState());
+                    threadStatus.put("activeTasks", taskIds(thread.activeTasks()));
+                    threadStatus.put("standbyTasks", taskIds(thread.standbyTasks()));
+                    threads.add(threadStatus);
+                    
+                    for (TaskMetadata task : thread.activeTasks()) {
+                        for (TopicPartition partition : task.topicPartitions()) {
+                            Long partitionRecords = partitionLag.get(partition);
+                            lag.put(partition.toString(), partitionRecords);
+                            totalLag += partitionRecords == null ? 0 : partitionRecords;
+                        }
+                    }
+                }
+            } catch (IllegalStateException e) {
+                logger.debug("Streams stopped while reading their metadata", e);
+            }
+        }
+        status.put("threads", threads);
+        status.put("totalLag", totalLag);
+        status.put("lag", lag);
+        return status;
+    }
+    
+    private static List<String> taskIds(Iterable<TaskMetadata> tasks) {
+        List<String> taskIds = new ArrayList<String>();
+        for (TaskMetadata task : tasks) {
+            taskIds.add(task.taskId());
+        }
+        return taskIds;
+    }
+}
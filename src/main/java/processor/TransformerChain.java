@@ -0,0 +1,287 @@
+package processor;
+
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.kafka.streams.KeyValue;
+
+import fields.Fields;
+import metrics.RateLimitedLogger;
+import metrics.RejectionReason;
+import metrics.ScyllaMetrics;
+import metrics.Stage;
+import model.ProductRecord;
+import rules.MatchBudget;
+import rules.MatchBudgetExceededException;
+import serde.ProductRecordDeserializer;
+import settings.ScyllaSettings;
+import transformer.Transformer;
+
+/*
+ * The stages a record passes through, in the order of the processing topology, each timed in the stage metrics.
+ * The topology calls each stage on its own, while process() runs the whole chain for a single record outside of Kafka.
+ * Records over the size limits, malformed records, records without a required field, records a stage fails on, and records whose
+ * rules run out of their match budget are quarantined: every later stage passes them on untouched, and they are rejected with
+ * the reason they were quarantined for.
+ */
+public class TransformerChain {
+    private static RateLimitedLogger logger = RateLimitedLogger.getLogger(TransformerChain.class);
+    
+    private final Transformer transformer;
+    private final ScyllaMetrics metrics;
+    private final ProductRecordDeserializer deserializer = new ProductRecordDeserializer();
+    private final String[] requiredFields;
+    private final int maxRecordBytes;
+    private final int maxFieldLength;
+    private final long matchBudget;
+    private final boolean isPartialEnabled;
+    
+    public TransformerChain(Transformer transformer) {
+        this(transformer, ScyllaSettings.get());
+    }
+    
+    public TransformerChain(Transformer transformer, ScyllaSettings settings) {
+        this(transformer, settings, false);
+    }
+    
+    /*
+     * Partial updates are only validated as such when they are merged afterwards, which needs the state store of the topology
+     */
+    public TransformerChain(Transformer transformer, ScyllaSettings settings, boolean isPartialEnabled) {
+        this.transformer = transformer;
+        this.isPartialEnabled = isPartialEnabled;
+        this.metrics = ScyllaMetrics.get();
+        this.requiredFields = settings.get(ScyllaSettings.GUARD_REQUIRED_FIELDS) ? transformer.getRequiredFields().toArray(new String[0])
+                : new String[0];
+        this.maxRecordBytes = settings.get(ScyllaSettings.GUARD_MAX_RECORD_BYTES);
+        this.maxFieldLength = settings.get(ScyllaSettings.GUARD_MAX_FIELD_LENGTH);
+        this.matchBudget = settings.get(ScyllaSettings.GUARD_MATCH_BUDGET);
+    }
+    
+    public Transformer getTransformer() {
+        return transformer;
+    }
+    
+    /*
+     * Here we parse the consumed bytes, unless the record is too large to be parsed safely, and quarantine a record which cannot
+     * be parsed, lacks a required field or has a value over the field length limit. The parse is the only pass over the bytes,
+     * as the required fields are looked up in the parsed record.
+     */
+    public ProductRecord read(byte[] value) {
+        if (value != null && maxRecordBytes > 0 && value.length > maxRecordBytes) {
+            return quarantine(ProductRecord.malformed(value), RejectionReason.RECORD_TOO_LARGE, value.length+" bytes");
+        }
+        
+        ProductRecord record = deserializer.deserialize(null, value);
+        if (record == null) {
+            return null;
+        }
+        if (record.isMalformed()) {
+            return quarantine(record, RejectionReason.MALFORMED, value.length+" bytes");
+        }
+        String missingField = findMissingField(record);
+        if (missingField != null) {
+            return quarantine(record, RejectionReason.MISSING_FIELDS, "no "+missingField);
+        }
+        checkFieldLengths(record);
+        return record;
+    }
+    
+    /*
+     * Here we return the first required field without a value. A partial update only needs its URL, and only when partial
+     * updates are merged, otherwise its marker is an ordinary field.
+     */
+    private String findMissingField(ProductRecord record) {
+        boolean isPartialUpdate = isPartialEnabled && PartialUpdateMerger.isMarked(record);
+        for (String requiredField : requiredFields) {
+            if ((!isPartialUpdate || Fields.URL.equals(requiredField)) && record.get(requiredField) == null) {
+                return requiredField;
+            }
+        }
+        return null;
+    }
+    
+    /*
+     * Here we validate the record with its Transformer. A partial update only needs the URL it is keyed by, as the fields it
+     * leaves out are taken from the last record of that key.
+     */
+    public boolean preValidate(ProductRecord record) {
+        long start = System.nanoTime();
+        boolean isValid;
+        if (isPartialEnabled && PartialUpdateMerger.isMarked(record)) {
+            isValid = !record.isQuarantined() && StringUtils.isNotEmpty(record.get(Fields.URL));
+        } else {
+            isValid = (record == null || !record.isQuarantined()) && transformer.preValidate(record);
+        }
+        metrics.recordStage(Stage.PRE_VALIDATE, start);
+        return isValid;
+    }
+    
+    /*
+     * Here we key the record by its hashed URL, keeping the original key and quarantining the record if the URL cannot be hashed
+     */
+    public KeyValue<String, ProductRecord> generateKey(String key, ProductRecord record) {
+        if (record == null || record.isQuarantined()) {
+            return KeyValue.pair(key, record);
+        }
+        long start = System.nanoTime();
+        KeyValue<String, ProductRecord> keyValue = Transformer.generateKey(key, record);
+        metrics.recordStage(Stage.GENERATE_KEY, start);
+        return keyValue != null ? keyValue : KeyValue.pair(key, failed(record, Stage.GENERATE_KEY));
+    }
+    
+    /*
+     * Here we expand the record, starting the match budget it is normalized with. A record which runs out of the budget ends it.
+     */
+    public ProductRecord preProcess(ProductRecord record) {
+        if (record == null || record.isQuarantined()) {
+            return record;
+        }
+        long start = System.nanoTime();
+        MatchBudget.get().reset(matchBudget);
+        ProductRecord preProcessed;
+        try {
+            preProcessed = failed(record, transformer.preProcess(record), Stage.PRE_PROCESS);
+        } catch (MatchBudgetExceededException e) {
+            MatchBudget.get().end();
+            preProcessed = quarantine(record, RejectionReason.MATCH_BUDGET_EXCEEDED, e.getMessage());
+        }
+        metrics.recordStage(Stage.PRE_PROCESS, start);
+        return preProcessed;
+    }
+    
+    /*
+     * Here we normalize the record with what pre-processing left of its match budget, then end the budget, so that the rules are
+     * never limited by an earlier record when they are called outside of the chain
+     */
+    public ProductRecord normalizeFields(ProductRecord record) {
+        if (record == null || record.isQuarantined()) {
+            MatchBudget.get().end();
+            return record;
+        }
+        long start = System.nanoTime();
+        ProductRecord normalized;
+        try {
+            normalized = failed(record, Transformer.normalizeFields(record), Stage.NORMALIZE);
+        } catch (MatchBudgetExceededException e) {
+            normalized = quarantine(record, RejectionReason.MATCH_BUDGET_EXCEEDED, e.getMessage());
+        } finally {
+            MatchBudget.get().end();
+        }
+        metrics.recordStage(Stage.NORMALIZE, start);
+        return normalized;
+    }
+    
+    public ProductRecord postProcess(ProductRecord record) {
+        if (record == null || record.isQuarantined()) {
+            return record;
+        }
+        long start = System.nanoTime();
+        ProductRecord postProcessed = failed(record, transformer.postProcess(record), Stage.POST_PROCESS);
+        metrics.recordStage(Stage.POST_PROCESS, start);
+        return postProcessed;
+    }
+    
+    public boolean postValidate(ProductRecord record) {
+        long start = System.nanoTime();
+        boolean isValid = (record == null || !record.isQuarantined()) && transformer.postValidate(record);
+        metrics.recordStage(Stage.POST_VALIDATE, start);
+        return isValid;
+    }
+    
+    /*
+     * Here we return the reason a record failing validation is rejected for, which is the reason it was quarantined for if it was
+     */
+    public static RejectionReason rejectionReasonOf(ProductRecord record, RejectionReason validationReason) {
+        if (record != null && record.isQuarantined()) {
+            return record.getQuarantineReason();
+        }
+        return validationReason;
+    }
+    
+    private void checkFieldLengths(ProductRecord record) {
+        if (maxFieldLength <= 0) {
+            return;
+        }
+        for (int i = 0; i < record.size(); i++) {
+            if (record.valueAt(i) != null && record.valueAt(i).length() > maxFieldLength) {
+                quarantine(record, RejectionReason.FIELD_TOO_LARGE, record.nameAt(i)+" of "+record.valueAt(i).length()+" characters");
+                return;
+            }
+        }
+        for (Map<String,String> categoryFields : record.getCategories().values()) {
+            for (Map.Entry<String,String> field : categoryFields.entrySet()) {
+                if (field.getValue() != null && field.getValue().length() > maxFieldLength) {
+                    quarantine(record, RejectionReason.FIELD_TOO_LARGE, field.getKey()+" of "+field.getValue().length()+" characters");
+                    return;
+                }
+            }
+        }
+    }
+    
+    /*
+     * Here we return the result of a stage, quarantining the record the stage was given if the stage failed on it
+     */
+    private ProductRecord failed(ProductRecord record, ProductRecord result, Stage stage) {
+        return result != null ? result : failed(record, stage);
+    }
+    
+    private ProductRecord failed(ProductRecord record, Stage stage) {
+        return quarantine(record, RejectionReason.PROCESSING_ERROR, stage.getMetricName()+" failed");
+    }
+    
+    private ProductRecord quarantine(ProductRecord record, RejectionReason reason, String detail) {
+        logger.warn( () -> "Quarantining record ("+reason.getMetricName()+"): "+detail);
+        record.quarantine(reason);
+        return record;
+    }
+    
+    /*
+     * Here we pass a single record through every stage, with the same result as the processing topology
+     */
+    public Outcome process(String key, ProductRecord record) {
+        if (!preValidate(record)) {
+            RejectionReason reason = rejectionReasonOf(record, RejectionReason.PRE_VALIDATION);
+            metrics.recordRejection(reason);
+            return new Outcome(key, record, reason);
+        }
+        
+        KeyValue<String, ProductRecord> keyValue = generateKey(key, record);
+        ProductRecord processed = postProcess(normalizeFields(preProcess(keyValue.value)));
+        
+        if (!postValidate(processed)) {
+            RejectionReason reason = rejectionReasonOf(processed, RejectionReason.POST_VALIDATION);
+            metrics.recordRejection(reason);
+            return new Outcome(keyValue.key, processed, reason);
+        }
+        return new Outcome(keyValue.key, processed, null);
+    }
+    
+    public static class Outcome {
+        private final String key;
+        private final ProductRecord record;
+        private final RejectionReason rejectionReason;
+        
+        public Outcome(String key, ProductRecord record, RejectionReason rejectionReason) {
+            this.key = key;
+            this.record = record;
+            this.rejectionReason = rejectionReason;
+        }
+        
+        public String getKey() {
+            return key;
+        }
+        
+        public ProductRecord getRecord() {
+            return record;
+        }
+        
+        public boolean isAccepted() {
+            return rejectionReason == null;
+        }
+        
+        public RejectionReason getRejectionReason() {
+            return rejectionReason;
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package processor;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.kafka.common.serialization.Serializer;
+import org.apache.log4j.Logger;
+
+import metrics.ScyllaMetrics;
+import model.ProductRecord;
+import processor.TransformerChain.Outcome;
+import rules.RuleProfiler;
+import serde.ProductRecordSerializer;
+import serde.SinkFormat;
+import settings.ScyllaSettings;
+import transformer.Transformer;
+import transformer.TransformerRegistry;
+
+/*
+ * Runs sample records through the same Transformer chains and serializers as the processing topology before the processor joins
+ * the consumer group, so that the rules and stages have been compiled by the JIT by the time partitions are assigned, instead
+ * of running interpreted through the first minutes after every deploy.
+ * The normalization cache is cleared before every pass, so that the rules run on every pass instead of the cache, and once
+ * more when warm-up ends, along with the metrics and the rule profile, so that warm-up records are neither cached nor reported.
+ */
+public class WarmUp {
+    private static Logger logger = Logger.getLogger(WarmUp.class);
+    public static final String BUNDLED_CORPUS = "warmup-corpus.ndjson";
+    
+    private final CategoryRouter router;
+    private final Map<Transformer, TransformerChain> chains;
+    private final Serializer<ProductRecord> sinkSerializer;
+    private final ProductRecordSerializer rejectedSerializer = new ProductRecordSerializer();
+    private final long durationMs;
+    private final int iterations;
+    
+    private long recordCount;
+    private int passCount;
+    
+    public WarmUp(TransformerRegistry registry, ScyllaSettings settings) {
+        this.router = new CategoryRouter(registry);
+        this.chains = new IdentityHashMap<Transformer, TransformerChain>();
+        for (Transformer transformer : registry.getTransformers()) {
+            chains.put(transformer, new TransformerChain(transformer, settings));
+        }
+        this.sinkSerializer = SinkFormat.of(settings.get(ScyllaSettings.SINK_FORMAT)).serde().serializer();
+        this.durationMs = settings.get(ScyllaSettings.WARMUP_DURATION_MS);
+        this.iterations = settings.get(ScyllaSettings.WARMUP_ITERATIONS);
+    }
+    
+    /*
+     * Here we warm up with the configured corpus, or the bundled one, if warm-up is enabled. A corpus that cannot be read only
+     * skips warm-up.
+     */
+    public static void runIfEnabled(TransformerRegistry registry, ScyllaSettings settings) {
+        if (!settings.get(ScyllaSettings.WARMUP_ENABLED)) {
+            return;
+        }
+        try {
+            new WarmUp(registry, settings).run(loadCorpus(settings.get(ScyllaSettings.WARMUP_CORPUS)));
+        } catch (Exception e) {
+            logger.error("An error occured while warming up, starting without warm-up",e);
+        }
+    }
+    
+    /*
+     * Here we read newline delimited raw records from the file, or from the bundled corpus if no file is given
+     */
+    public static List<byte[]> loadCorpus(String corpusFile) throws IOException {
+        if (corpusFile != null) {
+            return readLines(Files.newInputStream(Paths.get(corpusFile)));
+        }
+        InputStream bundled = WarmUp.class.getClassLoader().getResourceAsStream(BUNDLED_CORPUS);
+        if (bundled == null) {
+            throw new IOException("The bundled warm-up corpus "+BUNDLED_CORPUS+" is missing");
+        }
+        return readLines(bundled);
+    }
+    
+    /*
+     * Here we pass over the corpus until the duration or the number of passes is reached, whichever comes first, or once if
+     * neither is set
+     */
+    public void run(List<byte[]> corpus) {
+        if (corpus.isEmpty()) {
+            logger.warn("The warm-up corpus is empty, starting without warm-up");
+            return;
+        }
+        long start = System.nanoTime();
+        long deadline = start + durationMs * 1000000L;
+        double firstPassRate = 0;
+        double lastPassRate = 0;
+        
+        logger.info("Warming up with "+corpus.size()+" records");
+        do {
+            long passStart = System.nanoTime();
+            Transformer.getNormalizationCache().clear();
+            for (byte[] value : corpus) {
+                process(value);
+            }
+            passCount++;
+            recordCount += corpus.size();
+            
+            lastPassRate = corpus.size() / ((System.nanoTime() - passStart) / 1e9);
+            if (passCount == 1) {
+                firstPassRate = lastPassRate;
+            }
+        } while ((durationMs > 0 || iterations > 0) && (durationMs <= 0 || System.nanoTime() < deadline)
+                && (iterations <= 0 || passCount < iterations));
+        
+        Transformer.getNormalizationCache().clear();
+        ScyllaMetrics.get().reset();
+        RuleProfiler.get().reset();
+        
+        double seconds = (System.nanoTime() - start) / 1e9;
+        logger.info(String.format("Warmed up with %d records in %d passes in %.1fs, %.0f records/s on the first pass and %.0f records/s on the last",
+                recordCount, passCount, seconds, firstPassRate, lastPassRate));
+    }
+    
+    private void process(byte[] value) {
+        Transformer transformer = router.route(value).getTransformer();
+        if (transformer == null) {
+            return;
+        }
+        TransformerChain chain = chains.get(transformer);
+        Outcome outcome = chain.process(null, chain.read(value));
+        if (outcome.isAccepted()) {
+            sinkSerializer.serialize(transformer.getSinkTopic(), outcome.getRecord());
+        } else {
+            rejectedSerializer.serialize(transformer.getRejectedTopic(), outcome.getRecord());
+        }
+    }
+    
+    public long getRecordCount() {
+        return recordCount;
+    }
+    
+    public int getPassCount() {
+        return passCount;
+    }
+    
+    private static List<byte[]> readLines(InputStream input) throws IOException {
+        List<byte[]> lines = new ArrayList<byte[]>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.trim().isEmpty()) {
+                    lines.add(line.getBytes(StandardCharsets.UTF_8));
+                }
+            }
+        }
+        return lines;
+    }
+}
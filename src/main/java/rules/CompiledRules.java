@@ -0,0 +1,120 @@
+package rules;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import fields.Fields;
+
+/*
+ * An immutable table of the normalization rules, compiled once so that no pattern is compiled while processing records.
+ * The table is safe to share between stream threads, and is replaced as a whole when the rules are reloaded.
+ */
+public final class CompiledRules {
+    private static volatile CompiledRules current;
+    
+    private final Map<String, FieldRules> fieldRules;
+    private final List<ExpansionRule> ergonomicRules;
+    private final List<ExpansionRule> connectorRules;
+    private final KeywordMatcher ergonomicMatcher;
+    private final KeywordMatcher connectorMatcher;
+    
+    private CompiledRules(Map<String, FieldRules> fieldRules, List<ExpansionRule> ergonomicRules, List<ExpansionRule> connectorRules) {
+        this.fieldRules = Collections.unmodifiableMap(fieldRules);
+        this.ergonomicRules = Collections.unmodifiableList(ergonomicRules);
+        this.connectorRules = Collections.unmodifiableList(connectorRules);
+        this.ergonomicMatcher = new KeywordMatcher(patternsOf(ergonomicRules));
+        this.connectorMatcher = new KeywordMatcher(patternsOf(connectorRules));
+    }
+    
+    /*
+     * Here we return the rules in use, compiling them from the Fields class the first time they are needed.
+     */
+    public static CompiledRules get() {
+        CompiledRules rules = current;
+        if (rules == null) {
+            synchronized (CompiledRules.class) {
+                if (current == null) {
+                    current = fromFields(new Fields());
+                }
+                rules = current;
+            }
+        }
+        return rules;
+    }
+    
+    /*
+     * Here we swap in new rules for every stream thread. A record already being normalized finishes with the rules it started
+     * with, and results cached under the previous rules are discarded on the next lookup.
+     */
+    public static void set(CompiledRules rules) {
+        current = rules;
+    }
+    
+    public static CompiledRules fromFields(Fields fields) {
+        return compile(fields.getFieldValues(), fields.getErgonomicAdjustments(), fields.getConnectorTypes());
+    }
+    
+    /*
+     * Here we compile every pattern up front. The iteration order of the given maps is kept, as it decides which rule wins.
+     */
+    public static CompiledRules compile(Map<String, ? extends Map<String, String[]>> fieldValues, Map<String, String> ergonomicAdjustments,
+            Map<String, String> connectorTypes) {
+        Map<String, FieldRules> fieldRules = new HashMap<String, FieldRules>();
+        for (String field : fieldValues.keySet()) {
+            Map<String, String[]> possibleValues = fieldValues.get(field);
+            if (possibleValues != null) {
+                fieldRules.put(field, new FieldRules(field, possibleValues));
+            }
+        }
+        return new CompiledRules(fieldRules, compileExpansions(ergonomicAdjustments), compileExpansions(connectorTypes));
+    }
+    
+    private static List<ExpansionRule> compileExpansions(Map<String, String> expansions) {
+        List<ExpansionRule> rules = new ArrayList<ExpansionRule>();
+        for (String regex : expansions.keySet()) {
+            rules.add(new ExpansionRule(regex, expansions.get(regex)));
+        }
+        return rules;
+    }
+    
+    private static List<RulePattern> patternsOf(List<ExpansionRule> expansionRules) {
+        List<RulePattern> patterns = new ArrayList<RulePattern>();
+        for (ExpansionRule expansionRule : expansionRules) {
+            patterns.add(expansionRule.getPattern());
+        }
+        return patterns;
+    }
+    
+    public FieldRules getFieldRules(String field) {
+        return fieldRules.get(field);
+    }
+    
+    public Map<String, FieldRules> getFieldRules() {
+        return fieldRules;
+    }
+    
+    public List<ExpansionRule> getErgonomicRules() {
+        return ergonomicRules;
+    }
+    
+    public List<ExpansionRule> getConnectorRules() {
+        return connectorRules;
+    }
+    
+    /*
+     * The matcher over the ergonomic rules, whose results are indexed in the order of getErgonomicRules()
+     */
+    public KeywordMatcher getErgonomicMatcher() {
+        return ergonomicMatcher;
+    }
+    
+    /*
+     * The matcher over the connector rules, whose results are indexed in the order of getConnectorRules()
+     */
+    public KeywordMatcher getConnectorMatcher() {
+        return connectorMatcher;
+    }
+}
@@ -0,0 +1,22 @@
+package rules;
+
+/*
+ * A rule which maps a line of an aggregated field (e.g Ergonomics, Connectors) to the field it should be expanded into.
+ */
+public final class ExpansionRule {
+    private final RulePattern pattern;
+    private final String field;
+    
+    public ExpansionRule(String regex, String field) {
+        this.pattern = new RulePattern(regex);
+        this.field = field;
+    }
+    
+    public RulePattern getPattern() {
+        return pattern;
+    }
+    
+    public String getField() {
+        return field;
+    }
+}
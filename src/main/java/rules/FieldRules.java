@@ -0,0 +1,143 @@
+package rules;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+
+import fields.Fields;
+import model.ValueInterner;
+
+/*
+ * The compiled rules of a single field. Patterns under the FIND_TAG are split out, as a found raw value always wins over a
+ * predefined value, and are matched by a hand-written scanner where ValueScanners has one. Predefined values are ordered from
+ * longest to shortest (keeping the original order between values of equal length), so the first matching candidate is the
+ * longest match. The patterns of every candidate are indexed in a
+ * single whitespace insensitive matcher, so that fields with thousands of values (e.g Brand) are looked up in one pass.
+ */
+public final class FieldRules {
+    private static final ThreadLocal<BitSet> mayMatchSets = ThreadLocal.withInitial(BitSet::new);
+    
+    private final String field;
+    private final List<ValueFinder> findPatterns;
+    private final List<Candidate> candidates;
+    private final List<RulePattern> candidatePatterns;
+    private final int[] patternCandidates;
+    private final KeywordMatcher candidateMatcher;
+    
+    public FieldRules(String field, Map<String, String[]> possibleValues) {
+        List<ValueFinder> findPatterns = new ArrayList<ValueFinder>();
+        List<Candidate> candidates = new ArrayList<Candidate>();
+        
+        for (String possibleValue : possibleValues.keySet()) {
+            String[] regexes = possibleValues.get(possibleValue);
+            if (regexes == null) {
+                continue;
+            }
+            if (StringUtils.equalsIgnoreCase(possibleValue, Fields.FIND_TAG)) {
+                for (String regex : regexes) {
+                    findPatterns.add(ValueScanners.finderFor(regex));
+                }
+            } else {
+                List<RulePattern> patterns = new ArrayList<RulePattern>();
+                for (String regex : regexes) {
+                    patterns.add(new RulePattern(regex));
+                }
+                candidates.add(new Candidate(ValueInterner.get().intern(possibleValue), patterns));
+            }
+        }
+        // A stable sort, so that the first of several equally long values still wins
+        Collections.sort(candidates, Comparator.comparingInt((Candidate candidate) -> candidate.getValue().length()).reversed());
+        
+        this.field = field;
+        this.findPatterns = Collections.unmodifiableList(findPatterns);
+        this.candidates = Collections.unmodifiableList(candidates);
+        
+        List<RulePattern> candidatePatterns = new ArrayList<RulePattern>();
+        List<Integer> patternCandidates = new ArrayList<Integer>();
+        for (int i = 0; i < candidates.size(); i++) {
+            for (RulePattern pattern : candidates.get(i).getPatterns()) {
+                candidatePatterns.add(pattern);
+                patternCandidates.add(i);
+            }
+        }
+        this.candidatePatterns = candidatePatterns;
+        this.patternCandidates = new int[patternCandidates.size()];
+        for (int i = 0; i < this.patternCandidates.length; i++) {
+            this.patternCandidates[i] = patternCandidates.get(i);
+        }
+        this.candidateMatcher = KeywordMatcher.ignoringWhitespace(candidatePatterns);
+    }
+    
+    public String getField() {
+        return field;
+    }
+    
+    public List<ValueFinder> getFindPatterns() {
+        return findPatterns;
+    }
+    
+    public List<Candidate> getCandidates() {
+        return candidates;
+    }
+    
+    /*
+     * Here we return the longest predefined value with a pattern found within the value, or null if there is none. This is the
+     * same as trying the patterns of each candidate in order, but only the patterns flagged by the index are run, in order,
+     * until one is found.
+     */
+    public String findCandidate(CharSequence value) {
+        return findCandidate(value, false);
+    }
+    
+    /*
+     * Here we find the candidate the same way, timing the index scan and every pattern run in the RuleProfiler if profiled
+     */
+    public String findCandidate(CharSequence value, boolean isProfiled) {
+        BitSet mayMatch = mayMatchSets.get();
+        mayMatch.clear();
+        if (!isProfiled) {
+            candidateMatcher.match(value, mayMatch);
+            for (int i = mayMatch.nextSetBit(0); i >= 0; i = mayMatch.nextSetBit(i + 1)) {
+                if (candidatePatterns.get(i).matcher(value).find()) {
+                    return candidates.get(patternCandidates[i]).getValue();
+                }
+            }
+            return null;
+        }
+        
+        RuleProfiler profiler = RuleProfiler.get();
+        candidateMatcher.match(value, mayMatch, (rule, start, isHit) -> profiler.record(field, "", RuleProfiler.KEYWORD_INDEX, start, isHit));
+        for (int i = mayMatch.nextSetBit(0); i >= 0; i = mayMatch.nextSetBit(i + 1)) {
+            long start = System.nanoTime();
+            boolean isFound = candidatePatterns.get(i).matcher(value).find();
+            profiler.record(field, candidates.get(patternCandidates[i]).getValue(), candidatePatterns.get(i).getRegex(), start, isFound);
+            if (isFound) {
+                return candidates.get(patternCandidates[i]).getValue();
+            }
+        }
+        return null;
+    }
+    
+    public static final class Candidate {
+        private final String value;
+        private final List<RulePattern> patterns;
+        
+        Candidate(String value, List<RulePattern> patterns) {
+            this.value = value;
+            this.patterns = Collections.unmodifiableList(patterns);
+        }
+        
+        public String getValue() {
+            return value;
+        }
+        
+        public List<RulePattern> getPatterns() {
+            return patterns;
+        }
+    }
+}
@@ -0,0 +1,309 @@
+package rules;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.List;
+import java.util.TreeSet;
+
+/*
+ * A multi-pattern matcher which reports every rule found anywhere within an input, by scanning the input once.
+ * Rules which are plain keywords (or alternations of keywords, e.g "d-sub|vga") are compiled into a single Aho-Corasick
+ * automaton, matched case insensitively over US-ASCII like the rule patterns are. Any other rule falls back to its own
+ * pattern, so the result is always the same as calling find() on every rule.
+ * A matcher which ignores whitespace only narrows the rules down to those which may be found, see ignoringWhitespace().
+ */
+public final class KeywordMatcher {
+    private static final String META_CHARACTERS = "\\^$.|?*+()[]{}";
+    
+    private final List<RulePattern> patterns;
+    private final int[] fallbackRules;
+    private final int[] asciiClasses;
+    private final char[] otherCharacters;
+    private final int alphabetSize;
+    private final int[] transitions;
+    private final int[][] outputs;
+    private final boolean ignoreWhitespace;
+    
+    public KeywordMatcher(List<RulePattern> patterns) {
+        this(patterns, false);
+    }
+    
+    private KeywordMatcher(List<RulePattern> patterns, boolean ignoreWhitespace) {
+        this.patterns = new ArrayList<RulePattern>(patterns);
+        this.ignoreWhitespace = ignoreWhitespace;
+        
+        List<String> keywords = new ArrayList<String>();
+        List<Integer> keywordRules = new ArrayList<Integer>();
+        List<Integer> fallbackRules = new ArrayList<Integer>();
+        for (int rule = 0; rule < patterns.size(); rule++) {
+            List<String> alternatives = ignoreWhitespace ? keywordAlternatives(patterns.get(rule).getRegex())
+                    : literalAlternatives(patterns.get(rule).getRegex());
+            if (alternatives == null) {
+                fallbackRules.add(rule);
+                continue;
+            }
+            for (String alternative : alternatives) {
+                keywords.add(alternative);
+                keywordRules.add(rule);
+            }
+        }
+        this.fallbackRules = toArray(fallbackRules);
+        
+        // Every character used by a keyword gets its own class, any other character resets the automaton
+        TreeSet<Character> alphabet = new TreeSet<Character>();
+        for (String keyword : keywords) {
+            for (int i = 0; i < keyword.length(); i++) {
+                alphabet.add(keyword.charAt(i));
+            }
+        }
+        this.asciiClasses = new int[128];
+        StringBuilder otherCharacters = new StringBuilder();
+        int characterClass = 1;
+        for (char character : alphabet) {
+            if (character < 128) {
+                asciiClasses[character] = characterClass++;
+            } else {
+                otherCharacters.append(character);
+            }
+        }
+        this.otherCharacters = otherCharacters.toString().toCharArray();
+        this.alphabetSize = characterClass + this.otherCharacters.length;
+        
+        // Build the keyword trie
+        List<int[]> trie = new ArrayList<int[]>();
+        List<TreeSet<Integer>> trieOutputs = new ArrayList<TreeSet<Integer>>();
+        trie.add(new int[alphabetSize]);
+        trieOutputs.add(new TreeSet<Integer>());
+        for (int k = 0; k < keywords.size(); k++) {
+            String keyword = keywords.get(k);
+            int state = 0;
+            for (int i = 0; i < keyword.length(); i++) {
+                int input = classOf(keyword.charAt(i));
+                if (trie.get(state)[input] == 0) {
+                    trie.get(state)[input] = trie.size();
+                    trie.add(new int[alphabetSize]);
+                    trieOutputs.add(new TreeSet<Integer>());
+                }
+                state = trie.get(state)[input];
+            }
+            trieOutputs.get(state).add(keywordRules.get(k));
+        }
+        
+        // Turn the trie into a DFA, following failure links breadth first
+        int[] failures = new int[trie.size()];
+        this.transitions = new int[trie.size() * alphabetSize];
+        Deque<Integer> queue = new ArrayDeque<Integer>();
+        for (int input = 1; input < alphabetSize; input++) {
+            int next = trie.get(0)[input];
+            transitions[input] = next;
+            if (next != 0) {
+                queue.add(next);
+            }
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            trieOutputs.get(state).addAll(trieOutputs.get(failures[state]));
+            for (int input = 1; input < alphabetSize; input++) {
+                int next = trie.get(state)[input];
+                if (next != 0) {
+                    failures[next] = transitions[failures[state] * alphabetSize + input];
+                    transitions[state * alphabetSize + input] = next;
+                    queue.add(next);
+                } else {
+                    transitions[state * alphabetSize + input] = transitions[failures[state] * alphabetSize + input];
+                }
+            }
+        }
+        
+        this.outputs = new int[trie.size()][];
+        for (int state = 0; state < trie.size(); state++) {
+            outputs[state] = toArray(new ArrayList<Integer>(trieOutputs.get(state)));
+        }
+    }
+    
+    /*
+     * Here we build a matcher which skips whitespace, both in the input and wherever a rule allows it (e.g "geek\s*buying"
+     * becomes the keyword "geekbuying"), so that rules with optional whitespace are matched by the automaton too. The matcher
+     * flags every rule which may be found within the input, including every rule it has no keyword for, and each flagged rule
+     * must be confirmed with its own pattern. A rule which is not flagged can never be found.
+     */
+    public static KeywordMatcher ignoringWhitespace(List<RulePattern> patterns) {
+        return new KeywordMatcher(patterns, true);
+    }
+    
+    public int size() {
+        return patterns.size();
+    }
+    
+    /*
+     * Here we flag every rule that can be found within the input. The flags must be cleared by the caller, and are indexed
+     * in the order the patterns were given.
+     */
+    public void match(CharSequence input, boolean[] matched) {
+        match(input, matched, null);
+    }
+    
+    /*
+     * Here we flag the rules the same way, reporting the keyword scan and every fallback pattern run to the probe, if any
+     */
+    public void match(CharSequence input, boolean[] matched, RuleProfiler.Probe probe) {
+        match(input, matched, null, probe);
+    }
+    
+    /*
+     * Here we flag the rules the same way in a set, so that the flagged rules can be visited in order without going through
+     * every rule. The set must be cleared by the caller.
+     */
+    public void match(CharSequence input, BitSet matched) {
+        match(input, null, matched, null);
+    }
+    
+    public void match(CharSequence input, BitSet matched, RuleProfiler.Probe probe) {
+        match(input, null, matched, probe);
+    }
+    
+    private void match(CharSequence input, boolean[] matched, BitSet matchedSet, RuleProfiler.Probe probe) {
+        long start = probe != null ? System.nanoTime() : 0;
+        boolean isKeywordFound = false;
+        int state = 0;
+        for (int i = 0; i < input.length(); i++) {
+            char character = input.charAt(i);
+            if (ignoreWhitespace && isWhitespace(character)) {
+                continue;
+            }
+            state = transitions[state * alphabetSize + classOf(character)];
+            for (int rule : outputs[state]) {
+                flag(rule, matched, matchedSet);
+                isKeywordFound = true;
+            }
+        }
+        if (probe != null) {
+            probe.record(-1, start, isKeywordFound);
+        }
+        for (int rule : fallbackRules) {
+            if (ignoreWhitespace) {
+                flag(rule, matched, matchedSet);
+                continue;
+            }
+            long ruleStart = probe != null ? System.nanoTime() : 0;
+            boolean isFound = patterns.get(rule).matcher(input).find();
+            if (probe != null) {
+                probe.record(rule, ruleStart, isFound);
+            }
+            if (isFound) {
+                flag(rule, matched, matchedSet);
+            }
+        }
+    }
+    
+    private static void flag(int rule, boolean[] matched, BitSet matchedSet) {
+        if (matched != null) {
+            matched[rule] = true;
+        } else {
+            matchedSet.set(rule);
+        }
+    }
+    
+    private int classOf(char character) {
+        if (character < 128) {
+            if (character >= 'A' && character <= 'Z') {
+                character += 'a' - 'A';
+            }
+            return asciiClasses[character];
+        }
+        int index = Arrays.binarySearch(otherCharacters, character);
+        return index < 0 ? 0 : alphabetSize - otherCharacters.length + index;
+    }
+    
+    /*
+     * Here we split a regular expression into its keywords, if it consists only of literal characters and alternations.
+     * Null is returned for anything else.
+     */
+    static List<String> literalAlternatives(String regex) {
+        List<String> alternatives = new ArrayList<String>();
+        StringBuilder alternative = new StringBuilder();
+        for (int i = 0; i < regex.length(); i++) {
+            char character = regex.charAt(i);
+            if (character == '|') {
+                if (alternative.length() == 0) {
+                    return null;
+                }
+                alternatives.add(alternative.toString());
+                alternative.setLength(0);
+            } else if (character == '\\' && i + 1 < regex.length() && !Character.isLetterOrDigit(regex.charAt(i + 1))) {
+                alternative.append(fold(regex.charAt(++i)));
+            } else if (META_CHARACTERS.indexOf(character) >= 0) {
+                return null;
+            } else {
+                alternative.append(fold(character));
+            }
+        }
+        if (alternative.length() == 0) {
+            return null;
+        }
+        alternatives.add(alternative.toString());
+        return alternatives;
+    }
+    
+    /*
+     * Here we split a regular expression into its keywords like literalAlternatives(), dropping any whitespace it matches. A
+     * whitespace character or \s may be followed by a greedy ?, * or +, anything else returns null.
+     */
+    static List<String> keywordAlternatives(String regex) {
+        List<String> alternatives = new ArrayList<String>();
+        StringBuilder alternative = new StringBuilder();
+        for (int i = 0; i <= regex.length(); i++) {
+            if (i == regex.length() || regex.charAt(i) == '|') {
+                List<String> keywords = literalAlternatives(alternative.toString());
+                if (keywords == null) {
+                    return null;
+                }
+                alternatives.addAll(keywords);
+                alternative.setLength(0);
+                continue;
+            }
+            
+            char character = regex.charAt(i);
+            boolean isWhitespace = isWhitespace(character);
+            if (character == '\\' && i + 1 < regex.length()) {
+                char escaped = regex.charAt(i + 1);
+                isWhitespace = escaped == 's' || isWhitespace(escaped);
+                if (!isWhitespace) {
+                    alternative.append(character).append(escaped);
+                }
+                i++;
+            } else if (!isWhitespace) {
+                alternative.append(character);
+            }
+            if (isWhitespace && i + 1 < regex.length() && "?*+".indexOf(regex.charAt(i + 1)) >= 0) {
+                i++;
+            }
+        }
+        return alternatives;
+    }
+    
+    /*
+     * The characters matched by \s, as the rule patterns are not compiled with UNICODE_CHARACTER_CLASS
+     */
+    private static boolean isWhitespace(char character) {
+        return character == ' ' || character == '\t' || character == '\n' || character == '\u000B' || character == '\f' || character == '\r';
+    }
+    
+    private static char fold(char character) {
+        if (character >= 'A' && character <= 'Z') {
+            return (char) (character + ('a' - 'A'));
+        }
+        return character;
+    }
+    
+    private static int[] toArray(List<Integer> values) {
+        int[] array = new int[values.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = values.get(i);
+        }
+        return array;
+    }
+}
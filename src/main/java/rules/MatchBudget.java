@@ -0,0 +1,92 @@
+package rules;
+
+/*
+ * A limit on the work the rule patterns may do for a single record, counted in characters read by the patterns. Values are
+ * matched through a CharSequence which spends the budget of the stream thread on every character it reads, so that a pattern
+ * which backtracks endlessly on a pathological value is interrupted with a MatchBudgetExceededException instead of stalling
+ * the thread and its partitions. A budget of 0 or less is unlimited, and values are then matched as they are.
+ */
+public final class MatchBudget {
+    private static final ThreadLocal<MatchBudget> budgets = ThreadLocal.withInitial(MatchBudget::new);
+    
+    private long limit;
+    private long remaining = Long.MAX_VALUE;
+    
+    private MatchBudget() {
+    }
+    
+    /*
+     * The budget of the calling thread
+     */
+    public static MatchBudget get() {
+        return budgets.get();
+    }
+    
+    /*
+     * Here we start the budget of a new record. The TransformerChain starts it before pre-processing and ends it once the record
+     * is normalized, so the rules are only limited between the two, and unlimited when called directly.
+     */
+    public void reset(long limit) {
+        this.limit = limit;
+        this.remaining = limit > 0 ? limit : Long.MAX_VALUE;
+    }
+    
+    /*
+     * Here we end the budget of the record, leaving the thread unlimited until the next record starts its budget
+     */
+    public void end() {
+        reset(0);
+    }
+    
+    /*
+     * Here we wrap the value, so that matching it spends this budget
+     */
+    public CharSequence guard(String value) {
+        if (limit <= 0 || value == null) {
+            return value;
+        }
+        return new GuardedSequence(value, this);
+    }
+    
+    public long getRemaining() {
+        return remaining;
+    }
+    
+    private void spend() {
+        if (--remaining < 0) {
+            remaining = 0;
+            throw new MatchBudgetExceededException(limit);
+        }
+    }
+    
+    private static final class GuardedSequence implements CharSequence {
+        private final String value;
+        private final MatchBudget budget;
+        
+        GuardedSequence(String value, MatchBudget budget) {
+            this.value = value;
+            this.budget = budget;
+        }
+        
+        @Override
+        public char charAt(int index) {
+            budget.spend();
+            return value.charAt(index);
+        }
+        
+        @Override
+        public int length() {
+            return value.length();
+        }
+        
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new GuardedSequence(value.substring(start, end), budget);
+        }
+        
+        @Override
+        public String toString() {
+            return value;
+        }
+    }
+}
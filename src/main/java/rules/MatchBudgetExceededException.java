@@ -0,0 +1,12 @@
+package rules;
+
+/*
+ * Thrown from within a pattern match once the MatchBudget of the record is spent
+ */
+public class MatchBudgetExceededException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+    
+    public MatchBudgetExceededException(long limit) {
+        super("Match budget of "+limit+" characters exceeded", null, false, false);
+    }
+}
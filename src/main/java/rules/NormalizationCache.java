@@ -0,0 +1,201 @@
+package rules;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * A size bounded cache of normalized values keyed by field and raw value, shared by all stream threads. The cache is split
+ * into segments, each evicting its least recently used entry once full, so threads only contend on the same segment.
+ * Entries are only valid for the rules they were normalized with, so a change of rules empties the cache. A disabled cache
+ * neither returns nor keeps values, so every value is normalized by the rules (e.g. to measure the rules on their own).
+ */
+public final class NormalizationCache implements NormalizationCacheMBean {
+    public static final int DEFAULT_MAX_ENTRIES = 50000;
+    public static final int DEFAULT_MAX_VALUE_LENGTH = 256;
+    private static final int SEGMENTS = 16;
+    
+    private final Segment[] segments;
+    private final int maxValueLength;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private volatile CompiledRules rules;
+    private volatile boolean isEnabled = true;
+    
+    public NormalizationCache() {
+        this(DEFAULT_MAX_ENTRIES, DEFAULT_MAX_VALUE_LENGTH);
+    }
+    
+    public NormalizationCache(int maxEntries, int maxValueLength) {
+        this.segments = new Segment[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(Math.max(1, maxEntries / SEGMENTS));
+        }
+        this.maxValueLength = maxValueLength;
+    }
+    
+    /*
+     * Here we return the cached normalized value of the raw value, or null if it has not been normalized with these rules.
+     */
+    public String get(CompiledRules rules, String field, String value) {
+        if (!isCacheable(rules, value)) {
+            return null;
+        }
+        Key key = new Key(field, value);
+        Segment segment = segmentOf(key);
+        
+        CachedValue cachedValue;
+        synchronized (segment) {
+            cachedValue = segment.get(key);
+        }
+        if (cachedValue == null || cachedValue.rules != rules) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return cachedValue.normalizedValue;
+    }
+    
+    public void put(CompiledRules rules, String field, String value, String normalizedValue) {
+        if (!isCacheable(rules, value)) {
+            return;
+        }
+        Key key = new Key(field, value);
+        Segment segment = segmentOf(key);
+        synchronized (segment) {
+            segment.put(key, new CachedValue(rules, normalizedValue));
+        }
+    }
+    
+    /*
+     * Here we enable or disable the cache, emptying it when it is disabled
+     */
+    public void setEnabled(boolean isEnabled) {
+        this.isEnabled = isEnabled;
+        if (!isEnabled) {
+            clear();
+        }
+    }
+    
+    public boolean isEnabled() {
+        return isEnabled;
+    }
+    
+    public void clear() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+    
+    private boolean isCacheable(CompiledRules rules, String value) {
+        if (!isEnabled || value == null || value.length() > maxValueLength) {
+            return false;
+        }
+        if (this.rules != rules) {
+            synchronized (this) {
+                if (this.rules != rules) {
+                    clear();
+                    this.rules = rules;
+                }
+            }
+        }
+        return true;
+    }
+    
+    private Segment segmentOf(Key key) {
+        return segments[(key.hash ^ (key.hash >>> 16)) & (SEGMENTS - 1)];
+    }
+    
+    @Override
+    public long getHitCount() {
+        return hits.sum();
+    }
+    
+    @Override
+    public long getMissCount() {
+        return misses.sum();
+    }
+    
+    @Override
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+    
+    @Override
+    public int getSize() {
+        return size();
+    }
+    
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+    
+    @Override
+    public String toString() {
+        return "NormalizationCache [size="+size()+", hits="+getHitCount()+", misses="+getMissCount()+", evictions="+getEvictionCount()+"]";
+    }
+    
+    private final class Segment extends LinkedHashMap<Key, CachedValue> {
+        private static final long serialVersionUID = 1L;
+        private final int maxEntries;
+        
+        Segment(int maxEntries) {
+            super(16, 0.75f, true);
+            this.maxEntries = maxEntries;
+        }
+        
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, CachedValue> eldest) {
+            if (size() > maxEntries) {
+                evictions.increment();
+                return true;
+            }
+            return false;
+        }
+    }
+    
+    private static final class Key {
+        private final String field;
+        private final String value;
+        private final int hash;
+        
+        Key(String field, String value) {
+            this.field = field;
+            this.value = value;
+            this.hash = 31 * field.hashCode() + value.hashCode();
+        }
+        
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+        
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) other;
+            return hash == key.hash && field.equals(key.field) && value.equals(key.value);
+        }
+    }
+    
+    private static final class CachedValue {
+        private final CompiledRules rules;
+        private final String normalizedValue;
+        
+        CachedValue(CompiledRules rules, String normalizedValue) {
+            this.rules = rules;
+            this.normalizedValue = normalizedValue;
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package rules;
+
+public interface NormalizationCacheMBean {
+    long getHitCount();
+    long getMissCount();
+    long getEvictionCount();
+    int getSize();
+}
@@ -0,0 +1,257 @@
+package rules;
+
+/*
+ * A hand-written scanner for FIND_TAG rules that capture a single number followed by a unit, such as "24.3 inches" or
+ * "455.50cd/m2". Scanners are only built from regular expressions of the shape
+ *
+ *     [.*?][~?|[-+]?](\d+|\d+\.\d+|\d+(?:\.\d+)?)[\s*|\s?][unit|(?:unit|unit...)][.*|.*?]
+ *
+ * where each unit is a literal, and return exactly what the case insensitive regular expression would capture with matches().
+ */
+public final class NumberScanner implements ValueFinder {
+    private static final String INTEGER = "(\\d+)";
+    private static final String DECIMAL = "(\\d+\\.\\d+)";
+    private static final String OPTIONAL_FRACTION = "(\\d+(?:\\.\\d+)?)";
+    
+    private enum Shape { INTEGER, DECIMAL, OPTIONAL_FRACTION }
+    private enum Spacing { NONE, OPTIONAL, ANY }
+    
+    private final String regex;
+    private final boolean anyPrefix;
+    private final String optionalSigns;
+    private final Shape shape;
+    private final Spacing spacing;
+    private final String[] units;
+    private final boolean anySuffix;
+    
+    private NumberScanner(String regex, boolean anyPrefix, String optionalSigns, Shape shape, Spacing spacing, String[] units,
+            boolean anySuffix) {
+        this.regex = regex;
+        this.anyPrefix = anyPrefix;
+        this.optionalSigns = optionalSigns;
+        this.shape = shape;
+        this.spacing = spacing;
+        this.units = units;
+        this.anySuffix = anySuffix;
+    }
+    
+    /*
+     * Here we build a scanner equivalent to the regular expression, or return null if the expression has another shape.
+     */
+    public static NumberScanner compile(String regex) {
+        String rest = regex;
+        
+        boolean anyPrefix = rest.startsWith(".*?");
+        if (anyPrefix) {
+            rest = rest.substring(3);
+        }
+        
+        String optionalSigns = "";
+        if (rest.startsWith("~?")) {
+            optionalSigns = "~";
+            rest = rest.substring(2);
+        } else if (rest.startsWith("[-+]?") || rest.startsWith("[+-]?")) {
+            optionalSigns = "-+";
+            rest = rest.substring(5);
+        }
+        
+        Shape shape;
+        if (rest.startsWith(INTEGER)) {
+            shape = Shape.INTEGER;
+            rest = rest.substring(INTEGER.length());
+        } else if (rest.startsWith(DECIMAL)) {
+            shape = Shape.DECIMAL;
+            rest = rest.substring(DECIMAL.length());
+        } else if (rest.startsWith(OPTIONAL_FRACTION)) {
+            shape = Shape.OPTIONAL_FRACTION;
+            rest = rest.substring(OPTIONAL_FRACTION.length());
+        } else {
+            return null;
+        }
+        
+        Spacing spacing = Spacing.NONE;
+        if (rest.startsWith("\\s*")) {
+            spacing = Spacing.ANY;
+            rest = rest.substring(3);
+        } else if (rest.startsWith("\\s?")) {
+            spacing = Spacing.OPTIONAL;
+            rest = rest.substring(3);
+        }
+        
+        boolean anySuffix = false;
+        for (String suffix : new String[] {".*?", ".*"}) {
+            if (rest.endsWith(suffix) && !rest.endsWith("\\"+suffix)) {
+                anySuffix = true;
+                rest = rest.substring(0, rest.length() - suffix.length());
+                break;
+            }
+        }
+        
+        String[] units = parseUnits(rest);
+        if (units == null) {
+            return null;
+        }
+        return new NumberScanner(regex, anyPrefix, optionalSigns, shape, spacing, units, anySuffix);
+    }
+    
+    private static String[] parseUnits(String regex) {
+        if (regex.startsWith("(?:") && regex.endsWith(")")) {
+            String[] alternatives = regex.substring(3, regex.length() - 1).split("\\|", -1);
+            String[] units = new String[alternatives.length];
+            for (int i = 0; i < alternatives.length; i++) {
+                units[i] = parseLiteral(alternatives[i]);
+                if (units[i] == null) {
+                    return null;
+                }
+            }
+            return units;
+        }
+        String unit = parseLiteral(regex);
+        return unit == null ? null : new String[] {unit};
+    }
+    
+    /*
+     * Here we unescape a literal, returning null if the regular expression is anything but a literal
+     */
+    private static String parseLiteral(String regex) {
+        StringBuilder literal = new StringBuilder();
+        for (int i = 0; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                if (i + 1 == regex.length() || Character.isLetterOrDigit(regex.charAt(i + 1))) {
+                    return null;
+                }
+                literal.append(regex.charAt(++i));
+            } else if (".[]{}()*+?^$|".indexOf(c) >= 0) {
+                return null;
+            } else {
+                literal.append(c);
+            }
+        }
+        return literal.toString();
+    }
+    
+    @Override
+    public String find(CharSequence value) {
+        int length = value.length();
+        int lastStart = anyPrefix ? length : 0;
+        
+        for (int start = 0; start <= lastStart; start++) {
+            if (start > 0 && isLineTerminator(value.charAt(start - 1))) {
+                break;
+            }
+            int numberStart = start;
+            if (start < length && optionalSigns.indexOf(value.charAt(start)) >= 0) {
+                numberStart++;
+            }
+            int numberEnd = scanNumber(value, numberStart);
+            if (numberEnd >= 0) {
+                return new StringBuilder(numberEnd - numberStart + 1).append(' ').append(value, numberStart, numberEnd).toString();
+            }
+        }
+        return null;
+    }
+    
+    /*
+     * Here we try the lengths of the number in the order the regular expression backtracks through them, returning the end of
+     * the first one the rest of the value matches after, or -1 if there is none.
+     */
+    private int scanNumber(CharSequence value, int start) {
+        int digitsEnd = skipDigits(value, start);
+        if (digitsEnd == start) {
+            return -1;
+        }
+        
+        if (shape != Shape.INTEGER && digitsEnd + 1 < value.length() && value.charAt(digitsEnd) == '.'
+                && isDigit(value.charAt(digitsEnd + 1))) {
+            for (int end = skipDigits(value, digitsEnd + 1); end > digitsEnd + 1; end--) {
+                if (matchesTail(value, end)) {
+                    return end;
+                }
+            }
+        }
+        
+        if (shape != Shape.DECIMAL) {
+            for (int end = digitsEnd; end > start; end--) {
+                if (matchesTail(value, end)) {
+                    return end;
+                }
+            }
+        }
+        return -1;
+    }
+    
+    private boolean matchesTail(CharSequence value, int start) {
+        int spaceEnd = start;
+        if (spacing == Spacing.ANY) {
+            while (spaceEnd < value.length() && isSpace(value.charAt(spaceEnd))) {
+                spaceEnd++;
+            }
+        } else if (spacing == Spacing.OPTIONAL && spaceEnd < value.length() && isSpace(value.charAt(spaceEnd))) {
+            spaceEnd++;
+        }
+        
+        for (int unitStart = spaceEnd; unitStart >= start; unitStart--) {
+            for (String unit : units) {
+                if (regionMatchesIgnoreCase(value, unitStart, unit) && matchesSuffix(value, unitStart + unit.length())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+    
+    private boolean matchesSuffix(CharSequence value, int start) {
+        if (!anySuffix) {
+            return start == value.length();
+        }
+        for (int i = start; i < value.length(); i++) {
+            if (isLineTerminator(value.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private static int skipDigits(CharSequence value, int start) {
+        int end = start;
+        while (end < value.length() && isDigit(value.charAt(end))) {
+            end++;
+        }
+        return end;
+    }
+    
+    /*
+     * Case insensitive matching of the rules only folds US-ASCII letters
+     */
+    private static boolean regionMatchesIgnoreCase(CharSequence value, int start, String unit) {
+        if (start + unit.length() > value.length()) {
+            return false;
+        }
+        for (int i = 0; i < unit.length(); i++) {
+            char a = value.charAt(start + i);
+            char b = unit.charAt(i);
+            if (a != b && (a >= 128 || b >= 128 || Character.toLowerCase(a) != Character.toLowerCase(b))) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+    
+    private static boolean isSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+    
+    private static boolean isLineTerminator(char c) {
+        return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+    
+    @Override
+    public String toString() {
+        return regex;
+    }
+}
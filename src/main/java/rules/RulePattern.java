@@ -0,0 +1,54 @@
+package rules;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/*
+ * A case insensitive rule pattern, compiled once. Each stream thread reuses its own Matcher, so matching a record does not
+ * allocate a new Matcher per rule.
+ */
+public final class RulePattern implements ValueFinder {
+    private final String regex;
+    private final Pattern pattern;
+    private final ThreadLocal<Matcher> matchers;
+    
+    public RulePattern(String regex) {
+        this.regex = regex;
+        this.pattern = Pattern.compile("(?i)"+regex);
+        this.matchers = ThreadLocal.withInitial(() -> pattern.matcher(""));
+    }
+    
+    public String getRegex() {
+        return regex;
+    }
+    
+    public Pattern getPattern() {
+        return pattern;
+    }
+    
+    /*
+     * The returned Matcher belongs to the calling thread and is only valid until the next call on this pattern.
+     */
+    public Matcher matcher(CharSequence input) {
+        return matchers.get().reset(input);
+    }
+    
+    @Override
+    public String find(CharSequence value) {
+        Matcher patternMatcher = matcher(value);
+        if (!patternMatcher.matches() || patternMatcher.groupCount() == 0) {
+            return null;
+        }
+        
+        StringBuilder matcherValue = new StringBuilder();
+        for (int i = 1; i <= patternMatcher.groupCount(); i++) {
+            matcherValue.append(' ').append(patternMatcher.group(i));
+        }
+        return matcherValue.toString();
+    }
+    
+    @Override
+    public String toString() {
+        return regex;
+    }
+}
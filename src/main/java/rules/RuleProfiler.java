@@ -0,0 +1,262 @@
+package rules;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.log4j.Logger;
+
+/*
+ * A sampling profiler of the rules, which times every rule run on one in every sampleRate values normalized or expanded by a
+ * thread, and counts how often the rule matched. Rules are reported by field, predefined value (the FIND_TAG for patterns that
+ * find the value, the field a line is expanded into for expansion rules) and regex, so that the few rules which cost the most
+ * can be found and rewritten. Values which are not sampled only pay for a countdown.
+ * The scan of a keyword index is reported as a rule of its own, as KEYWORD_INDEX.
+ */
+public final class RuleProfiler implements RuleProfilerMBean {
+    private static Logger logger = Logger.getLogger(RuleProfiler.class);
+    private static final RuleProfiler instance = new RuleProfiler();
+    private static final ThreadLocal<int[]> countdowns = ThreadLocal.withInitial(() -> new int[1]);
+    public static final String KEYWORD_INDEX = "(keyword index)";
+    
+    private final ConcurrentHashMap<Rule, RuleStats> rules = new ConcurrentHashMap<Rule, RuleStats>();
+    private final LongAdder sampledValues = new LongAdder();
+    private volatile int sampleRate;
+    private ScheduledExecutorService reporter;
+    
+    private RuleProfiler() {
+    }
+    
+    public static RuleProfiler get() {
+        return instance;
+    }
+    
+    /*
+     * Here we start sampling, and log the most expensive rules every reportIntervalMs if it is above 0
+     */
+    public synchronized void configure(int sampleRate, long reportIntervalMs, int reportSize) {
+        setSampleRate(sampleRate);
+        if (reporter != null) {
+            reporter.shutdownNow();
+            reporter = null;
+        }
+        if (sampleRate > 0 && reportIntervalMs > 0) {
+            reporter = Executors.newSingleThreadScheduledExecutor((runnable) -> {
+                Thread thread = new Thread(runnable, "scylla-rule-profiler");
+                thread.setDaemon(true);
+                return thread;
+            });
+            reporter.scheduleAtFixedRate(() -> logger.info(report(reportSize)), reportIntervalMs, reportIntervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+    
+    /*
+     * Here we decide whether the rules run on the next value of the calling thread are profiled
+     */
+    public boolean sample() {
+        int rate = sampleRate;
+        if (rate <= 0) {
+            return false;
+        }
+        int[] countdown = countdowns.get();
+        if (--countdown[0] > 0) {
+            return false;
+        }
+        countdown[0] = rate;
+        sampledValues.increment();
+        return true;
+    }
+    
+    /*
+     * Here we record a run of the rule, given the System.nanoTime() at which it started
+     */
+    public void record(String field, String value, String regex, long startNanos, boolean isHit) {
+        long nanos = System.nanoTime() - startNanos;
+        Rule rule = new Rule(field, value, regex);
+        RuleStats stats = rules.get(rule);
+        if (stats == null) {
+            stats = rules.computeIfAbsent(rule, RuleStats::new);
+        }
+        stats.record(nanos, isHit);
+    }
+    
+    /*
+     * The profiled rules, from the most to the least time spent
+     */
+    public List<RuleStats> getTop(int count) {
+        List<RuleStats> top = new ArrayList<RuleStats>(rules.values());
+        top.sort(Comparator.comparingLong(RuleStats::getNanos).reversed());
+        return count < top.size() ? top.subList(0, count) : top;
+    }
+    
+    @Override
+    public String report(int count) {
+        List<RuleStats> top = getTop(Integer.MAX_VALUE);
+        long totalNanos = 0;
+        for (RuleStats stats : top) {
+            totalNanos += stats.getNanos();
+        }
+        
+        StringBuilder report = new StringBuilder(String.format("Rule profile of %d sampled values (1 in %d), %d rules, top %d by time:",
+                sampledValues.sum(), sampleRate, top.size(), Math.min(count, top.size())));
+        report.append(String.format("%n%10s %6s %10s %6s %10s  %s", "time ms", "share", "calls", "hits", "mean us", "field / value / regex"));
+        for (RuleStats stats : top.subList(0, Math.min(count, top.size()))) {
+            report.append(String.format("%n%10.1f %5.1f%% %10d %5.1f%% %10.2f  %s / %s / %s", stats.getNanos() / 1e6,
+                    totalNanos == 0 ? 0 : 100.0 * stats.getNanos() / totalNanos, stats.getCalls(), 100 * stats.getHitRate(),
+                    stats.getMeanNanos() / 1e3, stats.getField(), stats.getValue(), stats.getRegex()));
+        }
+        return report.toString();
+    }
+    
+    /*
+     * Here we write every profiled rule to the file as tab separated values, from the most to the least time spent
+     */
+    public void dump(Path file) throws IOException {
+        StringBuilder dump = new StringBuilder("field\tvalue\tregex\tcalls\thits\ttime_us\tmean_us\n");
+        for (RuleStats stats : getTop(Integer.MAX_VALUE)) {
+            dump.append(stats.getField()).append('\t').append(stats.getValue()).append('\t').append(stats.getRegex()).append('\t')
+                    .append(stats.getCalls()).append('\t').append(stats.getHits()).append('\t').append(stats.getNanos() / 1000).append('\t')
+                    .append(String.format("%.2f", stats.getMeanNanos() / 1e3)).append('\n');
+        }
+        Files.write(file, dump.toString().getBytes(StandardCharsets.UTF_8));
+    }
+    
+    @Override
+    public String dump(String file) {
+        try {
+            dump(Paths.get(file));
+            return "Dumped "+rules.size()+" rules to "+file;
+        } catch (Exception e) {
+            logger.error("An error occured while dumping the rule profile to "+file,e);
+            return "Unable to dump the rule profile to "+file+": "+e.getMessage();
+        }
+    }
+    
+    @Override
+    public int getSampleRate() {
+        return sampleRate;
+    }
+    
+    @Override
+    public void setSampleRate(int sampleRate) {
+        this.sampleRate = Math.max(0, sampleRate);
+    }
+    
+    @Override
+    public long getSampledValueCount() {
+        return sampledValues.sum();
+    }
+    
+    @Override
+    public int getProfiledRuleCount() {
+        return rules.size();
+    }
+    
+    @Override
+    public void reset() {
+        rules.clear();
+        sampledValues.reset();
+    }
+    
+    /*
+     * Reports the run of a rule of a KeywordMatcher, by its index, or -1 for the scan of the keyword index
+     */
+    public interface Probe {
+        void record(int rule, long startNanos, boolean isHit);
+    }
+    
+    public static final class RuleStats {
+        private final String field;
+        private final String value;
+        private final String regex;
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+        
+        RuleStats(Rule rule) {
+            this.field = rule.field;
+            this.value = rule.value;
+            this.regex = rule.regex;
+        }
+        
+        void record(long runNanos, boolean isHit) {
+            calls.increment();
+            nanos.add(runNanos);
+            if (isHit) {
+                hits.increment();
+            }
+        }
+        
+        public String getField() {
+            return field;
+        }
+        
+        public String getValue() {
+            return value;
+        }
+        
+        public String getRegex() {
+            return regex;
+        }
+        
+        public long getCalls() {
+            return calls.sum();
+        }
+        
+        public long getHits() {
+            return hits.sum();
+        }
+        
+        public long getNanos() {
+            return nanos.sum();
+        }
+        
+        public double getHitRate() {
+            long callCount = calls.sum();
+            return callCount == 0 ? 0 : (double) hits.sum() / callCount;
+        }
+        
+        public double getMeanNanos() {
+            long callCount = calls.sum();
+            return callCount == 0 ? 0 : (double) nanos.sum() / callCount;
+        }
+    }
+    
+    private static final class Rule {
+        private final String field;
+        private final String value;
+        private final String regex;
+        private final int hash;
+        
+        Rule(String field, String value, String regex) {
+            this.field = field;
+            this.value = value == null ? "" : value;
+            this.regex = regex;
+            this.hash = 31 * (31 * field.hashCode() + this.value.hashCode()) + regex.hashCode();
+        }
+        
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+        
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Rule)) {
+                return false;
+            }
+            Rule rule = (Rule) other;
+            return field.equals(rule.field) && value.equals(rule.value) && regex.equals(rule.regex);
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package rules;
+
+public interface RuleProfilerMBean {
+    int getSampleRate();
+    void setSampleRate(int sampleRate);
+    long getSampledValueCount();
+    int getProfiledRuleCount();
+    String report(int count);
+    String dump(String file);
+    void reset();
+}
@@ -0,0 +1,116 @@
+package rules;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.log4j.Logger;
+
+import metrics.Counter;
+import metrics.ScyllaMetrics;
+
+/*
+ * Reloads the normalization rules from a rules document while records are being processed. Documents are compiled on a
+ * background thread and swapped in with CompiledRules.set only once they compile, so a broken document leaves the rules in use
+ * untouched. When documents arrive faster than they compile, only the latest one is compiled.
+ */
+public class RuleReloader implements Closeable {
+    private static Logger logger = Logger.getLogger(RuleReloader.class);
+    
+    private final ScheduledExecutorService executor;
+    private final AtomicReference<Pending> pending = new AtomicReference<Pending>();
+    private final Counter reloads;
+    private final Counter failures;
+    
+    private FileTime lastModified;
+    private long lastSize = -1;
+    
+    public RuleReloader() {
+        this.executor = Executors.newSingleThreadScheduledExecutor((runnable) -> {
+            Thread thread = new Thread(runnable, "scylla-rule-reloader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.reloads = ScyllaMetrics.get().getCounter("rule-reloads");
+        this.failures = ScyllaMetrics.get().getCounter("rule-reload-failures");
+    }
+    
+    /*
+     * Here we compile the document and swap it in on the calling thread, returning whether the rules were swapped
+     */
+    public boolean reload(String source, byte[] document) {
+        try {
+            long start = System.nanoTime();
+            CompiledRules rules = RulesDocument.parse(document);
+            CompiledRules.set(rules);
+            reloads.increment();
+            logger.info(String.format("Reloaded rules for %d fields from %s in %.1fms", rules.getFieldRules().size(), source,
+                    (System.nanoTime() - start) / 1e6));
+            return true;
+        } catch (Exception e) {
+            failures.increment();
+            logger.error("Keeping the current rules, as the rules from "+source+" are invalid", e);
+        }
+        return false;
+    }
+    
+    /*
+     * Here we queue the document to be compiled and swapped in on the background thread
+     */
+    public void submit(String source, byte[] document) {
+        if (pending.getAndSet(new Pending(source, document)) == null) {
+            executor.execute(() -> {
+                Pending latest = pending.getAndSet(null);
+                if (latest != null) {
+                    reload(latest.source, latest.document);
+                }
+            });
+        }
+    }
+    
+    /*
+     * Here we load the rules file, then poll it for changes in the background
+     */
+    public synchronized boolean watch(Path file, long pollIntervalMs) {
+        boolean isLoaded = reloadIfChanged(file);
+        executor.scheduleWithFixedDelay(() -> reloadIfChanged(file), pollIntervalMs, pollIntervalMs, TimeUnit.MILLISECONDS);
+        return isLoaded;
+    }
+    
+    private synchronized boolean reloadIfChanged(Path file) {
+        try {
+            FileTime modified = Files.getLastModifiedTime(file);
+            long size = Files.size(file);
+            if (modified.equals(lastModified) && size == lastSize) {
+                return false;
+            }
+            lastModified = modified;
+            lastSize = size;
+            return reload(file.toString(), Files.readAllBytes(file));
+        } catch (IOException e) {
+            logger.error("Unable to read rules file "+file, e);
+        }
+        return false;
+    }
+    
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+    
+    private static final class Pending {
+        private final String source;
+        private final byte[] document;
+        
+        Pending(String source, byte[] document) {
+            this.source = source;
+            this.document = document;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package rules;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.PatternSyntaxException;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import fields.Fields;
+
+/*
+ * The JSON form of the normalization rules, so that rules can be changed without rebuilding the Fields class:
+ *
+ *     {"fieldValues": {"<field>": {"<value or FIND>": ["<regex>", ...]}},
+ *      "ergonomicAdjustments": {"<regex>": "<field>"},
+ *      "connectorTypes": {"<regex>": "<field>"}}
+ *
+ * The order of every object is kept, as it decides which rule wins.
+ */
+public final class RulesDocument {
+    public static final String FIELD_VALUES = "fieldValues";
+    public static final String ERGONOMIC_ADJUSTMENTS = "ergonomicAdjustments";
+    public static final String CONNECTOR_TYPES = "connectorTypes";
+    
+    private static final ObjectMapper mapper = new ObjectMapper();
+    
+    private RulesDocument() {
+    }
+    
+    /*
+     * Here we parse, validate and compile a rules document, throwing an IllegalArgumentException if it cannot be used.
+     */
+    public static CompiledRules parse(byte[] document) {
+        Document rules;
+        try {
+            rules = mapper.readValue(document, Document.class);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Unable to parse rules: "+e.getMessage(), e);
+        }
+        
+        if (rules.fieldValues == null || rules.fieldValues.isEmpty()) {
+            throw new IllegalArgumentException("Rules define no "+FIELD_VALUES);
+        }
+        for (Map.Entry<String, LinkedHashMap<String, String[]>> field : rules.fieldValues.entrySet()) {
+            if (field.getValue() == null || field.getValue().isEmpty()) {
+                throw new IllegalArgumentException("Rules define no values for field "+field.getKey());
+            }
+        }
+        try {
+            return CompiledRules.compile(rules.fieldValues, orEmpty(rules.ergonomicAdjustments), orEmpty(rules.connectorTypes));
+        } catch (PatternSyntaxException e) {
+            throw new IllegalArgumentException("Invalid rule pattern: "+e.getMessage(), e);
+        }
+    }
+    
+    /*
+     * Here we write the rules of the Fields class as a rules document, as a starting point for rules maintained outside of it
+     */
+    public static byte[] fromFields(Fields fields) throws IOException {
+        Map<String, Object> document = new LinkedHashMap<String, Object>();
+        document.put(FIELD_VALUES, fields.getFieldValues());
+        document.put(ERGONOMIC_ADJUSTMENTS, fields.getErgonomicAdjustments());
+        document.put(CONNECTOR_TYPES, fields.getConnectorTypes());
+        return mapper.writer().with(SerializationFeature.INDENT_OUTPUT).writeValueAsBytes(document);
+    }
+    
+    private static Map<String, String> orEmpty(Map<String, String> expansions) {
+        return expansions == null ? new LinkedHashMap<String, String>() : expansions;
+    }
+    
+    public static void main(String[] args) throws IOException {
+        System.out.write(fromFields(new Fields()));
+        System.out.println();
+    }
+    
+    private static final class Document {
+        public LinkedHashMap<String, LinkedHashMap<String, String[]>> fieldValues;
+        public LinkedHashMap<String, String> ergonomicAdjustments;
+        public LinkedHashMap<String, String> connectorTypes;
+    }
+}
@@ -0,0 +1,12 @@
+package rules;
+
+/*
+ * A FIND_TAG rule, which extracts the normalized value from within the raw value.
+ */
+public interface ValueFinder {
+    
+    /*
+     * Here we return each captured group of the raw value preceded by a space, or null if the whole raw value does not match.
+     */
+    String find(CharSequence value);
+}
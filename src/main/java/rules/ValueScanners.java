@@ -0,0 +1,36 @@
+package rules;
+
+import settings.ScyllaSettings;
+
+/*
+ * Decides which FIND_TAG rules are matched by hand-written scanners instead of regular expressions. A regular expression is
+ * replaced by a NumberScanner whenever it has a shape the scanner reproduces exactly. Enabling or disabling the scanners takes
+ * effect the next time the rules are compiled.
+ */
+public final class ValueScanners {
+    private static volatile boolean enabled = ScyllaSettings.get().get(ScyllaSettings.SCANNERS_ENABLED);
+    
+    private ValueScanners() {
+    }
+    
+    public static void setEnabled(boolean isEnabled) {
+        enabled = isEnabled;
+    }
+    
+    public static boolean isEnabled() {
+        return enabled;
+    }
+    
+    /*
+     * Here we return a scanner for the regular expression if there is one, and the compiled regular expression otherwise
+     */
+    public static ValueFinder finderFor(String regex) {
+        if (enabled) {
+            NumberScanner scanner = NumberScanner.compile(regex);
+            if (scanner != null) {
+                return scanner;
+            }
+        }
+        return new RulePattern(regex);
+    }
+}
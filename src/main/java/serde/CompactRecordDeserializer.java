@@ -0,0 +1,212 @@
+package serde;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.Deserializer;
+
+import metrics.RateLimitedLogger;
+import model.ProductRecord;
+
+/*
+ * Reads records written by the CompactRecordSerializer, or written as JSON, so that consumers of the sink topics keep working
+ * whichever format the sink is switched to. A record is only readable with the schema it was written with, which is the
+ * schema of the Fields class unless other schemas are registered.
+ */
+public class CompactRecordDeserializer implements Deserializer<ProductRecord> {
+    private static RateLimitedLogger logger = RateLimitedLogger.getLogger(CompactRecordDeserializer.class);
+    private static final ProductRecordDeserializer jsonDeserializer = new ProductRecordDeserializer();
+    
+    private final Map<Integer, RecordSchema> schemas = new HashMap<Integer, RecordSchema>();
+    
+    public CompactRecordDeserializer() {
+        register(CompactRecordSerializer.fieldsSchema());
+    }
+    
+    public CompactRecordDeserializer(RecordSchema... schemas) {
+        for (RecordSchema schema : schemas) {
+            register(schema);
+        }
+    }
+    
+    public synchronized CompactRecordDeserializer register(RecordSchema schema) {
+        schemas.put(schema.getVersion(), schema);
+        return this;
+    }
+    
+    @Override
+    public void configure(Map<String, ?> configs, boolean isKey) {
+    }
+    
+    /*
+     * Here we read the record in whichever format it was written. Records that cannot be read are kept as malformed, like
+     * records which are not valid JSON.
+     */
+    @Override
+    public ProductRecord deserialize(String topic, byte[] data) {
+        if (data == null) {
+            return null;
+        }
+        if (!isCompact(data)) {
+            return jsonDeserializer.deserialize(topic, data);
+        }
+        try {
+            Input input = new Input(data);
+            input.readByte();
+            int format = input.readByte();
+            if (format != CompactRecordSerializer.FORMAT) {
+                throw new SerializationException("Unknown compact record format: "+format);
+            }
+            int version = input.readInt();
+            RecordSchema schema;
+            synchronized (this) {
+                schema = schemas.get(version);
+            }
+            if (schema == null) {
+                throw new SerializationException("Unknown record schema version: "+Integer.toUnsignedString(version));
+            }
+            
+            ProductRecord record = new ProductRecord();
+            readFields(input, schema, record.getFields());
+            for (long categories = input.readVarint(); categories > 0; categories--) {
+                String category = readName(input, schema, (int) input.readVarint());
+                Map<String,String> categoryFields = new LinkedHashMap<String,String>();
+                readFields(input, schema, categoryFields);
+                record.putCategory(category, categoryFields);
+            }
+            if (input.remaining() != 0) {
+                throw new SerializationException("Unexpected bytes after record: "+input.remaining());
+            }
+            return record;
+        } catch (Exception e) {
+            logger.error( () -> "An error occured while reading compact record of "+data.length+" bytes",e);
+        }
+        return ProductRecord.malformed(data);
+    }
+    
+    /*
+     * JSON records always start with a printable character, so the MAGIC byte tells the formats apart
+     */
+    public static boolean isCompact(byte[] data) {
+        return data.length > 0 && data[0] == CompactRecordSerializer.MAGIC;
+    }
+    
+    /*
+     * Here we convert a record in either format to JSON, for consumers which do not read the compact format themselves
+     */
+    public String toJson(byte[] data) {
+        return ProductRecordSerde.toJson(deserialize(null, data));
+    }
+    
+    private static void readFields(Input input, RecordSchema schema, Map<String,String> fields) {
+        for (long size = input.readVarint(); size > 0; size--) {
+            long key = input.readVarint();
+            String field = readName(input, schema, (int) (key >>> 3));
+            fields.put(field, readValue(input, (int) (key & 7)));
+        }
+    }
+    
+    private static String readName(Input input, RecordSchema schema, int id) {
+        if (id == 0) {
+            return input.readString();
+        }
+        String name = schema.nameOf(id);
+        if (name == null) {
+            throw new SerializationException("Unknown field number "+id+" in schema version "+Integer.toUnsignedString(schema.getVersion()));
+        }
+        return name;
+    }
+    
+    private static String readValue(Input input, int type) {
+        switch (type) {
+            case CompactRecordSerializer.TYPE_NULL:
+                return null;
+            case CompactRecordSerializer.TYPE_FALSE:
+                return "false";
+            case CompactRecordSerializer.TYPE_TRUE:
+                return "true";
+            case CompactRecordSerializer.TYPE_INTEGER:
+                return Long.toString(input.readZigzag());
+            case CompactRecordSerializer.TYPE_DECIMAL:
+                long scale = input.readVarint();
+                if (scale > CompactRecordSerializer.MAX_DIGITS) {
+                    throw new SerializationException("Decimal scale out of range: "+scale);
+                }
+                return toDecimal(input.readZigzag(), (int) scale);
+            case CompactRecordSerializer.TYPE_STRING:
+                return input.readString();
+            default:
+                throw new SerializationException("Unknown value type: "+type);
+        }
+    }
+    
+    private static String toDecimal(long unscaled, int scale) {
+        StringBuilder digits = new StringBuilder(Long.toString(Math.abs(unscaled)));
+        while (digits.length() <= scale) {
+            digits.insert(0, '0');
+        }
+        digits.insert(digits.length() - scale, '.');
+        if (unscaled < 0) {
+            digits.insert(0, '-');
+        }
+        return digits.toString();
+    }
+    
+    @Override
+    public void close() {
+    }
+    
+    private static final class Input {
+        private final byte[] bytes;
+        private int position;
+        
+        Input(byte[] bytes) {
+            this.bytes = bytes;
+        }
+        
+        int remaining() {
+            return bytes.length - position;
+        }
+        
+        int readByte() {
+            if (position >= bytes.length) {
+                throw new SerializationException("Record ends early at byte "+position);
+            }
+            return bytes[position++] & 0xFF;
+        }
+        
+        int readInt() {
+            return readByte() << 24 | readByte() << 16 | readByte() << 8 | readByte();
+        }
+        
+        long readVarint() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int next = readByte();
+                value |= (long) (next & 0x7F) << shift;
+                if ((next & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new SerializationException("Malformed varint at byte "+position);
+        }
+        
+        long readZigzag() {
+            long value = readVarint();
+            return (value >>> 1) ^ -(value & 1);
+        }
+        
+        String readString() {
+            long length = readVarint();
+            if (length > remaining()) {
+                throw new SerializationException("String of "+length+" bytes exceeds the record");
+            }
+            String value = new String(bytes, position, (int) length, StandardCharsets.UTF_8);
+            position += (int) length;
+            return value;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package serde;
+
+import java.util.Map;
+
+import org.apache.kafka.common.serialization.Deserializer;
+import org.apache.kafka.common.serialization.Serde;
+import org.apache.kafka.common.serialization.Serializer;
+
+import model.ProductRecord;
+
+public class CompactRecordSerde implements Serde<ProductRecord> {
+    private static final CompactRecordSerializer serializer = new CompactRecordSerializer();
+    private static final CompactRecordDeserializer deserializer = new CompactRecordDeserializer();
+    
+    @Override
+    public void configure(Map<String, ?> configs, boolean isKey) {
+    }
+    
+    @Override
+    public Serializer<ProductRecord> serializer() {
+        return serializer;
+    }
+    
+    @Override
+    public Deserializer<ProductRecord> deserializer() {
+        return deserializer;
+    }
+    
+    @Override
+    public void close() {
+    }
+}
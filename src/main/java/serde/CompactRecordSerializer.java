@@ -0,0 +1,225 @@
+package serde;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.apache.kafka.common.serialization.Serializer;
+
+import fields.Fields;
+import model.ProductRecord;
+
+/*
+ * Writes records in the compact format, in which every name of the schema is replaced by its number and values which are
+ * integers, decimals or booleans are written as such. Values are always read back as the exact same string.
+ *
+ * A record is the MAGIC byte, the FORMAT byte and the schema version as 4 bytes, followed by the fields and then the
+ * categories, each list starting with its size. A field is a varint of (number << 3 | type), followed by the name when the
+ * number is 0 (a name the schema does not know), then by the value. A category is its name the same way, then its fields.
+ * Varints are unsigned LEB128, and numbers are zigzag encoded.
+ */
+public class CompactRecordSerializer implements Serializer<ProductRecord> {
+    static final byte MAGIC = 0;
+    static final byte FORMAT = 1;
+    
+    static final int TYPE_NULL = 0;
+    static final int TYPE_FALSE = 1;
+    static final int TYPE_TRUE = 2;
+    static final int TYPE_INTEGER = 3;
+    static final int TYPE_DECIMAL = 4;
+    static final int TYPE_STRING = 5;
+    
+    static final int MAX_DIGITS = 18;
+    private static RecordSchema fieldsSchema;
+    
+    private final RecordSchema schema;
+    
+    public CompactRecordSerializer() {
+        this(fieldsSchema());
+    }
+    
+    public CompactRecordSerializer(RecordSchema schema) {
+        this.schema = schema;
+    }
+    
+    /*
+     * The schema of the Fields class, shared by every serializer and deserializer which is not given its own
+     */
+    static synchronized RecordSchema fieldsSchema() {
+        if (fieldsSchema == null) {
+            fieldsSchema = RecordSchema.fromFields(new Fields());
+        }
+        return fieldsSchema;
+    }
+    
+    @Override
+    public void configure(Map<String, ?> configs, boolean isKey) {
+    }
+    
+    /*
+     * Here we write the record in the compact format. Malformed and quarantined records are written back exactly as they
+     * arrived.
+     */
+    @Override
+    public byte[] serialize(String topic, ProductRecord record) {
+        if (record == null) {
+            return null;
+        }
+        if (record.isMalformed()) {
+            return record.getRaw();
+        }
+        if (record.isQuarantined() && record.getSource() != null) {
+            return record.getSource();
+        }
+        Output output = new Output();
+        output.writeByte(MAGIC);
+        output.writeByte(FORMAT);
+        output.writeInt(schema.getVersion());
+        
+        output.writeVarint(record.size());
+        for (int i = 0; i < record.size(); i++) {
+            writeField(output, record.nameAt(i), record.valueAt(i));
+        }
+        output.writeVarint(record.getCategories().size());
+        for (Entry<String,Map<String,String>> category : record.getCategories().entrySet()) {
+            int id = schema.idOf(category.getKey());
+            output.writeVarint(id);
+            if (id == 0) {
+                output.writeString(category.getKey());
+            }
+            writeFields(output, category.getValue());
+        }
+        return output.toByteArray();
+    }
+    
+    private void writeFields(Output output, Map<String,String> fields) {
+        output.writeVarint(fields.size());
+        for (Entry<String,String> field : fields.entrySet()) {
+            writeField(output, field.getKey(), field.getValue());
+        }
+    }
+    
+    private void writeField(Output output, String field, String value) {
+        int id = schema.idOf(field);
+        int type = typeOf(value);
+        
+        output.writeVarint((long) id << 3 | type);
+        if (id == 0) {
+            output.writeString(field);
+        }
+        if (type == TYPE_INTEGER) {
+            output.writeZigzag(Long.parseLong(value));
+        } else if (type == TYPE_DECIMAL) {
+            int point = value.indexOf('.');
+            output.writeVarint(value.length() - point - 1);
+            output.writeZigzag(Long.parseLong(value.substring(0, point) + value.substring(point + 1)));
+        } else if (type == TYPE_STRING) {
+            output.writeString(value);
+        }
+    }
+    
+    /*
+     * Here we pick the type a value is written as. Only values which are read back as the same string are written as numbers,
+     * so "007", "1e3" or "-0" stay strings.
+     */
+    static int typeOf(String value) {
+        if (value == null) {
+            return TYPE_NULL;
+        }
+        if ("true".equals(value)) {
+            return TYPE_TRUE;
+        }
+        if ("false".equals(value)) {
+            return TYPE_FALSE;
+        }
+        
+        int start = value.startsWith("-") ? 1 : 0;
+        int point = -1;
+        int digits = 0;
+        for (int i = start; i < value.length(); i++) {
+            char character = value.charAt(i);
+            if (character == '.' && point < 0) {
+                point = i;
+            } else if (character >= '0' && character <= '9') {
+                digits++;
+            } else {
+                return TYPE_STRING;
+            }
+        }
+        int integerDigits = (point < 0 ? value.length() : point) - start;
+        if (digits == 0 || digits > MAX_DIGITS || integerDigits == 0 || point == value.length() - 1) {
+            return TYPE_STRING;
+        }
+        if (integerDigits > 1 && value.charAt(start) == '0') {
+            return TYPE_STRING;
+        }
+        if (start == 1 && digits == countZeros(value)) {
+            return TYPE_STRING;
+        }
+        return point < 0 ? TYPE_INTEGER : TYPE_DECIMAL;
+    }
+    
+    private static int countZeros(String value) {
+        int zeros = 0;
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) == '0') {
+                zeros++;
+            }
+        }
+        return zeros;
+    }
+    
+    @Override
+    public void close() {
+    }
+    
+    private static final class Output {
+        private byte[] bytes = new byte[256];
+        private int position;
+        
+        void writeByte(int value) {
+            ensureCapacity(1);
+            bytes[position++] = (byte) value;
+        }
+        
+        void writeInt(int value) {
+            ensureCapacity(4);
+            bytes[position++] = (byte) (value >>> 24);
+            bytes[position++] = (byte) (value >>> 16);
+            bytes[position++] = (byte) (value >>> 8);
+            bytes[position++] = (byte) value;
+        }
+        
+        void writeVarint(long value) {
+            ensureCapacity(10);
+            while ((value & ~0x7FL) != 0) {
+                bytes[position++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[position++] = (byte) value;
+        }
+        
+        void writeZigzag(long value) {
+            writeVarint((value << 1) ^ (value >> 63));
+        }
+        
+        void writeString(String value) {
+            byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            writeVarint(utf8.length);
+            ensureCapacity(utf8.length);
+            System.arraycopy(utf8, 0, bytes, position, utf8.length);
+            position += utf8.length;
+        }
+        
+        private void ensureCapacity(int length) {
+            if (position + length > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, position + length));
+            }
+        }
+        
+        byte[] toByteArray() {
+            return Arrays.copyOf(bytes, position);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package serde;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.kafka.common.serialization.Deserializer;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import metrics.RateLimitedLogger;
+import model.ProductRecord;
+import model.ValueInterner;
+
+public class ProductRecordDeserializer implements Deserializer<ProductRecord> {
+    private static RateLimitedLogger logger = RateLimitedLogger.getLogger(ProductRecordDeserializer.class);
+    private static final JsonFactory jsonFactory = new JsonFactory();
+    
+    @Override
+    public void configure(Map<String, ?> configs, boolean isKey) {
+    }
+    
+    /*
+     * Here we parse the record once, straight from the consumed bytes, so that it can be passed through every stage without
+     * being parsed again. No intermediate tree is built, and values which are already canonical (e.g "true") are not copied.
+     * Records that cannot be parsed are kept as malformed, so they can be rejected rather than failing the stream.
+     */
+    @Override
+    public ProductRecord deserialize(String topic, byte[] data) {
+        if (data == null) {
+            return null;
+        }
+        try (JsonParser parser = jsonFactory.createParser(data)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new JsonParseException(parser, "Record is not a JSON object");
+            }
+            
+            ProductRecord record = new ProductRecord();
+            record.setSource(data);
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken token = parser.nextToken();
+                
+                if (token == JsonToken.START_OBJECT) {
+                    Map<String,String> categoryFields = new LinkedHashMap<String,String>();
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        String categoryField = parser.getCurrentName();
+                        categoryFields.put(categoryField, readValue(parser, parser.nextToken()));
+                    }
+                    record.putCategory(field, categoryFields);
+                } else {
+                    record.put(field, readValue(parser, token));
+                }
+            }
+            return record;
+        } catch (Exception e) {
+            logger.error( () -> "An error occured while parsing post: "+logger.abbreviate(data),e);
+        }
+        return ProductRecord.malformed(data);
+    }
+    
+    private static String readValue(JsonParser parser, JsonToken token) throws IOException {
+        if (token == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (token == null || !token.isScalarValue()) {
+            throw new JsonParseException(parser, "Unexpected nested value in field "+parser.getCurrentName());
+        }
+        if (token == JsonToken.VALUE_STRING) {
+            String canonicalValue = ValueInterner.get().lookup(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+            if (canonicalValue != null) {
+                return canonicalValue;
+            }
+        }
+        return parser.getText();
+    }
+    
+    @Override
+    public void close() {
+    }
+}
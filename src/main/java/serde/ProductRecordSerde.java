@@ -0,0 +1,47 @@
+package serde;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import org.apache.kafka.common.serialization.Deserializer;
+import org.apache.kafka.common.serialization.Serde;
+import org.apache.kafka.common.serialization.Serializer;
+
+import model.ProductRecord;
+
+public class ProductRecordSerde implements Serde<ProductRecord> {
+    private static final ProductRecordSerializer serializer = new ProductRecordSerializer();
+    private static final ProductRecordDeserializer deserializer = new ProductRecordDeserializer();
+    
+    @Override
+    public void configure(Map<String, ?> configs, boolean isKey) {
+    }
+    
+    @Override
+    public Serializer<ProductRecord> serializer() {
+        return serializer;
+    }
+    
+    @Override
+    public Deserializer<ProductRecord> deserializer() {
+        return deserializer;
+    }
+    
+    @Override
+    public void close() {
+    }
+    
+    public static ProductRecord fromJson(String value) {
+        if (value == null) {
+            return null;
+        }
+        return deserializer.deserialize(null, value.getBytes(StandardCharsets.UTF_8));
+    }
+    
+    public static String toJson(ProductRecord record) {
+        if (record == null) {
+            return null;
+        }
+        return new String(serializer.serialize(null, record), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,72 @@
+package serde;
+
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.Serializer;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+
+import model.ProductRecord;
+
+public class ProductRecordSerializer implements Serializer<ProductRecord> {
+    private static final JsonFactory jsonFactory = new JsonFactory();
+    
+    @Override
+    public void configure(Map<String, ?> configs, boolean isKey) {
+    }
+    
+    /*
+     * Here we serialize the record once at the sink, writing it straight to bytes. Malformed and quarantined records are written
+     * back exactly as they arrived.
+     */
+    @Override
+    public byte[] serialize(String topic, ProductRecord record) {
+        if (record == null) {
+            return null;
+        }
+        if (record.isMalformed()) {
+            return record.getRaw();
+        }
+        if (record.isQuarantined() && record.getSource() != null) {
+            return record.getSource();
+        }
+        ByteArrayBuilder bytes = new ByteArrayBuilder();
+        try (JsonGenerator generator = jsonFactory.createGenerator(bytes)) {
+            generator.writeStartObject();
+            for (int i = 0; i < record.size(); i++) {
+                writeField(generator, record.nameAt(i), record.valueAt(i));
+            }
+            for (Entry<String,Map<String,String>> category : record.getCategories().entrySet()) {
+                generator.writeObjectFieldStart(category.getKey());
+                writeFields(generator, category.getValue());
+                generator.writeEndObject();
+            }
+            generator.writeEndObject();
+        } catch (Exception e) {
+            throw new SerializationException("An error occured while serializing post", e);
+        }
+        return bytes.toByteArray();
+    }
+    
+    private static void writeFields(JsonGenerator generator, Map<String,String> fields) throws Exception {
+        for (Entry<String,String> field : fields.entrySet()) {
+            writeField(generator, field.getKey(), field.getValue());
+        }
+    }
+    
+    private static void writeField(JsonGenerator generator, String field, String value) throws Exception {
+        if (value == null) {
+            generator.writeNullField(field);
+        } else {
+            generator.writeStringField(field, value);
+        }
+    }
+    
+    @Override
+    public void close() {
+    }
+}
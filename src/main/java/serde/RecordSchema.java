@@ -0,0 +1,107 @@
+package serde;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.zip.CRC32;
+
+import fields.Fields;
+
+/*
+ * The numbering of field and category names in the compact record format. Names are numbered from 1 in the order given, and
+ * the version is a fingerprint of the names, so two schemas with the same version always number every name the same way.
+ * A reader needs the schema of the version a record was written with, which can be printed with main() and parsed back.
+ */
+public final class RecordSchema {
+    private final int version;
+    private final List<String> names;
+    private final Map<String, Integer> ids;
+    
+    public RecordSchema(List<String> names) {
+        this.names = Collections.unmodifiableList(new ArrayList<String>(names));
+        this.ids = new HashMap<String, Integer>();
+        CRC32 fingerprint = new CRC32();
+        for (int i = 0; i < names.size(); i++) {
+            if (ids.put(names.get(i), i + 1) != null) {
+                throw new IllegalArgumentException("Duplicate name in schema: "+names.get(i));
+            }
+            fingerprint.update(names.get(i).getBytes(StandardCharsets.UTF_8));
+            fingerprint.update('\n');
+        }
+        this.version = (int) fingerprint.getValue();
+    }
+    
+    /*
+     * Here we number every field the rules know of, the fields which are passed through and the categories, sorted by name so
+     * that the numbering does not depend on the order of the rules.
+     */
+    public static RecordSchema fromFields(Fields fields) {
+        TreeSet<String> names = new TreeSet<String>(fields.getFieldValues().keySet());
+        for (String field : new String[] {Fields.CATEGORY, Fields.URL, Fields.FOUNDTIME, Fields.MODEL, Fields.PRICE}) {
+            names.add(field);
+        }
+        for (Map.Entry<String, List<String>> category : fields.getCategorizedFields().entrySet()) {
+            names.add(category.getKey());
+            names.addAll(category.getValue());
+        }
+        return new RecordSchema(new ArrayList<String>(names));
+    }
+    
+    /*
+     * Here we read back a schema printed by main() or toString(), one name per line, skipping lines starting with #
+     */
+    public static RecordSchema parse(String schema) {
+        List<String> names = new ArrayList<String>();
+        for (String name : schema.split("\n")) {
+            if (!name.trim().isEmpty() && !name.startsWith("#")) {
+                names.add(name.trim());
+            }
+        }
+        return new RecordSchema(names);
+    }
+    
+    public int getVersion() {
+        return version;
+    }
+    
+    public List<String> getNames() {
+        return names;
+    }
+    
+    /*
+     * The number of the name, or 0 if the name is not part of the schema
+     */
+    public int idOf(String name) {
+        Integer id = ids.get(name);
+        return id == null ? 0 : id;
+    }
+    
+    /*
+     * The name of the number, or null if the number is not part of the schema
+     */
+    public String nameOf(int id) {
+        return id < 1 || id > names.size() ? null : names.get(id - 1);
+    }
+    
+    @Override
+    public String toString() {
+        StringBuilder schema = new StringBuilder();
+        for (String name : names) {
+            schema.append(name).append('\n');
+        }
+        return schema.toString();
+    }
+    
+    /*
+     * Here we print the schema of the current Fields class, for consumers which read the compact format without it
+     */
+    public static void main(String[] args) {
+        RecordSchema schema = fromFields(new Fields());
+        System.out.println("# version "+Integer.toUnsignedString(schema.getVersion()));
+        System.out.print(schema);
+    }
+}
@@ -0,0 +1,27 @@
+package serde;
+
+import java.util.Locale;
+
+import org.apache.kafka.common.serialization.Serde;
+
+import model.ProductRecord;
+
+/*
+ * The format accepted records are written to the sink topics in. Rejected records are always written as JSON.
+ */
+public enum SinkFormat {
+    JSON,
+    COMPACT;
+    
+    public static SinkFormat of(String name) {
+        try {
+            return valueOf(name.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown sink format: "+name, e);
+        }
+    }
+    
+    public Serde<ProductRecord> serde() {
+        return this == COMPACT ? new CompactRecordSerde() : new ProductRecordSerde();
+    }
+}
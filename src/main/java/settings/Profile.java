@@ -0,0 +1,47 @@
+package settings;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/*
+ * Sets of tuned defaults, chosen with scylla.profile. Any setting given explicitly still overrides its profile value.
+ *
+ * THROUGHPUT: a stream thread per core, large record caches and producer batches with LZ4 compression, and infrequent
+ *             commits. Suits backfills and steady high volume, at the cost of seconds of end-to-end latency.
+ * LATENCY:    no record cache, small polls, unbatched producer sends and frequent commits, so a record reaches the sink
+ *             within milliseconds of being scraped, at the cost of throughput and broker load.
+ * DEFAULT:    the Kafka defaults.
+ */
+public enum Profile {
+    DEFAULT,
+    THROUGHPUT,
+    LATENCY;
+    
+    public Map<String, String> getValues() {
+        Map<String, String> values = new LinkedHashMap<String, String>();
+        switch (this) {
+            case THROUGHPUT:
+                values.put(ScyllaSettings.STREAM_THREADS.getName(), String.valueOf(Runtime.getRuntime().availableProcessors()));
+                values.put(ScyllaSettings.COMMIT_INTERVAL_MS.getName(), "30000");
+                values.put(ScyllaSettings.CACHE_MAX_BYTES.getName(), String.valueOf(64L * 1024 * 1024));
+                values.put(ScyllaSettings.MAX_POLL_RECORDS.getName(), "2000");
+                values.put(ScyllaSettings.PRODUCER_BATCH_SIZE.getName(), String.valueOf(256 * 1024));
+                values.put(ScyllaSettings.PRODUCER_LINGER_MS.getName(), "50");
+                values.put(ScyllaSettings.PRODUCER_COMPRESSION.getName(), "lz4");
+                values.put(ScyllaSettings.NORMALIZATION_CACHE_ENTRIES.getName(), "200000");
+                break;
+            case LATENCY:
+                values.put(ScyllaSettings.COMMIT_INTERVAL_MS.getName(), "100");
+                values.put(ScyllaSettings.CACHE_MAX_BYTES.getName(), "0");
+                values.put(ScyllaSettings.MAX_POLL_RECORDS.getName(), "100");
+                values.put(ScyllaSettings.PRODUCER_BATCH_SIZE.getName(), "16384");
+                values.put(ScyllaSettings.PRODUCER_LINGER_MS.getName(), "0");
+                values.put(ScyllaSettings.PRODUCER_COMPRESSION.getName(), "none");
+                break;
+            default:
+                break;
+        }
+        return Collections.unmodifiableMap(values);
+    }
+}
@@ -0,0 +1,391 @@
+package settings;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.streams.StreamsConfig;
+import org.apache.log4j.Logger;
+
+import config.KafkaConfig;
+import fields.Fields;
+
+/*
+ * The runtime settings of the processor. Each setting is looked up, from highest to lowest precedence, in the system properties,
+ * the environment (SCYLLA_STREAMS_THREADS for scylla.streams.threads), the file named by scylla.config.file, a scylla.properties
+ * file on the classpath and the chosen Profile, before falling back to its default. Settings under scylla.kafka. are passed to
+ * Kafka as they are (e.g scylla.kafka.producer.buffer.memory), but only from system properties and files.
+ */
+public final class ScyllaSettings {
+    private static Logger logger = Logger.getLogger(ScyllaSettings.class);
+    private static volatile ScyllaSettings current;
+    
+    public static final String CONFIG_FILE = "scylla.config.file";
+    public static final String CLASSPATH_FILE = "scylla.properties";
+    public static final String KAFKA_PREFIX = "scylla.kafka.";
+    private static final String MASKED_VALUE = "******";
+    
+    private static final List<Setting<?>> settings = new ArrayList<Setting<?>>();
+    
+    public static final Setting<String> PROFILE = define(Setting.stringSetting("scylla.profile", "default",
+            "Tuned defaults to start from: default, throughput or latency"));
+    public static final Setting<String> APPLICATION_ID = define(Setting.stringSetting("scylla.application.id", KafkaConfig.SCYLLA_GROUP_ID,
+            "Kafka Streams application id and consumer group"));
+    public static final Setting<String> BOOTSTRAP_SERVERS = define(Setting.stringSetting("scylla.bootstrap.servers", KafkaConfig.BOOTSTRAP_SERVER,
+            "Kafka brokers to connect to"));
+    
+    public static final Setting<Integer> STREAM_THREADS = define(Setting.intSetting("scylla.streams.threads", 1,
+            "Stream threads per instance"));
+    public static final Setting<Long> COMMIT_INTERVAL_MS = define(Setting.longSetting("scylla.streams.commit.interval.ms", 30000L,
+            "How often processed offsets are committed"));
+    public static final Setting<Long> CACHE_MAX_BYTES = define(Setting.longSetting("scylla.streams.cache.max.bytes", 10L * 1024 * 1024,
+            "Record cache size across all stream threads"));
+    public static final Setting<Integer> STANDBY_REPLICAS = define(Setting.intSetting("scylla.streams.standby.replicas", 0,
+            "Standby replicas kept of each state store"));
+    public static final Setting<String> STATE_DIR = define(Setting.stringSetting("scylla.streams.state.dir", null,
+            "Directory of the local state stores, kept across restarts, Kafka's default if not set"));
+    public static final Setting<Long> SHUTDOWN_TIMEOUT_MS = define(Setting.longSetting("scylla.shutdown.timeout.ms", 30000L,
+            "How long a shutdown waits for the streams to close cleanly"));
+    public static final Setting<Integer> HEALTH_PORT = define(Setting.intSetting("scylla.health.port", 0,
+            "Port of the HTTP health endpoint, 0 to not serve it"));
+    public static final Setting<Integer> MAX_POLL_RECORDS = define(Setting.intSetting("scylla.consumer.max.poll.records", 500,
+            "Records returned by a single poll"));
+    public static final Setting<Integer> PRODUCER_BATCH_SIZE = define(Setting.intSetting("scylla.producer.batch.size", 16384,
+            "Producer batch size in bytes"));
+    public static final Setting<Long> PRODUCER_LINGER_MS = define(Setting.longSetting("scylla.producer.linger.ms", 0L,
+            "How long the producer waits to fill a batch"));
+    public static final Setting<String> PRODUCER_COMPRESSION = define(Setting.stringSetting("scylla.producer.compression.type", "none",
+            "Producer compression: none, gzip, snappy or lz4"));
+    
+    public static final Setting<String> DEFAULT_CATEGORY = define(Setting.stringSetting("scylla.default.category", Fields.DISPLAY,
+            "Category whose Transformer handles records of unknown categories"));
+    public static final Setting<Boolean> ROUTING_TOPICS = define(Setting.booleanSetting("scylla.routing.topics", false,
+            "Route each category through its own topic and sub-topology"));
+    public static final Setting<Boolean> DEDUP_ENABLED = define(Setting.booleanSetting("scylla.dedup.enabled", false,
+            "Drop unchanged re-scrapes, overridden per category by scylla.<category>.dedup.enabled"));
+    public static final Setting<Long> DEDUP_MAX_AGE_MS = define(Setting.longSetting("scylla.dedup.max.age.ms", 0L,
+            "Emit an unchanged record again once this long has passed, 0 to never"));
+    public static final Setting<Boolean> PARTIAL_ENABLED = define(Setting.booleanSetting("scylla.partial.enabled", false,
+            "Merge partial updates into the last record of their key, overridden per category by scylla.<category>.partial.enabled"));
+    
+    public static final Setting<String> RULES_FILE = define(Setting.stringSetting("scylla.rules.file", null,
+            "Rules document to load and watch"));
+    public static final Setting<Long> RULES_POLL_MS = define(Setting.longSetting("scylla.rules.poll.ms", 10000L,
+            "How often the rules file is checked for changes"));
+    public static final Setting<String> RULES_TOPIC = define(Setting.stringSetting("scylla.rules.topic", null,
+            "Compacted topic to read rules documents from"));
+    public static final Setting<Integer> GUARD_MAX_RECORD_BYTES = define(Setting.intSetting("scylla.guard.max.record.bytes", 1024 * 1024,
+            "Larger records are quarantined to the rejected topic without being parsed, 0 for no limit"));
+    public static final Setting<Integer> GUARD_MAX_FIELD_LENGTH = define(Setting.intSetting("scylla.guard.max.field.length", 64 * 1024,
+            "Records with a longer value are quarantined to the rejected topic, 0 for no limit"));
+    public static final Setting<Long> GUARD_MATCH_BUDGET = define(Setting.longSetting("scylla.guard.match.budget", 10000000L,
+            "Characters the rules may read per record before it is quarantined, 0 for no limit"));
+    public static final Setting<Boolean> GUARD_REQUIRED_FIELDS = define(Setting.booleanSetting("scylla.guard.required.fields", true,
+            "Quarantine records which lack a required field of their Transformer as missing-fields"));
+    public static final Setting<Boolean> REJECTED_REASON_KEY = define(Setting.booleanSetting("scylla.rejected.reason.key", true,
+            "Prefix the key of records on the rejected topics with their reason (e.g missing-fields:<key>), false to keep the key"));
+    public static final Setting<Integer> LOG_RECORD_ERRORS_PER_SECOND = define(Setting.intSetting("scylla.log.record.errors.per.second", 10,
+            "Messages about single records each class logs per second, the rest are counted as suppressed, 0 for no limit"));
+    public static final Setting<Integer> LOG_MAX_RECORD_CHARS = define(Setting.intSetting("scylla.log.max.record.chars", 1000,
+            "Characters of a record included in a log message, 0 for the whole record"));
+    public static final Setting<String> SINK_FORMAT = define(Setting.stringSetting("scylla.sink.format", "json",
+            "Format of accepted records on the sink topics: json or compact"));
+    public static final Setting<Boolean> OMIT_EMPTY_CATEGORIES = define(Setting.booleanSetting("scylla.output.omit.empty.categories", false,
+            "Leave categories without any normalized field out of accepted records"));
+    public static final Setting<Boolean> SCANNERS_ENABLED = define(Setting.booleanSetting("scylla.scanners.enabled", true,
+            "Match numeric FIND_TAG rules with hand-written scanners"));
+    public static final Setting<Integer> NORMALIZATION_CACHE_ENTRIES = define(Setting.intSetting("scylla.cache.max.entries", 50000,
+            "Normalized values cached across all threads"));
+    public static final Setting<Integer> NORMALIZATION_CACHE_VALUE_LENGTH = define(Setting.intSetting("scylla.cache.max.value.length", 256,
+            "Longest raw value that is cached"));
+    public static final Setting<Integer> PROFILER_SAMPLE_RATE = define(Setting.intSetting("scylla.profiler.sample.rate", 0,
+            "Time the rules run on one in every this many values, 0 to disable the rule profiler"));
+    public static final Setting<Long> PROFILER_REPORT_INTERVAL_MS = define(Setting.longSetting("scylla.profiler.report.interval.ms", 60000L,
+            "How often the most expensive rules are logged, 0 to never"));
+    public static final Setting<Integer> PROFILER_REPORT_SIZE = define(Setting.intSetting("scylla.profiler.report.size", 20,
+            "Rules listed in each rule profiler report"));
+    
+    public static final Setting<Boolean> WARMUP_ENABLED = define(Setting.booleanSetting("scylla.warmup.enabled", false,
+            "Run the Transformer chains over a sample corpus before processing starts"));
+    public static final Setting<String> WARMUP_CORPUS = define(Setting.stringSetting("scylla.warmup.corpus", null,
+            "File of newline delimited raw records to warm up with, the bundled corpus if not set"));
+    public static final Setting<Long> WARMUP_DURATION_MS = define(Setting.longSetting("scylla.warmup.duration.ms", 30000L,
+            "How long to warm up for, 0 for no limit"));
+    public static final Setting<Integer> WARMUP_ITERATIONS = define(Setting.intSetting("scylla.warmup.iterations", 0,
+            "Passes over the warm-up corpus, 0 for no limit"));
+    public static final Setting<Boolean> PARALLEL_ENABLED = define(Setting.booleanSetting("scylla.parallel.enabled", false,
+            "Process partitions with the ParallelProcessor instead of the topology"));
+    public static final Setting<Integer> PARALLEL_WORKERS = define(Setting.intSetting("scylla.parallel.workers",
+            Runtime.getRuntime().availableProcessors(), "Workers of the ParallelProcessor"));
+    public static final Setting<Integer> PARALLEL_QUEUE_DEPTH = define(Setting.intSetting("scylla.parallel.queue.depth", 1024,
+            "Records queued per worker"));
+    public static final Setting<Integer> PARALLEL_MAX_IN_FLIGHT = define(Setting.intSetting("scylla.parallel.max.in.flight", 10000,
+            "Records in flight before polling pauses"));
+    public static final Setting<Long> PARALLEL_COMMIT_INTERVAL_MS = define(Setting.longSetting("scylla.parallel.commit.interval.ms", 1000L,
+            "How often the ParallelProcessor commits offsets"));
+    
+    private final Map<String, String> systemProperties;
+    private final Map<String, String> environment;
+    private final List<Source> files;
+    private final Map<String, String> profileValues;
+    private final Profile profile;
+    
+    private ScyllaSettings(Map<String, String> systemProperties, Map<String, String> environment, List<Source> files) {
+        this.systemProperties = systemProperties;
+        this.environment = environment;
+        this.files = files;
+        this.profileValues = Collections.emptyMap();
+        this.profile = parseProfile(get(PROFILE));
+    }
+    
+    private ScyllaSettings(ScyllaSettings settings, Profile profile) {
+        this.systemProperties = settings.systemProperties;
+        this.environment = settings.environment;
+        this.files = settings.files;
+        this.profileValues = profile.getValues();
+        this.profile = profile;
+    }
+    
+    private static <T> Setting<T> define(Setting<T> setting) {
+        settings.add(setting);
+        return setting;
+    }
+    
+    /*
+     * Here we return the settings in use, loading them from the system properties and environment the first time they are needed.
+     */
+    public static ScyllaSettings get() {
+        ScyllaSettings loaded = current;
+        if (loaded == null) {
+            synchronized (ScyllaSettings.class) {
+                if (current == null) {
+                    current = load(System.getProperties(), System.getenv());
+                }
+                loaded = current;
+            }
+        }
+        return loaded;
+    }
+    
+    public static void set(ScyllaSettings settings) {
+        current = settings;
+    }
+    
+    public static ScyllaSettings load(Properties systemProperties, Map<String, String> environment) {
+        Map<String, String> properties = toMap(systemProperties);
+        List<Source> files = new ArrayList<Source>();
+        
+        String configFile = properties.containsKey(CONFIG_FILE) ? properties.get(CONFIG_FILE) : environment.get(Setting.toEnvironmentName(CONFIG_FILE));
+        if (configFile != null) {
+            files.add(new Source(configFile, readFile(Paths.get(configFile))));
+        }
+        try (InputStream input = ScyllaSettings.class.getClassLoader().getResourceAsStream(CLASSPATH_FILE)) {
+            if (input != null) {
+                Properties classpathProperties = new Properties();
+                classpathProperties.load(input);
+                files.add(new Source("classpath:"+CLASSPATH_FILE, toMap(classpathProperties)));
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Unable to read "+CLASSPATH_FILE, e);
+        }
+        
+        ScyllaSettings withoutProfile = new ScyllaSettings(properties, new HashMap<String, String>(environment), files);
+        return new ScyllaSettings(withoutProfile, withoutProfile.profile);
+    }
+    
+    private static Map<String, String> readFile(Path file) {
+        try (InputStream input = Files.newInputStream(file)) {
+            Properties properties = new Properties();
+            properties.load(input);
+            return toMap(properties);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Unable to read settings file "+file, e);
+        }
+    }
+    
+    private static Map<String, String> toMap(Properties properties) {
+        Map<String, String> values = new HashMap<String, String>();
+        for (String name : properties.stringPropertyNames()) {
+            values.put(name, properties.getProperty(name));
+        }
+        return values;
+    }
+    
+    private static Profile parseProfile(String name) {
+        try {
+            return Profile.valueOf(name.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown profile "+name+", expected default, throughput or latency");
+        }
+    }
+    
+    public <T> T get(Setting<T> setting) {
+        String[] valueAndSource = lookup(setting.getName());
+        if (valueAndSource == null) {
+            return setting.getDefaultValue();
+        }
+        try {
+            return setting.parse(valueAndSource[0]);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid value \""+valueAndSource[0]+"\" for "+setting.getName()+" from "+valueAndSource[1], e);
+        }
+    }
+    
+    /*
+     * Here we look up a setting that is not defined up front, such as a per category override
+     */
+    public boolean getBoolean(String name, boolean defaultValue) {
+        return get(Setting.booleanSetting(name, defaultValue, null));
+    }
+    
+    public Profile getProfile() {
+        return profile;
+    }
+    
+    /*
+     * Here we return the value of the setting and where it came from, or null if it is not set anywhere
+     */
+    private String[] lookup(String name) {
+        if (systemProperties.containsKey(name)) {
+            return new String[] {systemProperties.get(name), "system property"};
+        }
+        String environmentName = Setting.toEnvironmentName(name);
+        if (environment.containsKey(environmentName)) {
+            return new String[] {environment.get(environmentName), "environment "+environmentName};
+        }
+        for (Source file : files) {
+            if (file.values.containsKey(name)) {
+                return new String[] {file.values.get(name), file.name};
+            }
+        }
+        if (profileValues.containsKey(name)) {
+            return new String[] {profileValues.get(name), profile.name().toLowerCase(Locale.ROOT)+" profile"};
+        }
+        return null;
+    }
+    
+    /*
+     * Here we return the settings under scylla.kafka. with that prefix removed, lowest precedence first
+     */
+    private Map<String, String> kafkaOverrides() {
+        Map<String, String> overrides = new LinkedHashMap<String, String>();
+        List<Map<String, String>> sources = new ArrayList<Map<String, String>>();
+        for (int i = files.size() - 1; i >= 0; i--) {
+            sources.add(files.get(i).values);
+        }
+        sources.add(systemProperties);
+        for (Map<String, String> source : sources) {
+            for (Map.Entry<String, String> value : source.entrySet()) {
+                if (value.getKey().startsWith(KAFKA_PREFIX)) {
+                    overrides.put(value.getKey().substring(KAFKA_PREFIX.length()), value.getValue());
+                }
+            }
+        }
+        return overrides;
+    }
+    
+    public Properties streamsProperties() {
+        Properties properties = new Properties();
+        properties.put(StreamsConfig.APPLICATION_ID_CONFIG, get(APPLICATION_ID));
+        properties.put(StreamsConfig.BOOTSTRAP_SERVERS_CONFIG, get(BOOTSTRAP_SERVERS));
+        properties.put(StreamsConfig.NUM_STREAM_THREADS_CONFIG, get(STREAM_THREADS));
+        properties.put(StreamsConfig.COMMIT_INTERVAL_MS_CONFIG, get(COMMIT_INTERVAL_MS));
+        properties.put(StreamsConfig.CACHE_MAX_BYTES_BUFFERING_CONFIG, get(CACHE_MAX_BYTES));
+        properties.put(StreamsConfig.NUM_STANDBY_REPLICAS_CONFIG, get(STANDBY_REPLICAS));
+        if (get(STATE_DIR) != null) {
+            properties.put(StreamsConfig.STATE_DIR_CONFIG, get(STATE_DIR));
+        }
+        properties.put(StreamsConfig.consumerPrefix(ConsumerConfig.MAX_POLL_RECORDS_CONFIG), get(MAX_POLL_RECORDS));
+        properties.put(StreamsConfig.producerPrefix(ProducerConfig.BATCH_SIZE_CONFIG), get(PRODUCER_BATCH_SIZE));
+        properties.put(StreamsConfig.producerPrefix(ProducerConfig.LINGER_MS_CONFIG), get(PRODUCER_LINGER_MS));
+        properties.put(StreamsConfig.producerPrefix(ProducerConfig.COMPRESSION_TYPE_CONFIG), get(PRODUCER_COMPRESSION));
+        properties.putAll(kafkaOverrides());
+        return properties;
+    }
+    
+    /*
+     * The consumer properties of the ParallelProcessor, which shares the consumer group of the topology
+     */
+    public Properties consumerProperties() {
+        Properties properties = new Properties();
+        properties.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, get(BOOTSTRAP_SERVERS));
+        properties.put(ConsumerConfig.GROUP_ID_CONFIG, get(APPLICATION_ID));
+        properties.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, get(MAX_POLL_RECORDS));
+        putPrefixed(properties, StreamsConfig.CONSUMER_PREFIX);
+        return properties;
+    }
+    
+    public Properties producerProperties() {
+        Properties properties = new Properties();
+        properties.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, get(BOOTSTRAP_SERVERS));
+        properties.put(ProducerConfig.BATCH_SIZE_CONFIG, get(PRODUCER_BATCH_SIZE));
+        properties.put(ProducerConfig.LINGER_MS_CONFIG, get(PRODUCER_LINGER_MS));
+        properties.put(ProducerConfig.COMPRESSION_TYPE_CONFIG, get(PRODUCER_COMPRESSION));
+        putPrefixed(properties, StreamsConfig.PRODUCER_PREFIX);
+        return properties;
+    }
+    
+    private void putPrefixed(Properties properties, String prefix) {
+        for (Map.Entry<String, String> override : kafkaOverrides().entrySet()) {
+            if (override.getKey().startsWith(prefix)) {
+                properties.put(override.getKey().substring(prefix.length()), override.getValue());
+            }
+        }
+    }
+    
+    /*
+     * Here we log the value of every setting and where it came from, so the effective configuration of an instance is on record
+     */
+    public void logEffectiveValues() {
+        logger.info(describeEffectiveValues());
+    }
+    
+    /*
+     * Here we describe every setting the same way, masking the Kafka overrides which carry credentials (e.g sasl.jaas.config or
+     * ssl.keystore.password)
+     */
+    String describeEffectiveValues() {
+        StringBuilder values = new StringBuilder("Effective settings ("+profile.name().toLowerCase(Locale.ROOT)+" profile):");
+        for (Setting<?> setting : settings) {
+            String[] valueAndSource = lookup(setting.getName());
+            values.append("\n    ").append(setting.getName()).append(" = ").append(get(setting))
+                    .append(valueAndSource == null ? " (default)" : " ("+valueAndSource[1]+")");
+        }
+        for (Map.Entry<String, String> override : kafkaOverrides().entrySet()) {
+            values.append("\n    ").append(KAFKA_PREFIX).append(override.getKey()).append(" = ")
+                    .append(isSecret(override.getKey()) ? MASKED_VALUE : override.getValue());
+        }
+        return values.toString();
+    }
+    
+    private static boolean isSecret(String key) {
+        String lowerCaseKey = key.toLowerCase(Locale.ROOT);
+        return lowerCaseKey.contains("password") || lowerCaseKey.contains("jaas") || lowerCaseKey.contains("secret");
+    }
+    
+    public static List<Setting<?>> getSettings() {
+        return Collections.unmodifiableList(settings);
+    }
+    
+    private static final class Source {
+        private final String name;
+        private final Map<String, String> values;
+        
+        Source(String name, Map<String, String> values) {
+            this.name = name;
+            this.values = values;
+        }
+    }
+}
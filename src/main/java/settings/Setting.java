@@ -0,0 +1,75 @@
+package settings;
+
+import java.util.function.Function;
+
+/*
+ * A typed runtime setting, with the default used when no profile or source sets it.
+ */
+public final class Setting<T> {
+    private final String name;
+    private final String description;
+    private final Function<String, T> parser;
+    private final T defaultValue;
+    
+    private Setting(String name, String description, Function<String, T> parser, T defaultValue) {
+        this.name = name;
+        this.description = description;
+        this.parser = parser;
+        this.defaultValue = defaultValue;
+    }
+    
+    public static Setting<String> stringSetting(String name, String defaultValue, String description) {
+        return new Setting<String>(name, description, Function.identity(), defaultValue);
+    }
+    
+    public static Setting<Integer> intSetting(String name, int defaultValue, String description) {
+        return new Setting<Integer>(name, description, Integer::valueOf, defaultValue);
+    }
+    
+    public static Setting<Long> longSetting(String name, long defaultValue, String description) {
+        return new Setting<Long>(name, description, Long::valueOf, defaultValue);
+    }
+    
+    public static Setting<Boolean> booleanSetting(String name, boolean defaultValue, String description) {
+        return new Setting<Boolean>(name, description, Setting::parseBoolean, defaultValue);
+    }
+    
+    private static Boolean parseBoolean(String value) {
+        if (!"true".equalsIgnoreCase(value) && !"false".equalsIgnoreCase(value)) {
+            throw new IllegalArgumentException("Expected true or false");
+        }
+        return Boolean.valueOf(value);
+    }
+    
+    public String getName() {
+        return name;
+    }
+    
+    public String getDescription() {
+        return description;
+    }
+    
+    public T getDefaultValue() {
+        return defaultValue;
+    }
+    
+    /*
+     * The environment variable of a setting is its name in upper case with dots replaced by underscores
+     */
+    public String getEnvironmentName() {
+        return toEnvironmentName(name);
+    }
+    
+    static String toEnvironmentName(String name) {
+        return name.toUpperCase().replace('.', '_').replace('-', '_');
+    }
+    
+    public T parse(String value) {
+        return parser.apply(value.trim());
+    }
+    
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -2,42 +2,68 @@ package transformer;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.Map.Entry;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import org.apache.commons.lang3.StringUtils;
-import org.apache.log4j.Logger;
-
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ObjectNode;
 
+import config.KafkaConfig;
 import fields.Fields;
+import metrics.RateLimitedLogger;
+import model.CategoryLayout;
+import model.ProductRecord;
+import rules.CompiledRules;
+import rules.ExpansionRule;
+import rules.KeywordMatcher;
+import rules.MatchBudget;
+import rules.MatchBudgetExceededException;
+import rules.RuleProfiler;
+import settings.ScyllaSettings;
 
 public class DisplayTransformer extends Transformer {
-    private static Logger logger = Logger.getLogger(DisplayTransformer.class);
+    private static RateLimitedLogger logger = RateLimitedLogger.getLogger(DisplayTransformer.class);
+    private static final List<String> REQUIRED_FIELDS = Arrays.asList(Fields.URL, Fields.BRAND, Fields.MODEL, Fields.FOUNDTIME);
+    
+    private final boolean omitEmptyCategories;
+    
+    public DisplayTransformer() {
+        this(ScyllaSettings.get().get(ScyllaSettings.OMIT_EMPTY_CATEGORIES));
+    }
+    
+    public DisplayTransformer(boolean omitEmptyCategories) {
+        this.omitEmptyCategories = omitEmptyCategories;
+    }
+    
+    @Override
+    public String getCategory() {
+        return Fields.DISPLAY;
+    }
+    
+    @Override
+    public String getSinkTopic() {
+        return KafkaConfig.DISPLAY_SINK_TOPIC;
+    }
+    
+    @Override
+    public String getRejectedTopic() {
+        return KafkaConfig.DISPLAY_REJECTED_TOPIC;
+    }
+    
+    @Override
+    public List<String> getRequiredFields() {
+        return REQUIRED_FIELDS;
+    }
     
     /*
      * Here we validate that the record arrives with all mandatory fields (Url, Brand, Model and FoundTime)
      */
     @Override
-    public boolean preValidate(String value) {
-        try {
-            ObjectMapper objectMapper = new ObjectMapper();
-            JsonNode record = objectMapper.readTree(value);
-            
-            if (record.get(Fields.URL) != null && record.get(Fields.BRAND) != null && record.get(Fields.MODEL) != null && record.get(Fields.FOUNDTIME) != null) {
-                return true;
-            }
-        } catch (Exception e) {
-            logger.error("An error occured while filtering invalid post: "+value,e);
+    public boolean preValidate(ProductRecord record) {
+        if (record == null || record.isMalformed()) {
             return false;
         }
+        if (record.get(Fields.URL) != null && record.get(Fields.BRAND) != null && record.get(Fields.MODEL) != null && record.get(Fields.FOUNDTIME) != null) {
+            return true;
+        }
         return false;
     }
     
@@ -45,32 +71,28 @@ public class DisplayTransformer extends Transformer {
      * Here we validate that at least 2 out of 4 important fields have been normalized successfully
      */
     @Override
-    public boolean postValidate(String value) {
-        try {
-            ObjectMapper objectMapper = new ObjectMapper();
-            JsonNode record = objectMapper.readTree(value);
-            
-            int fieldCount = 0;
-            if (record.get(Fields.SCREEN_SIZE) != null) {
-                fieldCount++;
-            }
-            if (record.get(Fields.RESOLUTION) != null) {
-                fieldCount++;
-            }
-            if (record.get(Fields.RESPONSE_TIME) != null) {
-                fieldCount++;
-            }
-            if (record.get(Fields.REFRESH_RATE) != null) {
-                fieldCount++;
-            }
-            
-            if (fieldCount >= 2) {
-                return true;
-            } 
-        } catch (Exception e) {
-            logger.error("An error occured while filtering invalid normalized post: "+value,e);
+    public boolean postValidate(ProductRecord record) {
+        if (record == null || record.isMalformed()) {
             return false;
         }
+        
+        int fieldCount = 0;
+        if (record.get(Fields.SCREEN_SIZE) != null) {
+            fieldCount++;
+        }
+        if (record.get(Fields.RESOLUTION) != null) {
+            fieldCount++;
+        }
+        if (record.get(Fields.RESPONSE_TIME) != null) {
+            fieldCount++;
+        }
+        if (record.get(Fields.REFRESH_RATE) != null) {
+            fieldCount++;
+        }
+        
+        if (fieldCount >= 2) {
+            return true;
+        }
         return false;
     }
     
@@ -78,37 +100,16 @@ public class DisplayTransformer extends Transformer {
      * Here we expand aggregated fields in preparation to normalize them
      */
     @Override
-    public String preProcess(String value) {
+    public ProductRecord preProcess(ProductRecord record) {
         try {
-            Matcher patternMatcher;
-            ObjectMapper objectMapper = new ObjectMapper();
-            Fields fields = new Fields();
-            
-            Map<String,String> values = objectMapper.readValue(value, new TypeReference<HashMap<String,String>>(){});
-            
-            //Expand the aggregated ergonomics field
-            String ergonomics = values.get(Fields.ERGONOMICS);
-            if (ergonomics != null) {
-                Map<String,String> ergonomicAdjustments = fields.getErgonomicAdjustments();
-                values.remove(Fields.ERGONOMICS);
-                
-                String[] ergonomicValues = StringUtils.split(ergonomics, '\n');
-                for (String ergonomicValue : ergonomicValues) {
-                    for (String ergonomicAdjustment : ergonomicAdjustments.keySet()) {
-                    patternMatcher = Pattern.compile("(?i)"+ergonomicAdjustment).matcher(ergonomicValue);
-                        if (patternMatcher.find()) {
-                            values.put(ergonomicAdjustments.get(ergonomicAdjustment), ergonomicValue);
-                        }
-                    }
-                }
-            }
+            CompiledRules rules = CompiledRules.get();
             
             //Expand the aggregated connectors field
-            String connectors = values.get(Fields.CONNECTORS);
+            String connectors = record.get(Fields.CONNECTORS);
             if (connectors != null) {
-                Map<String,String> connectorTypes = fields.getConnectorTypes();
-                values.remove(Fields.CONNECTORS);
+                record.remove(Fields.CONNECTORS);
                 
+                boolean[] connectorMatches = new boolean[rules.getConnectorRules().size()];
                 String[] connectorRows = StringUtils.split(connectors, '\n');
                 List<String> connectorValues = new ArrayList<String>();
                 for (String connectorRow : connectorRows) {
@@ -116,47 +117,63 @@ public class DisplayTransformer extends Transformer {
                 }
                 
                 for (String connectorValue : connectorValues) {
-                    for (String connectorType : connectorTypes.keySet()) {
-                        patternMatcher = Pattern.compile("(?i)"+connectorType).matcher(connectorValue);
-                        if (patternMatcher.find()) {
-                            values.put(connectorTypes.get(connectorType), connectorValue);
-                        }
-                    }
+                    expandValue(record, Fields.CONNECTORS, connectorValue, rules.getConnectorRules(), rules.getConnectorMatcher(), connectorMatches);
                 }
             }
-            return objectMapper.writeValueAsString(values);
+            
+            //Expand the aggregated ergonomics field
+            String ergonomics = record.get(Fields.ERGONOMICS);
+            if (ergonomics != null) {
+                record.remove(Fields.ERGONOMICS);
+                
+                boolean[] ergonomicMatches = new boolean[rules.getErgonomicRules().size()];
+                String[] ergonomicValues = StringUtils.split(ergonomics, '\n');
+                for (String ergonomicValue : ergonomicValues) {
+                    expandValue(record, Fields.ERGONOMICS, ergonomicValue, rules.getErgonomicRules(), rules.getErgonomicMatcher(), ergonomicMatches);
+                }
+            }
+            return record;
+        } catch (MatchBudgetExceededException e) {
+            throw e;
         } catch (Exception e) {
-            logger.error("Unexpected error occured while expanding aggregated fields.", e);
+            logger.error( () -> "Unexpected error occured while expanding aggregated fields.", e);
         }
         return null;
     }
     
     /*
-     * Here we restructure the final record so that categorized fields (e.g Ergonomics, Connectivity) are nested together in a non-flat structure
+     * Here we scan a single line of an aggregated field once, and expand it into every field whose rule it matches. The scan
+     * of a line sampled by the RuleProfiler is timed, as is every pattern it falls back to.
+     */
+    private static void expandValue(ProductRecord record, String aggregatedField, String value, List<ExpansionRule> expansionRules,
+            KeywordMatcher matcher, boolean[] matches) {
+        Arrays.fill(matches, false);
+        RuleProfiler.Probe probe = null;
+        if (RuleProfiler.get().sample()) {
+            RuleProfiler profiler = RuleProfiler.get();
+            probe = (rule, start, isHit) -> profiler.record(aggregatedField, rule < 0 ? "" : expansionRules.get(rule).getField(),
+                    rule < 0 ? RuleProfiler.KEYWORD_INDEX : expansionRules.get(rule).getPattern().getRegex(), start, isHit);
+        }
+        matcher.match(MatchBudget.get().guard(value), matches, probe);
+        for (int rule = 0; rule < matches.length; rule++) {
+            if (matches[rule]) {
+                record.put(expansionRules.get(rule).getField(), value);
+            }
+        }
+    }
+    
+    /*
+     * Here we restructure the final record so that categorized fields (e.g Ergonomics, Connectivity) are nested together in a non-flat structure,
+     * through the CategoryLayout compiled once from the Fields class
      */
     @Override
-    public String postProcess(String value) {
+    public ProductRecord postProcess(ProductRecord record) {
         try {
-            ObjectMapper objectMapper = new ObjectMapper();
-            Fields fields = new Fields();
-            JsonNode record = objectMapper.readTree(value);
-            
-            for (Entry<String, List<String>> fieldCategory : fields.getCategorizedFields().entrySet()) {
-                ObjectNode explodedNode = objectMapper.createObjectNode();
-                
-                for (String field : fieldCategory.getValue()) {
-                    if (record.has(field)) {
-                        explodedNode.put(field, record.get(field).asText());
-                        ((ObjectNode) record).remove(field);
-                    }
-                }
-                ((ObjectNode) record).set(fieldCategory.getKey(), explodedNode);
-            }
-            return objectMapper.writeValueAsString(record);
+            return CategoryLayout.get().apply(record, omitEmptyCategories);
         } catch (Exception e) {
-            logger.error("Unexpected error occured while exploding structure.", e);
+            logger.error( () -> "Unexpected error occured while exploding structure.", e);
         }
         return null;
     }
-
+    
 }
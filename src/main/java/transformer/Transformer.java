@@ -2,140 +2,231 @@ package transformer;
 
 import java.math.BigInteger;
 import java.security.MessageDigest;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Map.Entry;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.kafka.streams.KeyValue;
-import org.apache.log4j.Logger;
-
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 
 import fields.Fields;
-import processor.ScyllaProcessor;
+import metrics.RateLimitedLogger;
+import metrics.ScyllaMetrics;
+import model.ProductRecord;
+import model.ValueInterner;
+import rules.CompiledRules;
+import rules.FieldRules;
+import rules.MatchBudget;
+import rules.MatchBudgetExceededException;
+import rules.NormalizationCache;
+import rules.RuleProfiler;
+import rules.ValueFinder;
+import serde.ProductRecordSerde;
+import settings.ScyllaSettings;
 
 public abstract class Transformer {
-    private static Logger logger = Logger.getLogger(Transformer.class);
+    private static RateLimitedLogger logger = RateLimitedLogger.getLogger(Transformer.class);
+    private static final NormalizationCache normalizationCache = new NormalizationCache(
+            ScyllaSettings.get().get(ScyllaSettings.NORMALIZATION_CACHE_ENTRIES), ScyllaSettings.get().get(ScyllaSettings.NORMALIZATION_CACHE_VALUE_LENGTH));
     
-    public abstract boolean preValidate(String value);
-    public abstract boolean postValidate(String value);
+    public abstract boolean preValidate(ProductRecord record);
+    public abstract boolean postValidate(ProductRecord record);
     
-    public abstract String preProcess(String value);
-    public abstract String postProcess(String value);
+    public abstract ProductRecord preProcess(ProductRecord record);
+    public abstract ProductRecord postProcess(ProductRecord record);
     
     /*
-     *  Here we set the key of the record to an MD5 hash of the URL, for the purposes of creating a unique identifier. 
+     * The value of the Category field of the records this Transformer handles
      */
-    public static KeyValue<String,String> generateKey(String key, String value) {
+    public abstract String getCategory();
+    
+    /*
+     * The top level fields a record must have a value for, checked as soon as it is parsed. Records without them are rejected
+     * as missing-fields, while preValidate still runs on every record that has them.
+     */
+    public List<String> getRequiredFields() {
+        return Collections.emptyList();
+    }
+    
+    public String getSinkTopic() {
+        return "scylla-"+getCategory().toLowerCase(Locale.ROOT)+"-sink";
+    }
+    
+    public String getRejectedTopic() {
+        return "scylla-"+getCategory().toLowerCase(Locale.ROOT)+"-rejected";
+    }
+    
+    /*
+     * The topic records of this category are routed through, when each category runs in its own sub-topology
+     */
+    public String getRoutedTopic() {
+        return "scylla-"+getCategory().toLowerCase(Locale.ROOT)+"-routed";
+    }
+    
+    /*
+     * The topic records of this category are repartitioned through by their generated key, before the stages keeping state per key
+     */
+    public String getKeyedTopic() {
+        return "scylla-"+getCategory().toLowerCase(Locale.ROOT)+"-by-url";
+    }
+    
+    public boolean preValidate(String value) {
+        return preValidate(ProductRecordSerde.fromJson(value));
+    }
+    
+    public boolean postValidate(String value) {
+        return postValidate(ProductRecordSerde.fromJson(value));
+    }
+    
+    public String preProcess(String value) {
+        return ProductRecordSerde.toJson(preProcess(ProductRecordSerde.fromJson(value)));
+    }
+    
+    public String postProcess(String value) {
+        return ProductRecordSerde.toJson(postProcess(ProductRecordSerde.fromJson(value)));
+    }
+    
+    /*
+     *  Here we set the key of the record to an MD5 hash of the URL, for the purposes of creating a unique identifier.
+     */
+    public static KeyValue<String,ProductRecord> generateKey(String key, ProductRecord record) {
         try {
             MessageDigest digester = MessageDigest.getInstance("MD5");
-            ObjectMapper objectMapper = new ObjectMapper();
             
-            JsonNode record = objectMapper.readTree(value);
+            String hashedUrl = String.format("%032x", new BigInteger(1, digester.digest(record.get(Fields.URL).getBytes())));
             
-            String hashedUrl = String.format("%032x", new BigInteger(1, digester.digest(record.get(Fields.URL).asText().getBytes())));
-            
-            return new KeyValue<String,String>(hashedUrl,value);
+            return new KeyValue<String,ProductRecord>(hashedUrl,record);
         } catch (Exception e) {
-            logger.error("An error occured while hashing Url: "+value,e);
+            logger.error( () -> "An error occured while hashing Url: "+logger.abbreviate(ProductRecordSerde.toJson(record)),e);
         }
         return null;
     }
     
-    /* 
-     * Here we normalize each field, excluding fields that cannot be resolved to a value. 
+    public static KeyValue<String,String> generateKey(String key, String value) {
+        KeyValue<String,ProductRecord> keyValue = generateKey(key, ProductRecordSerde.fromJson(value));
+        if (keyValue == null) {
+            return null;
+        }
+        return new KeyValue<String,String>(keyValue.key,value);
+    }
+    
+    /*
+     * Here we normalize each field in place, excluding fields that cannot be resolved to a value. Running out of the match
+     * budget is counted against the field being normalized, and fails the whole record. The budget is only limited while the
+     * TransformerChain processes a record, so a direct call is not limited by the records the thread processed before.
      */
-    public static String normalizeFields(String value) {
+    public static ProductRecord normalizeFields(ProductRecord record) {
         try {
-            ObjectMapper objectMapper = new ObjectMapper();
-            Map<String,String> normalizedValues = new HashMap<String,String>();
+            CompiledRules rules = CompiledRules.get();
+            ScyllaMetrics metrics = ScyllaMetrics.get();
             
-            Map<String,String> values = objectMapper.readValue(value, new TypeReference<HashMap<String,String>>(){});
-            for (Entry<String,String> fieldEntry : values.entrySet()) {
-                String normalizedValue = normalizeField(fieldEntry);
+            int position = 0;
+            while (position < record.size()) {
+                String field = record.nameAt(position);
+                if (isPassThrough(field)) {
+                    position++;
+                    continue;
+                }
+                
+                FieldRules fieldRules = rules.getFieldRules(field);
+                String normalizedValue = "";
+                if (fieldRules != null) {
+                    try {
+                        normalizedValue = normalizeField(rules, fieldRules, field, record.valueAt(position));
+                    } catch (MatchBudgetExceededException e) {
+                        metrics.getCounter("match-timeouts."+field).increment();
+                        throw e;
+                    }
+                    metrics.recordField(field, StringUtils.isNotEmpty(normalizedValue));
+                }
                 
                 if (StringUtils.isNotEmpty(normalizedValue)) {
-                    normalizedValues.put(fieldEntry.getKey(), normalizedValue);
+                    record.setValueAt(position++, normalizedValue);
+                } else {
+                    record.removeAt(position);
                 }
             }
             
             // We don't normalize these fields
-            normalizedValues.put(Fields.CATEGORY, values.get(Fields.CATEGORY));
-            normalizedValues.put(Fields.URL, values.get(Fields.URL));
-            normalizedValues.put(Fields.FOUNDTIME, values.get(Fields.FOUNDTIME));
-            normalizedValues.put(Fields.MODEL, values.get(Fields.MODEL));
-            normalizedValues.put(Fields.PRICE, values.get(Fields.PRICE));
-            
-            return objectMapper.writeValueAsString(normalizedValues);
+            for (String field : new String[] {Fields.CATEGORY, Fields.URL, Fields.FOUNDTIME, Fields.MODEL, Fields.PRICE}) {
+                if (!record.has(field)) {
+                    record.put(field, null);
+                }
+            }
+            return record;
+        } catch (MatchBudgetExceededException e) {
+            throw e;
         } catch (Exception e) {
-            logger.error("An error occured while normalizing fields: "+value,e);
+            logger.error( () -> "An error occured while normalizing fields: "+logger.abbreviate(ProductRecordSerde.toJson(record)),e);
         }
         return null;
     }
     
+    public static String normalizeFields(String value) {
+        return ProductRecordSerde.toJson(normalizeFields(ProductRecordSerde.fromJson(value)));
+    }
+    
+    private static boolean isPassThrough(String field) {
+        return Fields.CATEGORY.equals(field) || Fields.URL.equals(field) || Fields.FOUNDTIME.equals(field)
+                || Fields.MODEL.equals(field) || Fields.PRICE.equals(field);
+    }
+    
+    public static NormalizationCache getNormalizationCache() {
+        return normalizationCache;
+    }
+    
     /*
-     * Here we normalize the value of the field, by attempting to match the raw value to one of many possible values.
+     * Here we normalize the value of the field, reusing the result of an earlier record with the same raw value if possible.
+     * Normalized values are interned, so records share a single instance of each value rather than each holding a copy.
      */
-    private static String normalizeField(Entry<String,String> fieldEntry) {
-        Fields fields = new Fields();
-        HashMap<String, String[]> possibleValues = fields.getFieldValues().get(fieldEntry.getKey());
+    private static String normalizeField(CompiledRules rules, FieldRules fieldRules, String field, String value) {
+        if (value == null) {
+            return "";
+        }
         
-        String bestValue = "";
-        if (possibleValues != null) {
-            boolean foundTaggedMatch = false;
-            for (String possibleValue : possibleValues.keySet()) {
-                
-                // The FIND_TAG indicates we try to find a raw value in the data before matching a predefined value
-                if (StringUtils.equalsIgnoreCase(possibleValue, Fields.FIND_TAG)) {
-                    String foundValue = findRawValue(fieldEntry, possibleValue, possibleValues);
-                    
-                    if (StringUtils.isNotEmpty(foundValue)) {
-                        bestValue = foundValue;
-                        foundTaggedMatch = true;
-                    }
-                    
-                } else if (!foundTaggedMatch) {
-                    for (String regex : possibleValues.get(possibleValue)) {
-                        Matcher valueMatcher = Pattern.compile("(?i)"+regex).matcher(fieldEntry.getValue());
-                        
-                        if (valueMatcher.find() && (possibleValue.length() > bestValue.length())) {
-                            bestValue = possibleValue;
-                        }
-                    }
-                }
-            }
+        String normalizedValue = normalizationCache.get(rules, field, value);
+        if (normalizedValue == null) {
+            normalizedValue = ValueInterner.get().intern(normalizeField(fieldRules, value));
+            normalizationCache.put(rules, field, value, normalizedValue);
+        }
+        return normalizedValue;
+    }
+    
+    /*
+     * Here we normalize the value of the field, by attempting to match the raw value to one of many possible values.
+     * A raw value found through the FIND_TAG wins, otherwise the longest matching predefined value is used. Every rule run on a
+     * value sampled by the RuleProfiler is timed.
+     */
+    private static String normalizeField(FieldRules fieldRules, String value) {
+        CharSequence guardedValue = MatchBudget.get().guard(value);
+        boolean isProfiled = RuleProfiler.get().sample();
+        String foundValue = findRawValue(fieldRules, guardedValue, isProfiled);
+        if (StringUtils.isNotEmpty(foundValue)) {
+            return foundValue;
         }
-        return bestValue;
+        
+        String candidateValue = fieldRules.findCandidate(guardedValue, isProfiled);
+        return candidateValue != null ? candidateValue : "";
     }
     
     /*
-     * Here we attempt to find the normalized value within the raw value, by matching one of many regular expressions.
+     * Here we attempt to find the normalized value within the raw value, through one of many regular expressions or scanners.
      */
-    private static String findRawValue(Entry<String,String> fieldEntry, String possibleValue, HashMap<String, String[]> possibleValues) {
+    private static String findRawValue(FieldRules fieldRules, CharSequence value, boolean isProfiled) {
         String rawValue = "";
-        Matcher patternMatcher;
         try {
-            String[] possibleMatchers = possibleValues.get(possibleValue);
-            for (String matcher : possibleMatchers) {
-                String matcherValue = "";
-                patternMatcher = Pattern.compile("(?i)"+matcher).matcher(fieldEntry.getValue());
-                
-                if (patternMatcher.matches()) {
-                    for (int i = 1; i <= patternMatcher.groupCount(); i++) {
-                        matcherValue += " " + patternMatcher.group(i);
-                    }
+            for (ValueFinder finder : fieldRules.getFindPatterns()) {
+                long start = isProfiled ? System.nanoTime() : 0;
+                String foundValue = finder.find(value);
+                if (isProfiled) {
+                    RuleProfiler.get().record(fieldRules.getField(), Fields.FIND_TAG, finder.toString(), start, foundValue != null);
                 }
-                if (StringUtils.isNotEmpty(matcherValue)) {
-                    rawValue = matcherValue;
+                if (foundValue != null) {
+                    rawValue = foundValue;
                 }
             }
         } catch (IllegalStateException e) {
-            logger.error("Unable to match value: "+possibleValues.get(possibleValue)[0]+" in "+fieldEntry.getValue(), e);
+            logger.error( () -> "Unable to match value: "+fieldRules.getFindPatterns().get(0)+" in "+logger.abbreviate(value.toString()), e);
         }
         return rawValue.trim();
     }
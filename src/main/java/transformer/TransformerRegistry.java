@@ -0,0 +1,73 @@
+package transformer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.ServiceLoader;
+
+import org.apache.log4j.Logger;
+
+/*
+ * The Transformers available to the processor, keyed by the Category they handle. Transformers are found through
+ * ServiceLoader, so a new product type only needs its Transformer listed in META-INF/services/transformer.Transformer.
+ * Records of a category without a Transformer of its own are handled by the default Transformer, if there is one.
+ */
+public class TransformerRegistry {
+    private static Logger logger = Logger.getLogger(TransformerRegistry.class);
+    
+    private final Map<String, Transformer> transformers;
+    private final List<Transformer> orderedTransformers;
+    private final Transformer defaultTransformer;
+    
+    public TransformerRegistry(List<Transformer> transformers, String defaultCategory) {
+        this.transformers = new HashMap<String, Transformer>();
+        this.orderedTransformers = new ArrayList<Transformer>();
+        for (Transformer transformer : transformers) {
+            String category = normalizeCategory(transformer.getCategory());
+            if (this.transformers.containsKey(category)) {
+                logger.warn("Ignoring "+transformer.getClass().getName()+", as category "+transformer.getCategory()+" is already handled");
+                continue;
+            }
+            this.transformers.put(category, transformer);
+            this.orderedTransformers.add(transformer);
+        }
+        this.defaultTransformer = defaultCategory == null ? null : this.transformers.get(normalizeCategory(defaultCategory));
+    }
+    
+    public static TransformerRegistry load(String defaultCategory) {
+        List<Transformer> transformers = new ArrayList<Transformer>();
+        for (Transformer transformer : ServiceLoader.load(Transformer.class)) {
+            logger.info("Registered "+transformer.getClass().getName()+" for category "+transformer.getCategory());
+            transformers.add(transformer);
+        }
+        return new TransformerRegistry(transformers, defaultCategory);
+    }
+    
+    /*
+     * Here we return the Transformer of the category, or the default Transformer when the category has none
+     */
+    public Transformer get(String category) {
+        if (category != null) {
+            Transformer transformer = transformers.get(normalizeCategory(category));
+            if (transformer != null) {
+                return transformer;
+            }
+        }
+        return defaultTransformer;
+    }
+    
+    public List<Transformer> getTransformers() {
+        return Collections.unmodifiableList(orderedTransformers);
+    }
+    
+    public Transformer getDefaultTransformer() {
+        return defaultTransformer;
+    }
+    
+    private static String normalizeCategory(String category) {
+        return category.trim().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,38 @@
+package batch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+public class MappedLineReaderTest {
+    
+    @Test
+    public void testLinesAcrossSegments() throws IOException {
+        Path file = Files.createTempFile("scylla", ".ndjson");
+        try {
+            Files.write(file, "{\"a\":1}\r\n\n{\"bb\":22}\n{\"ccc\":333}\n{\"d\":4}".getBytes(StandardCharsets.UTF_8));
+            List<String> lines = new ArrayList<String>();
+            List<Integer> batchSizes = new ArrayList<Integer>();
+            
+            new MappedLineReader(16).forEachBatch(file, 3, (batch) -> {
+                batchSizes.add(batch.size());
+                for (byte[] line : batch) {
+                    lines.add(new String(line, StandardCharsets.UTF_8));
+                }
+            });
+            
+            assertEquals(Arrays.asList("{\"a\":1}", "{\"bb\":22}", "{\"ccc\":333}", "{\"d\":4}"), lines);
+            assertEquals(Arrays.asList(3, 1), batchSizes);
+        } finally {
+            Files.delete(file);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+public class LatencyHistogramTest {
+    
+    @Test
+    public void testBucketsCoverTheirValues() {
+        for (long nanos = 0; nanos < 100000; nanos += 7) {
+            int bucket = LatencyHistogram.bucketOf(nanos);
+            
+            assertTrue(LatencyHistogram.upperBoundOf(bucket) >= nanos);
+            assertTrue(bucket == 0 || LatencyHistogram.upperBoundOf(bucket - 1) < nanos);
+        }
+    }
+    
+    @Test
+    public void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long micros = 1; micros <= 1000; micros++) {
+            histogram.record(micros * 1000);
+        }
+        
+        assertEquals(1000, histogram.getCount());
+        assertEquals(500.5, histogram.getMeanMicros(), 0.001);
+        assertEquals(1000.0, histogram.getMaxMicros(), 0.001);
+        assertEquals(500.0, histogram.getP50Micros(), 500.0 * 0.125);
+        assertEquals(990.0, histogram.getP99Micros(), 990.0 * 0.125);
+        assertTrue(histogram.getP999Micros() <= histogram.getMaxMicros());
+    }
+}
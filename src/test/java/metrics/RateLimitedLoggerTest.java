@@ -0,0 +1,48 @@
+package metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+import org.junit.jupiter.api.Test;
+
+public class RateLimitedLoggerTest {
+    
+    @Test
+    public void testMessagesOverTheLimitAreNotBuilt() {
+        RateLimitedLogger logger = new RateLimitedLogger(Logger.getLogger(RateLimitedLoggerTest.class), 3, 0);
+        AtomicInteger built = new AtomicInteger();
+        
+        for (int i = 0; i < 100; i++) {
+            logger.warn( () -> "Message "+built.incrementAndGet());
+        }
+        
+        assertEquals(3, built.get());
+        assertEquals(97, logger.getSuppressed());
+    }
+    
+    @Test
+    public void testNoLimitWritesEveryMessage() {
+        RateLimitedLogger logger = new RateLimitedLogger(Logger.getLogger(RateLimitedLoggerTest.class), 0, 0);
+        AtomicInteger built = new AtomicInteger();
+        
+        for (int i = 0; i < 100; i++) {
+            logger.warn( () -> "Message "+built.incrementAndGet());
+        }
+        
+        assertEquals(100, built.get());
+        assertEquals(0, logger.getSuppressed());
+    }
+    
+    @Test
+    public void testAbbreviate() {
+        RateLimitedLogger logger = new RateLimitedLogger(Logger.getLogger(RateLimitedLoggerTest.class), 0, 8);
+        
+        assertEquals("{}", logger.abbreviate("{}"));
+        assertEquals("{\"Brand\"... (18 characters)", logger.abbreviate("{\"Brand\":\"MIMO\"}XX"));
+        assertEquals("{\"Brand\"... (18 bytes)", logger.abbreviate("{\"Brand\":\"MIMO\"}XX".getBytes(StandardCharsets.UTF_8)));
+        assertEquals("{}", logger.abbreviate("{}".getBytes(StandardCharsets.UTF_8)));
+    }
+}
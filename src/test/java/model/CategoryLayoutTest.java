@@ -0,0 +1,79 @@
+package model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import fields.Fields;
+
+public class CategoryLayoutTest {
+    
+    @Test
+    public void testMovesFieldsInLayoutOrder() {
+        ProductRecord record = new ProductRecord();
+        record.put(Fields.HDMI, "2");
+        record.put(Fields.BRAND, "Acer");
+        record.put(Fields.VGA, "1");
+        record.put("Unknown", "x");
+        
+        CategoryLayout.get().apply(record, false);
+        assertEquals("{Brand=Acer, Unknown=x}", record.getFields().toString());
+        assertEquals("{VGA=1, HDMI=2}", record.getCategory(Fields.CONNECTIVITY).toString());
+        assertTrue(record.getCategory(Fields.ERGONOMICS).isEmpty());
+        assertFalse(record.has(Fields.VGA));
+        assertEquals(-1, record.positionOfNumber(FieldIndex.get().numberOf(Fields.HDMI)));
+        assertEquals(0, record.positionOfNumber(FieldIndex.get().numberOf(Fields.BRAND)));
+    }
+    
+    @Test
+    public void testOmitsEmptyCategories() {
+        ProductRecord record = new ProductRecord();
+        record.put(Fields.BRAND, "Acer");
+        record.put(Fields.DVI, "1");
+        
+        CategoryLayout.get().apply(record, true);
+        assertNull(record.getCategory(Fields.ERGONOMICS));
+        assertEquals("{DVI=1}", record.getCategory(Fields.CONNECTIVITY).toString());
+        assertEquals(1, record.getCategories().size());
+    }
+    
+    @Test
+    public void testSameResultAsMovingEachField() {
+        Map<String, List<String>> categorizedFields = new Fields().getCategorizedFields();
+        String[] fields = {Fields.BRAND, Fields.URL, Fields.VGA, Fields.HDMI, Fields.DVI, Fields.VESA_MOUNT, Fields.TILT_ADJUSTMENT,
+                Fields.LEFT_SWIVEL, Fields.SCREEN_SIZE, "Unknown", "Other"};
+        Random random = new Random(5);
+        
+        for (int i = 0; i < 500; i++) {
+            ProductRecord record = new ProductRecord();
+            for (int field = 0; field < random.nextInt(12); field++) {
+                record.put(fields[random.nextInt(fields.length)], random.nextInt(5) == 0 ? null : Integer.toString(random.nextInt(100)));
+            }
+            ProductRecord expected = record.copy();
+            for (Map.Entry<String, List<String>> category : categorizedFields.entrySet()) {
+                Map<String,String> categoryFields = new LinkedHashMap<String,String>();
+                for (String field : category.getValue()) {
+                    if (expected.has(field)) {
+                        categoryFields.put(field, expected.remove(field));
+                    }
+                }
+                expected.putCategory(category.getKey(), categoryFields);
+            }
+            
+            CategoryLayout.get().apply(record, false);
+            assertEquals(expected.getFields().toString(), record.getFields().toString());
+            assertEquals(expected.getCategories().toString(), record.getCategories().toString());
+            for (String field : fields) {
+                assertEquals(expected.has(field), record.has(field));
+            }
+        }
+    }
+}
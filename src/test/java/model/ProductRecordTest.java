@@ -0,0 +1,101 @@
+package model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import fields.Fields;
+
+public class ProductRecordTest {
+    
+    @Test
+    public void testKeepsArrivalOrder() {
+        ProductRecord record = new ProductRecord();
+        record.put("Unknown", "1");
+        record.put(Fields.BRAND, "Acer");
+        record.put(Fields.URL, null);
+        record.put("Other", "2");
+        record.put(Fields.BRAND, "MIMO");
+        
+        assertEquals("{Unknown=1, Brand=MIMO, " + Fields.URL + "=null, Other=2}", record.getFields().toString());
+        assertTrue(record.has(Fields.URL));
+        assertNull(record.get(Fields.URL));
+        
+        assertEquals("1", record.remove("Unknown"));
+        assertEquals(Fields.BRAND, record.nameAt(0));
+        assertEquals("MIMO", record.get(Fields.BRAND));
+        assertEquals("2", record.get("Other"));
+        assertFalse(record.has("Unknown"));
+    }
+    
+    @Test
+    public void testSameResultAsLinkedHashMap() {
+        String[] fields = {Fields.BRAND, Fields.URL, Fields.VGA, Fields.HDMI, Fields.SCREEN_SIZE, "Unknown", "Other", Fields.CONNECTORS};
+        Random random = new Random(3);
+        
+        for (int i = 0; i < 500; i++) {
+            ProductRecord record = new ProductRecord();
+            Map<String,String> expected = new LinkedHashMap<String,String>();
+            for (int operation = 0; operation < 60; operation++) {
+                String field = fields[random.nextInt(fields.length)];
+                String value = random.nextInt(5) == 0 ? null : Integer.toString(random.nextInt(100));
+                switch (random.nextInt(4)) {
+                    case 0:
+                        assertEquals(expected.remove(field), record.remove(field));
+                        break;
+                    case 1:
+                        Iterator<Map.Entry<String,String>> expectedEntries = expected.entrySet().iterator();
+                        Iterator<Map.Entry<String,String>> entries = record.getFields().entrySet().iterator();
+                        while (expectedEntries.hasNext()) {
+                            Map.Entry<String,String> expectedEntry = expectedEntries.next();
+                            Map.Entry<String,String> entry = entries.next();
+                            if (expectedEntry.getKey().equals(field)) {
+                                expectedEntries.remove();
+                                entries.remove();
+                            } else {
+                                expectedEntry.setValue(value);
+                                entry.setValue(value);
+                            }
+                        }
+                        assertFalse(entries.hasNext());
+                        break;
+                    default:
+                        expected.put(field, value);
+                        record.put(field, value);
+                }
+                assertEquals(new ArrayList<String>(expected.keySet()), new ArrayList<String>(record.fieldNames()));
+                assertEquals(expected, record.getFields());
+                assertEquals(expected.size(), record.size());
+            }
+        }
+    }
+    
+    @Test
+    public void testCopyIsIndependent() {
+        ProductRecord record = new ProductRecord();
+        record.put(Fields.BRAND, "Acer");
+        record.put("Unknown", "1");
+        record.setUpdatedFields(new HashSet<String>(Arrays.asList(Fields.BRAND)));
+        
+        ProductRecord copy = record.copy();
+        copy.remove(Fields.BRAND);
+        copy.put(Fields.VGA, "2");
+        copy.getUpdatedFields().add(Fields.VGA);
+        
+        assertEquals("Acer", record.get(Fields.BRAND));
+        assertFalse(record.has(Fields.VGA));
+        assertFalse(record.getUpdatedFields().contains(Fields.VGA));
+        assertEquals("{Unknown=1, VGA=2}", copy.getFields().toString());
+    }
+}
@@ -0,0 +1,38 @@
+package model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import org.junit.jupiter.api.Test;
+
+public class ValueInternerTest {
+    
+    @Test
+    public void testInternReturnsCanonicalInstance() {
+        ValueInterner interner = new ValueInterner(64, 8);
+        String canonical = interner.intern(new String("G-Sync"));
+        
+        assertSame(canonical, interner.intern(new String("G-Sync")));
+        assertSame(canonical, interner.lookup("x G-Sync".toCharArray(), 2, 6));
+        assertNull(interner.lookup("FreeSync".toCharArray(), 0, 8));
+        
+        String tooLong = new String("Nvidia G-Sync");
+        assertSame(tooLong, interner.intern(tooLong));
+        assertNotSame(tooLong, interner.intern(new String("Nvidia G-Sync")));
+    }
+    
+    @Test
+    public void testStopsAddingWhenFull() {
+        ValueInterner interner = new ValueInterner(16, 8);
+        for (int i = 0; i < 100; i++) {
+            interner.intern(Integer.toString(i));
+        }
+        
+        assertEquals(8, interner.size());
+        assertSame(interner.intern(new String("0")), interner.intern(new String("0")));
+        String late = new String("99");
+        assertSame(late, interner.intern(late));
+    }
+}
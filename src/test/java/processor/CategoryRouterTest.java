@@ -0,0 +1,82 @@
+package processor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+import model.ProductRecord;
+import processor.CategoryRouter.Routed;
+import transformer.DisplayTransformer;
+import transformer.Transformer;
+import transformer.TransformerRegistry;
+
+public class CategoryRouterTest {
+    
+    private Transformer displayTransformer = new DisplayTransformer();
+    private Transformer keyboardTransformer = new Transformer() {
+        public boolean preValidate(ProductRecord record) { return true; }
+        public boolean postValidate(ProductRecord record) { return true; }
+        public ProductRecord preProcess(ProductRecord record) { return record; }
+        public ProductRecord postProcess(ProductRecord record) { return record; }
+        public String getCategory() { return "Keyboard"; }
+    };
+    
+    @Test
+    public void testReadCategory() {
+        assertEquals("Display", CategoryRouter.readCategory(bytes("{\"Brand\":\"ASUS\",\"Category\":\"Display\",\"Price\":\"$1\"}")));
+        assertEquals("Keyboard", CategoryRouter.readCategory(bytes("{\"Ergonomics\":{\"Category\":\"Nested\"},\"Category\":\"Keyboard\"}")));
+        assertNull(CategoryRouter.readCategory(bytes("{\"Brand\":\"ASUS\"}")));
+        assertNull(CategoryRouter.readCategory(bytes("{\"Category\":{\"Display\":\"true\"}}")));
+        assertNull(CategoryRouter.readCategory(bytes("not json")));
+        assertNull(CategoryRouter.readCategory(null));
+    }
+    
+    @Test
+    public void testReadFields() {
+        String[] values = CategoryRouter.readFields(bytes("{\"URL\":\"http://a\",\"Brand\":\"ASUS\",\"Category\":\"Display\"}"),
+                "Category", "URL");
+        assertEquals("Display", values[0]);
+        assertEquals("http://a", values[1]);
+        assertNull(CategoryRouter.readFields(bytes("{\"Category\":\"Display\"}"), "Category", "URL")[1]);
+        assertNull(CategoryRouter.readFields(null, "Category", "URL")[0]);
+    }
+    
+    @Test
+    public void testRoute() {
+        CategoryRouter router = new CategoryRouter(new TransformerRegistry(Arrays.asList(displayTransformer, keyboardTransformer), "Display"));
+        
+        assertSame(keyboardTransformer, router.route(bytes("{\"Category\":\"keyboard\"}")).getTransformer());
+        assertSame(displayTransformer, router.route(bytes("{\"Category\":\"Display\"}")).getTransformer());
+        assertSame(displayTransformer, router.route(bytes("{\"Category\":\"Monitor\"}")).getTransformer());
+        assertSame(displayTransformer, router.route(bytes("{\"Brand\":\"ASUS\"}")).getTransformer());
+        
+        Routed routed = router.routeWithUrl(bytes("{\"URL\":\"http://a\",\"Category\":\"Keyboard\"}"));
+        assertSame(keyboardTransformer, routed.getTransformer());
+        assertEquals("http://a", routed.getUrl());
+    }
+    
+    @Test
+    public void testRouteWithoutDefault() {
+        CategoryRouter router = new CategoryRouter(new TransformerRegistry(Arrays.asList(displayTransformer, keyboardTransformer), null));
+        
+        assertSame(keyboardTransformer, router.route(bytes("{\"Category\":\"Keyboard\"}")).getTransformer());
+        assertNull(router.route(bytes("{\"Category\":\"Monitor\"}")).getTransformer());
+    }
+    
+    @Test
+    public void testRegistryLoadsDisplayTransformer() {
+        TransformerRegistry registry = TransformerRegistry.load("Display");
+        
+        assertEquals(1, registry.getTransformers().size());
+        assertEquals(DisplayTransformer.class, registry.getDefaultTransformer().getClass());
+    }
+    
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
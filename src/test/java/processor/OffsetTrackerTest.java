@@ -0,0 +1,44 @@
+package processor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+public class OffsetTrackerTest {
+    
+    @Test
+    public void testCommitsUpToEarliestUnfinished() {
+        OffsetTracker tracker = new OffsetTracker();
+        assertEquals(-1, tracker.committableOffset());
+        
+        for (long offset = 10; offset < 15; offset++) {
+            tracker.dispatched(offset);
+        }
+        tracker.completed(11);
+        tracker.completed(12);
+        assertEquals(10, tracker.committableOffset());
+        
+        tracker.completed(10);
+        assertEquals(13, tracker.committableOffset());
+        tracker.committed(13);
+        assertEquals(-1, tracker.committableOffset());
+        
+        tracker.completed(14);
+        tracker.completed(13);
+        assertTrue(tracker.isIdle());
+        assertEquals(15, tracker.committableOffset());
+    }
+    
+    @Test
+    public void testWithdrawnOffsetIsNotCommitted() {
+        OffsetTracker tracker = new OffsetTracker();
+        tracker.dispatched(20);
+        tracker.dispatched(21);
+        tracker.withdrawn(21);
+        tracker.completed(20);
+        
+        assertTrue(tracker.isIdle());
+        assertEquals(21, tracker.committableOffset());
+    }
+}
@@ -0,0 +1,59 @@
+package processor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.jupiter.api.Test;
+
+public class OrderedWorkerPoolTest {
+    
+    @Test
+    public void testKeepsOrderPerKey() throws InterruptedException {
+        Map<String, List<Integer>> processed = new ConcurrentHashMap<String, List<Integer>>();
+        
+        try (OrderedWorkerPool pool = new OrderedWorkerPool("test-worker", 4, 8)) {
+            for (int i = 0; i < 10000; i++) {
+                String key = "url-"+(i % 37);
+                int sequence = i;
+                pool.submit(key, () -> processed.computeIfAbsent(key, (k) -> new ArrayList<Integer>()).add(sequence));
+            }
+        }
+        
+        assertEquals(37, processed.size());
+        for (Map.Entry<String, List<Integer>> keyProcessed : processed.entrySet()) {
+            List<Integer> sequences = keyProcessed.getValue();
+            assertEquals(10000 / 37 + (Integer.parseInt(keyProcessed.getKey().substring(4)) < 10000 % 37 ? 1 : 0), sequences.size());
+            for (int i = 1; i < sequences.size(); i++) {
+                assertEquals(sequences.get(i - 1) + 37, (int) sequences.get(i));
+            }
+        }
+    }
+    
+    @Test
+    public void testOfferDoesNotWaitForFullQueue() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        
+        try (OrderedWorkerPool pool = new OrderedWorkerPool("test-worker", 1, 1)) {
+            assertTrue(pool.offer("url", () -> {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }));
+            started.await();
+            assertTrue(pool.offer("url", () -> {}));
+            assertFalse(pool.offer("url", () -> {}));
+            release.countDown();
+        }
+    }
+}
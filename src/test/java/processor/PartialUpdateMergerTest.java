@@ -0,0 +1,183 @@
+package processor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Properties;
+
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.streams.StreamsConfig;
+import org.apache.kafka.streams.state.KeyValueStore;
+import org.apache.kafka.test.ProcessorTopologyTestDriver;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import config.KafkaConfig;
+import fields.Fields;
+import model.ProductRecord;
+import serde.ProductRecordSerde;
+import settings.ScyllaSettings;
+import transformer.Transformer;
+import transformer.TransformerRegistry;
+
+public class PartialUpdateMergerTest {
+    
+    private String url = "https://www.newegg.ca/Product/Product.aspx?Item=N82E16824236174";
+    private Transformer keyboardTransformer = new Transformer() {
+        public boolean preValidate(ProductRecord record) { return record.has(Fields.URL) && record.has(Fields.BRAND); }
+        public boolean postValidate(ProductRecord record) { return record.get(Fields.BRAND) != null; }
+        public ProductRecord preProcess(ProductRecord record) { return record; }
+        public ProductRecord postProcess(ProductRecord record) { return record; }
+        public String getCategory() { return "Keyboard"; }
+    };
+    private ProcessorTopologyTestDriver driver;
+    
+    @BeforeEach
+    public void createDriver() throws Exception {
+        Properties props = new Properties();
+        props.setProperty("scylla.keyboard.partial.enabled", "true");
+        ScyllaSettings settings = ScyllaSettings.load(props, new HashMap<String, String>());
+        Properties streamsProps = ScyllaTopology.streamsProperties(settings);
+        streamsProps.put(StreamsConfig.STATE_DIR_CONFIG, Files.createTempDirectory("scylla-partial-test").toString());
+        
+        TransformerRegistry registry = new TransformerRegistry(Arrays.asList(keyboardTransformer), null);
+        driver = new ProcessorTopologyTestDriver(new StreamsConfig(streamsProps), new ScyllaTopology(settings, registry).build());
+    }
+    
+    @AfterEach
+    public void closeDriver() {
+        driver.close();
+    }
+    
+    @Test
+    public void testMarkPartial() {
+        ProductRecord record = ProductRecordSerde.fromJson("{\"Category\":\"Display\",\"URL\":\""+url+"\",\"PartialUpdate\":\"true\","
+                + "\"Brand\":\"acer\",\"Connectors\":\"1 x HDMI\"}");
+        
+        PartialUpdateMerger.markPartial(record);
+        
+        assertTrue(record.isPartialUpdate());
+        assertFalse(record.has(PartialUpdateMerger.MARKER_FIELD));
+        assertTrue(record.getUpdatedFields().containsAll(Arrays.asList(Fields.URL, Fields.BRAND, Fields.CONNECTORS, Fields.HDMI, Fields.VGA)));
+        assertFalse(record.getUpdatedFields().contains(Fields.SCREEN_SIZE));
+        
+        ProductRecord fullRecord = ProductRecordSerde.fromJson("{\"Category\":\"Display\",\"URL\":\""+url+"\",\"PartialUpdate\":\"false\"}");
+        PartialUpdateMerger.markPartial(fullRecord);
+        assertFalse(fullRecord.isPartialUpdate());
+    }
+    
+    @Test
+    public void testMergeReplacesOnlyUpdatedFields() {
+        ProductRecord lastRecord = ProductRecordSerde.fromJson("{\"Category\":\"Display\",\"Brand\":\"MIMO\",\"ScreenSize\":\"27\","
+                + "\"HDMI\":\"1\",\"VGA\":\"1\",\"FoundTime\":\"542143542\",\"URL\":\""+url+"\",\"Price\":\"$150.40\"}");
+        ProductRecord update = PartialUpdateMerger.markPartial(ProductRecordSerde.fromJson("{\"Category\":\"Display\",\"URL\":\""+url+"\","
+                + "\"PartialUpdate\":\"true\",\"FoundTime\":\"542199999\",\"Brand\":\"Acer\",\"Connectors\":\"2 x HDMI\"}"));
+        update.remove(Fields.CONNECTORS);
+        update.put(Fields.HDMI, "2");
+        update.put(Fields.PRICE, null);
+        
+        ProductRecord merged = PartialUpdateMerger.merge(lastRecord, update);
+        
+        assertEquals("Acer", merged.get(Fields.BRAND));
+        assertEquals("27", merged.get(Fields.SCREEN_SIZE));
+        assertEquals("2", merged.get(Fields.HDMI));
+        assertFalse(merged.has(Fields.VGA));
+        assertEquals("542199999", merged.get(Fields.FOUNDTIME));
+        assertEquals("$150.40", merged.get(Fields.PRICE));
+        assertEquals(Fields.BRAND, merged.nameAt(1));
+    }
+    
+    @Test
+    public void testPartialUpdateIsEmittedAsFullRecord() {
+        process("{\"Category\":\"Keyboard\",\"URL\":\""+url+"\",\"Brand\":\"acer\",\"ScreenSize\":\"27 inch\"}");
+        ProducerRecord<String, String> full = readOutput(keyboardTransformer.getSinkTopic());
+        assertNotNull(full);
+        
+        process("{\"Category\":\"Keyboard\",\"URL\":\""+url+"\",\"PartialUpdate\":\"true\",\"ScreenSize\":\"24 in\"}");
+        ProducerRecord<String, String> merged = readOutput(keyboardTransformer.getSinkTopic());
+        
+        assertNotNull(merged);
+        assertEquals(full.key(), merged.key());
+        ProductRecord record = ProductRecordSerde.fromJson(merged.value());
+        assertEquals("Acer", record.get(Fields.BRAND));
+        assertEquals("24", record.get(Fields.SCREEN_SIZE));
+        assertFalse(record.has(PartialUpdateMerger.MARKER_FIELD));
+        assertNull(readOutput(keyboardTransformer.getRejectedTopic()));
+    }
+    
+    @Test
+    public void testPartialUpdateWithAnotherSourceKeyIsMerged() {
+        process("scraper-1", "{\"Category\":\"Keyboard\",\"URL\":\""+url+"\",\"Brand\":\"acer\",\"ScreenSize\":\"27 inch\"}");
+        ProducerRecord<String, String> full = readOutput(keyboardTransformer.getSinkTopic());
+        assertNotNull(full);
+        assertEquals(full.key(), readOutput(keyboardTransformer.getKeyedTopic()).key());
+        
+        process("scraper-2", "{\"Category\":\"Keyboard\",\"URL\":\""+url+"\",\"PartialUpdate\":\"true\",\"ScreenSize\":\"24 in\"}");
+        ProducerRecord<String, String> keyed = readOutput(keyboardTransformer.getKeyedTopic());
+        assertEquals(full.key(), keyed.key());
+        assertTrue(keyed.value().contains(PartialUpdateMerger.MARKER_FIELD));
+        
+        ProducerRecord<String, String> merged = readOutput(keyboardTransformer.getSinkTopic());
+        assertNotNull(merged);
+        assertEquals(full.key(), merged.key());
+        ProductRecord record = ProductRecordSerde.fromJson(merged.value());
+        assertEquals("Acer", record.get(Fields.BRAND));
+        assertEquals("24", record.get(Fields.SCREEN_SIZE));
+        assertNull(readOutput(keyboardTransformer.getRejectedTopic()));
+    }
+    
+    @Test
+    public void testLastRecordIsReadAfterSchemaChange() {
+        process("{\"Category\":\"Keyboard\",\"URL\":\""+url+"\",\"Brand\":\"acer\",\"ScreenSize\":\"27 inch\"}");
+        ProducerRecord<String, String> full = readOutput(keyboardTransformer.getSinkTopic());
+        assertNotNull(full);
+        
+        // The stored record is replaced by one written under another schema, with a field the current schema does not have
+        KeyValueStore<String, byte[]> store = driver.getKeyValueStore("keyboard-last-records");
+        ProductRecord lastRecord = ProductRecordSerde.fromJson(new String(store.get(full.key()), StandardCharsets.UTF_8));
+        lastRecord.put("RetiredField", "kept");
+        store.put(full.key(), ProductRecordSerde.toJson(lastRecord).getBytes(StandardCharsets.UTF_8));
+        
+        process("{\"Category\":\"Keyboard\",\"URL\":\""+url+"\",\"PartialUpdate\":\"true\",\"ScreenSize\":\"24 in\"}");
+        ProducerRecord<String, String> merged = readOutput(keyboardTransformer.getSinkTopic());
+        
+        assertNotNull(merged);
+        ProductRecord record = ProductRecordSerde.fromJson(merged.value());
+        assertEquals("Acer", record.get(Fields.BRAND));
+        assertEquals("24", record.get(Fields.SCREEN_SIZE));
+        assertEquals("kept", record.get("RetiredField"));
+        assertNull(readOutput(keyboardTransformer.getRejectedTopic()));
+    }
+    
+    @Test
+    public void testPartialUpdateWithoutLastRecordIsRejected() {
+        String update = "{\"Category\":\"Keyboard\",\"URL\":\""+url+"\",\"PartialUpdate\":\"true\",\"ScreenSize\":\"24 in\"}";
+        process(update);
+        
+        ProducerRecord<String, String> rejected = readOutput(keyboardTransformer.getRejectedTopic());
+        assertNotNull(rejected);
+        assertEquals(update, rejected.value());
+        assertNull(readOutput(keyboardTransformer.getSinkTopic()));
+    }
+    
+    private void process(String value) {
+        process("source-key", value);
+    }
+    
+    private void process(String key, String value) {
+        driver.process(KafkaConfig.DISPLAY_SOURCE_TOPIC, key, value, Serdes.String().serializer(), Serdes.String().serializer());
+    }
+    
+    private ProducerRecord<String, String> readOutput(String topic) {
+        return driver.readOutput(topic, Serdes.String().deserializer(), Serdes.String().deserializer());
+    }
+}
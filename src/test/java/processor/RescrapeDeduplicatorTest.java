@@ -0,0 +1,52 @@
+package processor;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.junit.jupiter.api.Test;
+
+import model.ProductRecord;
+import serde.ProductRecordSerde;
+
+public class RescrapeDeduplicatorTest {
+    
+    private String normalizedRecord = "{\"Category\":\"Display\",\"Brand\":\"MIMO\",\"ScreenSize\":\"27\",\"FoundTime\":\"542143542\","
+            + "\"URL\":\"https://www.newegg.ca/Product/Product.aspx?Item=N82E16824236174\",\"Price\":\"$150.40\","
+            + "\"Ergonomics\":{\"TiltAdjustment\":\"false\"},\"Connectivity\":{\"VGA\":\"1\"}}";
+    
+    @Test
+    public void testFingerprintIgnoresFoundTimeAndFieldOrder() throws NoSuchAlgorithmException {
+        MessageDigest digester = MessageDigest.getInstance("MD5");
+        
+        String rescraped = "{\"Brand\":\"MIMO\",\"Category\":\"Display\",\"FoundTime\":\"542199999\",\"ScreenSize\":\"27\","
+                + "\"URL\":\"https://www.newegg.ca/Product/Product.aspx?Item=N82E16824236174\",\"Price\":\"$150.40\","
+                + "\"Connectivity\":{\"VGA\":\"1\"},\"Ergonomics\":{\"TiltAdjustment\":\"false\"}}";
+        String repriced = normalizedRecord.replace("$150.40", "$140.40");
+        
+        byte[] fingerprint = RescrapeDeduplicator.fingerprint(digester, ProductRecordSerde.fromJson(normalizedRecord));
+        
+        assertArrayEquals(fingerprint, RescrapeDeduplicator.fingerprint(digester, ProductRecordSerde.fromJson(rescraped)));
+        assertFalse(MessageDigest.isEqual(fingerprint, RescrapeDeduplicator.fingerprint(digester, ProductRecordSerde.fromJson(repriced))));
+    }
+    
+    @Test
+    public void testShouldEmit() throws NoSuchAlgorithmException {
+        MessageDigest digester = MessageDigest.getInstance("MD5");
+        ProductRecord record = ProductRecordSerde.fromJson(normalizedRecord);
+        byte[] fingerprint = RescrapeDeduplicator.fingerprint(digester, record);
+        byte[] entry = RescrapeDeduplicator.toEntry(fingerprint, 1000L);
+        
+        record.put("Brand", "Acer");
+        byte[] changedFingerprint = RescrapeDeduplicator.fingerprint(digester, record);
+        
+        assertTrue(RescrapeDeduplicator.shouldEmit(null, fingerprint, 1000L, 0));
+        assertFalse(RescrapeDeduplicator.shouldEmit(entry, fingerprint, 5000L, 0));
+        assertTrue(RescrapeDeduplicator.shouldEmit(entry, changedFingerprint, 5000L, 0));
+        assertFalse(RescrapeDeduplicator.shouldEmit(entry, fingerprint, 4999L, 4000L));
+        assertTrue(RescrapeDeduplicator.shouldEmit(entry, fingerprint, 5000L, 4000L));
+    }
+}
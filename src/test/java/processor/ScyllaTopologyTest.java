@@ -0,0 +1,137 @@
+package processor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Properties;
+
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.streams.StreamsConfig;
+import org.apache.kafka.test.ProcessorTopologyTestDriver;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import config.KafkaConfig;
+import fields.Fields;
+import model.ProductRecord;
+import settings.ScyllaSettings;
+import transformer.Transformer;
+import transformer.TransformerRegistry;
+
+public class ScyllaTopologyTest {
+    
+    private Transformer keyboardTransformer = new Transformer() {
+        public boolean preValidate(ProductRecord record) { return record.has(Fields.URL); }
+        public boolean postValidate(ProductRecord record) { return true; }
+        public ProductRecord preProcess(ProductRecord record) { return record; }
+        public ProductRecord postProcess(ProductRecord record) { return record; }
+        public String getCategory() { return "Keyboard"; }
+    };
+    private ProcessorTopologyTestDriver driver;
+    
+    @BeforeEach
+    public void createDriver() throws Exception {
+        driver = createDriver(new Properties());
+    }
+    
+    private ProcessorTopologyTestDriver createDriver(Properties props) throws Exception {
+        ScyllaSettings settings = ScyllaSettings.load(props, new HashMap<String, String>());
+        Properties streamsProps = ScyllaTopology.streamsProperties(settings);
+        streamsProps.put(StreamsConfig.STATE_DIR_CONFIG, Files.createTempDirectory("scylla-topology-test").toString());
+        
+        TransformerRegistry registry = new TransformerRegistry(Arrays.asList(keyboardTransformer), null);
+        return new ProcessorTopologyTestDriver(new StreamsConfig(streamsProps), new ScyllaTopology(settings, registry).build());
+    }
+    
+    @AfterEach
+    public void closeDriver() {
+        driver.close();
+    }
+    
+    @Test
+    public void testAcceptedRecordIsKeyedByUrl() {
+        process("{\"Category\":\"Keyboard\",\""+Fields.URL+"\":\"http://example.com/keyboard\"}");
+        
+        ProducerRecord<String, String> output = readOutput(keyboardTransformer.getSinkTopic());
+        assertNotNull(output);
+        assertEquals(32, output.key().length());
+        assertNull(readOutput(keyboardTransformer.getRejectedTopic()));
+    }
+    
+    @Test
+    public void testPreValidationRejects() {
+        process("{\"Category\":\"Keyboard\"}");
+        
+        assertNotNull(readOutput(keyboardTransformer.getRejectedTopic()));
+        assertNull(readOutput(keyboardTransformer.getSinkTopic()));
+    }
+    
+    @Test
+    public void testUnknownCategoryRejects() {
+        process("{\"Category\":\"Mouse\",\""+Fields.URL+"\":\"http://example.com/mouse\"}");
+        
+        ProducerRecord<String, String> output = readOutput(KafkaConfig.DISPLAY_REJECTED_TOPIC);
+        assertNotNull(output);
+        assertEquals("unknown-category:source-key", output.key());
+        assertNull(readOutput(keyboardTransformer.getSinkTopic()));
+    }
+    
+    @Test
+    public void testRejectedKeyIsPrefixedWithReason() {
+        process("{\"Category\":\"Keyboard\"}");
+        assertEquals("pre-validation:source-key", readOutput(keyboardTransformer.getRejectedTopic()).key());
+        
+        process("{\"Category\":\"Keyboard\",");
+        assertEquals("malformed:source-key", readOutput(keyboardTransformer.getRejectedTopic()).key());
+        
+        process("{\"Category\":\"Mouse\"}");
+        assertEquals("unknown-category:source-key", readOutput(KafkaConfig.DISPLAY_REJECTED_TOPIC).key());
+    }
+    
+    @Test
+    public void testRejectedKeyIsKeptWithoutReasonKey() throws Exception {
+        driver.close();
+        Properties props = new Properties();
+        props.setProperty("scylla.rejected.reason.key", "false");
+        driver = createDriver(props);
+        
+        process("{\"Category\":\"Keyboard\"}");
+        assertEquals("source-key", readOutput(keyboardTransformer.getRejectedTopic()).key());
+    }
+    
+    @Test
+    public void testRescrapeWithAnotherSourceKeyIsDropped() throws Exception {
+        driver.close();
+        Properties props = new Properties();
+        props.setProperty("scylla.keyboard.dedup.enabled", "true");
+        driver = createDriver(props);
+        
+        String record = "{\"Category\":\"Keyboard\",\""+Fields.URL+"\":\"http://example.com/keyboard\"}";
+        process("first-key", record);
+        ProducerRecord<String, String> keyed = readOutput(keyboardTransformer.getKeyedTopic());
+        assertNotNull(keyed);
+        assertEquals(keyed.key(), readOutput(keyboardTransformer.getSinkTopic()).key());
+        
+        process("second-key", record);
+        assertEquals(keyed.key(), readOutput(keyboardTransformer.getKeyedTopic()).key());
+        assertNull(readOutput(keyboardTransformer.getSinkTopic()));
+    }
+    
+    private void process(String value) {
+        process("source-key", value);
+    }
+    
+    private void process(String key, String value) {
+        driver.process(KafkaConfig.DISPLAY_SOURCE_TOPIC, key, value, Serdes.String().serializer(), Serdes.String().serializer());
+    }
+    
+    private ProducerRecord<String, String> readOutput(String topic) {
+        return driver.readOutput(topic, Serdes.String().deserializer(), Serdes.String().deserializer());
+    }
+}
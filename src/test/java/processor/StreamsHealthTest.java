@@ -0,0 +1,101 @@
+package processor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.kafka.common.MetricName;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.streams.KafkaStreams.State;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class StreamsHealthTest {
+    
+    @Test
+    public void testReadyOnlyWhileRunning() {
+        StreamsHealth health = new StreamsHealth(new MonitoredClientSupplier());
+        assertTrue(health.isLive());
+        assertFalse(health.isReady());
+        
+        health.onChange(State.REBALANCING, State.CREATED);
+        assertFalse(health.isReady());
+        health.onChange(State.RUNNING, State.REBALANCING);
+        assertTrue(health.isReady());
+    }
+    
+    @Test
+    public void testFailedStreamsAreNotLive() throws Exception {
+        StreamsHealth health = new StreamsHealth(new MonitoredClientSupplier());
+        health.onChange(State.RUNNING, State.REBALANCING);
+        health.onChange(State.ERROR, State.RUNNING);
+        
+        assertFalse(health.isLive());
+        assertTrue(health.isFailed());
+        health.awaitStop();
+    }
+    
+    @Test
+    public void testClosedStreamsAreLiveUntilExit() {
+        StreamsHealth health = new StreamsHealth(new MonitoredClientSupplier());
+        health.onChange(State.RUNNING, State.REBALANCING);
+        health.setClosing();
+        health.onChange(State.PENDING_SHUTDOWN, State.RUNNING);
+        health.onChange(State.NOT_RUNNING, State.PENDING_SHUTDOWN);
+        
+        assertTrue(health.isLive());
+        assertFalse(health.isFailed());
+    }
+    
+    @Test
+    public void testEndpointsReportHealth() throws Exception {
+        StreamsHealth health = new StreamsHealth(new MonitoredClientSupplier());
+        try (HealthServer server = new HealthServer(0, health)) {
+            assertEquals(200, get(server, "/health/live").getResponseCode());
+            assertEquals(503, get(server, "/health/ready").getResponseCode());
+            
+            health.onChange(State.RUNNING, State.REBALANCING);
+            HttpURLConnection ready = get(server, "/health/ready");
+            assertEquals(200, ready.getResponseCode());
+            try (InputStream body = ready.getInputStream()) {
+                Map<?, ?> status = new ObjectMapper().readValue(body, Map.class);
+                assertEquals("RUNNING", status.get("state"));
+                assertEquals(0, status.get("totalLag"));
+            }
+        }
+    }
+    
+    @Test
+    public void testLagMetricNames() {
+        Map<String, String> tags = new HashMap<String, String>();
+        tags.put("client-id", "scylla-StreamThread-1-consumer");
+        assertEquals(new TopicPartition("scylla-display-source", 3), MonitoredClientSupplier.lagPartitionOf(
+                new MetricName("scylla-display-source-3.records-lag", "consumer-fetch-manager-metrics", "", tags)));
+        assertNull(MonitoredClientSupplier.lagPartitionOf(
+                new MetricName("scylla-display-source-3.records-lag-max", "consumer-fetch-manager-metrics", "", tags)));
+        assertNull(MonitoredClientSupplier.lagPartitionOf(new MetricName("records-lag-max", "consumer-fetch-manager-metrics", "", tags)));
+        
+        tags.put("topic", "scylla-display-source");
+        tags.put("partition", "7");
+        assertEquals(new TopicPartition("scylla-display-source", 7), MonitoredClientSupplier.lagPartitionOf(
+                new MetricName("records-lag", "consumer-fetch-manager-metrics", "", tags)));
+        assertNull(MonitoredClientSupplier.lagPartitionOf(new MetricName("records-lag", "other-metrics", "", Collections.<String, String>emptyMap())));
+    }
+    
+    private static HttpURLConnection get(HealthServer server, String path) throws Exception {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:"+server.getPort()+path).openConnection();
+        connection.setConnectTimeout((int) TimeUnit.SECONDS.toMillis(5));
+        connection.setReadTimeout((int) TimeUnit.SECONDS.toMillis(5));
+        return connection;
+    }
+}
@@ -0,0 +1,173 @@
+package processor;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Properties;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import fields.Fields;
+import metrics.RejectionReason;
+import model.ProductRecord;
+import rules.MatchBudget;
+import serde.ProductRecordSerializer;
+import settings.ScyllaSettings;
+import transformer.DisplayTransformer;
+import transformer.Transformer;
+
+public class TransformerChainTest {
+    
+    private static final Pattern CATASTROPHIC = Pattern.compile("(a+)+\\1b");
+    
+    private Transformer backtrackingTransformer = new Transformer() {
+        public boolean preValidate(ProductRecord record) { return record.has(Fields.URL); }
+        public boolean postValidate(ProductRecord record) { return true; }
+        public ProductRecord preProcess(ProductRecord record) {
+            CATASTROPHIC.matcher(MatchBudget.get().guard(record.get(Fields.MODEL))).find();
+            return record;
+        }
+        public ProductRecord postProcess(ProductRecord record) { return record; }
+        public String getCategory() { return "Keyboard"; }
+    };
+    
+    @AfterEach
+    public void resetBudget() {
+        MatchBudget.get().reset(0);
+    }
+    
+    @Test
+    public void testOversizedRecordIsQuarantinedUnparsed() {
+        TransformerChain chain = createChain("scylla.guard.max.record.bytes", "64");
+        byte[] value = record("http://example.com/keyboard", "a very long model name which takes the record over its limit").getBytes(StandardCharsets.UTF_8);
+        
+        ProductRecord record = chain.read(value);
+        assertTrue(record.isMalformed());
+        
+        TransformerChain.Outcome outcome = chain.process("source-key", record);
+        assertFalse(outcome.isAccepted());
+        assertEquals(RejectionReason.RECORD_TOO_LARGE, outcome.getRejectionReason());
+        assertArrayEquals(value, new ProductRecordSerializer().serialize(null, outcome.getRecord()));
+    }
+    
+    @Test
+    public void testLongFieldIsQuarantined() {
+        TransformerChain chain = createChain("scylla.guard.max.field.length", "8");
+        
+        ProductRecord record = chain.read(bytes(record("http://example.com/keyboard", "K70")));
+        assertEquals(RejectionReason.FIELD_TOO_LARGE, record.getQuarantineReason());
+        
+        TransformerChain.Outcome outcome = chain.process("source-key", record);
+        assertFalse(outcome.isAccepted());
+        assertEquals(RejectionReason.FIELD_TOO_LARGE, outcome.getRejectionReason());
+    }
+    
+    @Test
+    public void testExhaustedMatchBudgetIsQuarantined() {
+        TransformerChain chain = createChain("scylla.guard.match.budget", "100000");
+        byte[] value = bytes(record("http://example.com/keyboard", "aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaac"));
+        
+        TransformerChain.Outcome outcome = chain.process("source-key", chain.read(value));
+        assertFalse(outcome.isAccepted());
+        assertEquals(RejectionReason.MATCH_BUDGET_EXCEEDED, outcome.getRejectionReason());
+        assertArrayEquals(value, new ProductRecordSerializer().serialize(null, outcome.getRecord()));
+        
+        // The budget ends with the record, so rules called outside of the chain afterwards are not limited by it
+        assertEquals(Long.MAX_VALUE, MatchBudget.get().getRemaining());
+        assertNotNull(Transformer.normalizeFields(record("http://example.com/keyboard", "K70")));
+    }
+    
+    @Test
+    public void testMalformedRecordIsQuarantined() {
+        TransformerChain chain = new TransformerChain(backtrackingTransformer, ScyllaSettings.load(new Properties(), new HashMap<String, String>()));
+        String[] malformedRecords = {"", "garbage", "[1,2]", "{\"URL\":\"x\"", "{\"URL\":[\"x\"]}", "{\"Ergonomics\":{\"Pivot\":{}}}",
+                "{\"URL\":\"x\",}", "{\"URL\":\"x\" \"Brand\":\"y\"}", "\"URL\"", "{\"Category\":\"Keyboard\",\"URL\":"};
+        
+        for (String malformedRecord : malformedRecords) {
+            byte[] value = bytes(malformedRecord);
+            TransformerChain.Outcome outcome = chain.process("source-key", chain.read(value));
+            assertEquals(RejectionReason.MALFORMED, outcome.getRejectionReason(), malformedRecord);
+            assertArrayEquals(value, new ProductRecordSerializer().serialize(null, outcome.getRecord()));
+        }
+    }
+    
+    @Test
+    public void testRecordWithoutRequiredFieldsIsQuarantined() {
+        TransformerChain chain = new TransformerChain(new DisplayTransformer(false), ScyllaSettings.load(new Properties(), new HashMap<String, String>()));
+        String[] incompleteRecords = {"{\"Category\":\"Display\",\"URL\":\"http://example.com/display\",\"Brand\":\"MIMO\"}",
+                "{\"URL\":null,\"Brand\":\"MIMO\",\"ModelNumber\":\"UM-760\",\"FoundTime\":\"1\"}",
+                "{\"Ergonomics\":{\"URL\":\"x\"},\"Brand\":\"MIMO\",\"ModelNumber\":\"UM-760\",\"FoundTime\":\"1\"}"};
+        
+        for (String incompleteRecord : incompleteRecords) {
+            byte[] value = bytes(incompleteRecord);
+            ProductRecord record = chain.read(value);
+            assertEquals(RejectionReason.MISSING_FIELDS, record.getQuarantineReason(), incompleteRecord);
+            TransformerChain.Outcome outcome = chain.process("source-key", record);
+            assertEquals(RejectionReason.MISSING_FIELDS, outcome.getRejectionReason());
+            assertArrayEquals(value, new ProductRecordSerializer().serialize(null, outcome.getRecord()));
+        }
+    }
+    
+    @Test
+    public void testPartialUpdateOnlyNeedsUrlWhenMerged() {
+        ScyllaSettings settings = ScyllaSettings.load(new Properties(), new HashMap<String, String>());
+        TransformerChain chain = new TransformerChain(new DisplayTransformer(false), settings, true);
+        
+        assertFalse(chain.read(bytes("{\"URL\":\"x\",\"PartialUpdate\":\"true\",\"Brand\":\"MIMO\"}")).isQuarantined());
+        assertTrue(chain.read(bytes("{\"PartialUpdate\":\"true\",\"Brand\":\"MIMO\"}")).isQuarantined());
+        assertTrue(chain.read(bytes("{\"URL\":\"x\",\"PartialUpdate\":\"false\",\"Brand\":\"MIMO\"}")).isQuarantined());
+        
+        TransformerChain unmergedChain = new TransformerChain(new DisplayTransformer(false), settings);
+        assertTrue(unmergedChain.read(bytes("{\"URL\":\"x\",\"PartialUpdate\":\"true\",\"Brand\":\"MIMO\"}")).isQuarantined());
+    }
+    
+    @Test
+    public void testFailedStageIsQuarantined() {
+        Transformer failingTransformer = new Transformer() {
+            public boolean preValidate(ProductRecord record) { return true; }
+            public boolean postValidate(ProductRecord record) { return true; }
+            public ProductRecord preProcess(ProductRecord record) { return null; }
+            public ProductRecord postProcess(ProductRecord record) { return record; }
+            public String getCategory() { return "Keyboard"; }
+        };
+        TransformerChain chain = new TransformerChain(failingTransformer, ScyllaSettings.load(new Properties(), new HashMap<String, String>()));
+        byte[] value = bytes(record("http://example.com/keyboard", "K70"));
+        
+        TransformerChain.Outcome outcome = chain.process("source-key", chain.read(value));
+        assertEquals(RejectionReason.PROCESSING_ERROR, outcome.getRejectionReason());
+        assertArrayEquals(value, new ProductRecordSerializer().serialize(null, outcome.getRecord()));
+        
+        outcome = chain.process("source-key", chain.read(bytes("{\"Category\":\"Keyboard\"}")));
+        assertEquals(RejectionReason.PROCESSING_ERROR, outcome.getRejectionReason());
+        assertEquals("source-key", outcome.getKey());
+    }
+    
+    @Test
+    public void testRecordWithinLimitsIsAccepted() {
+        TransformerChain chain = createChain("scylla.guard.match.budget", "100000");
+        
+        TransformerChain.Outcome outcome = chain.process("source-key", chain.read(bytes(record("http://example.com/keyboard", "K70 aab"))));
+        assertTrue(outcome.isAccepted());
+    }
+    
+    private TransformerChain createChain(String setting, String value) {
+        Properties properties = new Properties();
+        properties.setProperty(setting, value);
+        return new TransformerChain(backtrackingTransformer, ScyllaSettings.load(properties, new HashMap<String, String>()));
+    }
+    
+    private static String record(String url, String model) {
+        return "{\"Category\":\"Keyboard\",\""+Fields.URL+"\":\""+url+"\",\""+Fields.MODEL+"\":\""+model+"\"}";
+    }
+    
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,75 @@
+package processor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Properties;
+
+import org.junit.jupiter.api.Test;
+
+import fields.Fields;
+import metrics.ScyllaMetrics;
+import metrics.Stage;
+import settings.ScyllaSettings;
+import transformer.DisplayTransformer;
+import transformer.Transformer;
+import transformer.TransformerRegistry;
+
+public class WarmUpTest {
+    
+    private TransformerRegistry registry = new TransformerRegistry(Arrays.<Transformer>asList(new DisplayTransformer()), Fields.DISPLAY);
+    
+    @Test
+    public void testBundledCorpusIsDisplayRecords() throws Exception {
+        List<byte[]> corpus = WarmUp.loadCorpus(null);
+        
+        assertFalse(corpus.isEmpty());
+        for (byte[] value : corpus) {
+            assertEquals(Fields.DISPLAY, CategoryRouter.readCategory(value));
+        }
+    }
+    
+    @Test
+    public void testConfiguredCorpusSkipsBlankLines() throws Exception {
+        Path corpusFile = Files.createTempFile("scylla-warmup", ".ndjson");
+        try {
+            Files.write(corpusFile, "{\"Category\":\"Display\"}\n\n{\"Category\":\"Display\"}\n".getBytes(StandardCharsets.UTF_8));
+            assertEquals(2, WarmUp.loadCorpus(corpusFile.toString()).size());
+        } finally {
+            Files.delete(corpusFile);
+        }
+    }
+    
+    @Test
+    public void testRunsConfiguredPassesWithoutReporting() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("scylla.warmup.duration.ms", "0");
+        properties.setProperty("scylla.warmup.iterations", "3");
+        WarmUp warmUp = new WarmUp(registry, ScyllaSettings.load(properties, new HashMap<String, String>()));
+        List<byte[]> corpus = WarmUp.loadCorpus(null);
+        
+        warmUp.run(corpus);
+        assertEquals(3, warmUp.getPassCount());
+        assertEquals(3L * corpus.size(), warmUp.getRecordCount());
+        assertEquals(0, ScyllaMetrics.get().getStageLatency(Stage.NORMALIZE).getCount());
+        assertEquals(0, Transformer.getNormalizationCache().size());
+    }
+    
+    @Test
+    public void testRunsOnceWithoutLimits() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("scylla.warmup.duration.ms", "0");
+        WarmUp warmUp = new WarmUp(registry, ScyllaSettings.load(properties, new HashMap<String, String>()));
+        
+        warmUp.run(WarmUp.loadCorpus(null));
+        assertEquals(1, warmUp.getPassCount());
+        assertTrue(warmUp.getRecordCount() > 0);
+    }
+}
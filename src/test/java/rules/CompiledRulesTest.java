@@ -0,0 +1,96 @@
+package rules;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import fields.Fields;
+
+public class CompiledRulesTest {
+    
+    @Test
+    public void testFieldRulesAreSplitAndOrdered() {
+        Map<String, String[]> panelTypes = new LinkedHashMap<String, String[]>();
+        panelTypes.put("VA", new String[] {"va"});
+        panelTypes.put(Fields.FIND_TAG, new String[] {"(\\d+) panel"});
+        panelTypes.put("MVA", new String[] {"mva"});
+        panelTypes.put("IPS", new String[] {"ips", "in-plane"});
+        
+        Map<String, Map<String, String[]>> fieldValues = new LinkedHashMap<String, Map<String, String[]>>();
+        fieldValues.put(Fields.PANEL_TYPE, panelTypes);
+        
+        CompiledRules rules = CompiledRules.compile(fieldValues, new LinkedHashMap<String, String>(), new LinkedHashMap<String, String>());
+        FieldRules panelTypeRules = rules.getFieldRules(Fields.PANEL_TYPE);
+        
+        assertEquals(1, panelTypeRules.getFindPatterns().size());
+        assertEquals(3, panelTypeRules.getCandidates().size());
+        assertEquals("MVA", panelTypeRules.getCandidates().get(0).getValue());
+        assertEquals("IPS", panelTypeRules.getCandidates().get(1).getValue());
+        assertEquals("VA", panelTypeRules.getCandidates().get(2).getValue());
+        assertTrue(panelTypeRules.getCandidates().get(1).getPatterns().get(1).matcher("IN-PLANE switching").find());
+    }
+    
+    @Test
+    public void testExpansionRulesKeepOrder() {
+        Map<String, String> connectorTypes = new LinkedHashMap<String, String>();
+        connectorTypes.put("hdmi", Fields.HDMI);
+        connectorTypes.put("d-sub|vga", Fields.VGA);
+        
+        CompiledRules rules = CompiledRules.compile(new LinkedHashMap<String, Map<String, String[]>>(), new LinkedHashMap<String, String>(), connectorTypes);
+        
+        assertEquals(Fields.HDMI, rules.getConnectorRules().get(0).getField());
+        assertEquals(Fields.VGA, rules.getConnectorRules().get(1).getField());
+        assertTrue(rules.getConnectorRules().get(1).getPattern().matcher("2 x D-Sub").find());
+    }
+    
+    @Test
+    public void testFindCandidateIsLongestMatch() {
+        Map<String, String[]> brands = new LinkedHashMap<String, String[]>();
+        brands.put("Geek", new String[] {"geek"});
+        brands.put("Geekbuying", new String[] {"geek\\s*buying"});
+        brands.put("LG", new String[] {"lg"});
+        brands.put("LG Electronics", new String[] {"lg\\s+electronics"});
+        brands.put("ViewSonic", new String[] {"view ?sonic", "vsonic"});
+        brands.put("Acer", new String[] {"acer"});
+        brands.put("G-Sync", new String[] {"g[- ]?sync"});
+        
+        Map<String, Map<String, String[]>> fieldValues = new LinkedHashMap<String, Map<String, String[]>>();
+        fieldValues.put(Fields.BRAND, brands);
+        FieldRules brandRules = CompiledRules.compile(fieldValues, new LinkedHashMap<String, String>(), new LinkedHashMap<String, String>())
+                .getFieldRules(Fields.BRAND);
+        
+        assertEquals("Geekbuying", brandRules.findCandidate("geek   Buying"));
+        assertEquals("Geek", brandRules.findCandidate("geek buy"));
+        assertEquals("LG", brandRules.findCandidate("LGelectronics"));
+        assertEquals("LG Electronics", brandRules.findCandidate("lg\telectronics"));
+        assertEquals("ViewSonic", brandRules.findCandidate("VSonic"));
+        assertNull(brandRules.findCandidate("ac er"));
+        
+        String[] words = {"geek", "buying", "lg", "electronics", "view", "sonic", "vsonic", "ac", "er", "g", "-", "sync", " ", "  ", "X"};
+        Random random = new Random(5);
+        for (int i = 0; i < 2000; i++) {
+            StringBuilder value = new StringBuilder();
+            for (int w = random.nextInt(6); w >= 0; w--) {
+                value.append(words[random.nextInt(words.length)]);
+            }
+            assertEquals(scanCandidates(brandRules, value), brandRules.findCandidate(value), value.toString());
+        }
+    }
+    
+    private static String scanCandidates(FieldRules fieldRules, CharSequence value) {
+        for (FieldRules.Candidate candidate : fieldRules.getCandidates()) {
+            for (RulePattern pattern : candidate.getPatterns()) {
+                if (pattern.matcher(value).find()) {
+                    return candidate.getValue();
+                }
+            }
+        }
+        return null;
+    }
+}
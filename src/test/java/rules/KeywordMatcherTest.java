@@ -0,0 +1,104 @@
+package rules;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+public class KeywordMatcherTest {
+    
+    private List<RulePattern> patterns = Arrays.asList(new RulePattern("dvi"), new RulePattern("displayport"),
+            new RulePattern("d-sub|vga"), new RulePattern("hdmi"), new RulePattern("port"), new RulePattern("usb\\s*c"),
+            new RulePattern("height"), new RulePattern("vesa\\."));
+    
+    @Test
+    public void testLiteralAlternatives() {
+        assertEquals(Arrays.asList("d-sub", "vga"), KeywordMatcher.literalAlternatives("D-Sub|VGA"));
+        assertEquals(Arrays.asList("vesa."), KeywordMatcher.literalAlternatives("vesa\\."));
+        assertNull(KeywordMatcher.literalAlternatives("usb\\s*c"));
+        assertNull(KeywordMatcher.literalAlternatives("hdmi|"));
+    }
+    
+    @Test
+    public void testKeywordAlternatives() {
+        assertEquals(Arrays.asList("geekbuying"), KeywordMatcher.keywordAlternatives("Geek\\s*Buying"));
+        assertEquals(Arrays.asList("lgelectronics", "lg"), KeywordMatcher.keywordAlternatives("lg ?electronics|lg"));
+        assertEquals(Arrays.asList("vesa."), KeywordMatcher.keywordAlternatives("vesa\\."));
+        assertNull(KeywordMatcher.keywordAlternatives("g[- ]?sync"));
+        assertNull(KeywordMatcher.keywordAlternatives("free-?sync"));
+        assertNull(KeywordMatcher.keywordAlternatives("\\s+|hdmi"));
+    }
+    
+    @Test
+    public void testMatchesEveryRule() {
+        KeywordMatcher matcher = new KeywordMatcher(patterns);
+        boolean[] matches = new boolean[matcher.size()];
+        
+        matcher.match("1 x DisplayPort 1.2, 2 x D-SUB, usb c", matches);
+        
+        assertArrayEquals(new boolean[] {false, true, true, false, true, true, false, false}, matches);
+        
+        BitSet matchSet = new BitSet();
+        matcher.match("1 x DisplayPort 1.2, 2 x D-SUB, usb c", matchSet);
+        assertEquals("{1, 2, 4, 5}", matchSet.toString());
+    }
+    
+    @Test
+    public void testSameResultAsFind() {
+        String[] words = {"dvi", "display", "port", "d-sub", "vga", "hdmi", "usb", "c", "height", "vesa.", "vesa", "x", "1", " ", "DVI-D", "Hdmi"};
+        KeywordMatcher matcher = new KeywordMatcher(patterns);
+        Random random = new Random(7);
+        
+        for (int i = 0; i < 2000; i++) {
+            StringBuilder line = new StringBuilder();
+            for (int w = random.nextInt(6); w >= 0; w--) {
+                line.append(words[random.nextInt(words.length)]);
+            }
+            
+            boolean[] matches = new boolean[matcher.size()];
+            matcher.match(line, matches);
+            
+            List<Boolean> expected = new ArrayList<Boolean>();
+            List<Boolean> actual = new ArrayList<Boolean>();
+            for (int rule = 0; rule < patterns.size(); rule++) {
+                expected.add(patterns.get(rule).matcher(line).find());
+                actual.add(matches[rule]);
+            }
+            assertEquals(expected, actual, line.toString());
+        }
+    }
+    
+    @Test
+    public void testIgnoringWhitespaceFlagsEveryFoundRule() {
+        List<RulePattern> brands = Arrays.asList(new RulePattern("geek\\s*buying"), new RulePattern("geek"), new RulePattern("lg ?electronics"),
+                new RulePattern("acer"), new RulePattern("g[- ]?sync"), new RulePattern("view\\s+sonic"));
+        String[] words = {"geek", "buying", "lg", "electronics", "ac", "er", "acer", "g", "-", "sync", "view", "sonic", " ", "  ", "\t", "X"};
+        KeywordMatcher matcher = KeywordMatcher.ignoringWhitespace(brands);
+        Random random = new Random(11);
+        
+        for (int i = 0; i < 2000; i++) {
+            StringBuilder line = new StringBuilder();
+            for (int w = random.nextInt(6); w >= 0; w--) {
+                line.append(words[random.nextInt(words.length)]);
+            }
+            
+            boolean[] matches = new boolean[matcher.size()];
+            matcher.match(line, matches);
+            
+            for (int rule = 0; rule < brands.size(); rule++) {
+                if (brands.get(rule).matcher(line).find()) {
+                    assertTrue(matches[rule], brands.get(rule)+" in "+line);
+                }
+            }
+            assertTrue(matches[4], line.toString());
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package rules;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+public class MatchBudgetTest {
+    
+    private static final Pattern CATASTROPHIC = Pattern.compile("(a+)+\\1b");
+    
+    @AfterEach
+    public void resetBudget() {
+        MatchBudget.get().reset(0);
+    }
+    
+    @Test
+    public void testUnlimitedBudgetReturnsValue() {
+        MatchBudget.get().reset(0);
+        String value = "27\" 1440p";
+        
+        assertSame(value, MatchBudget.get().guard(value));
+    }
+    
+    @Test
+    public void testGuardedValueMatchesLikeValue() {
+        MatchBudget.get().reset(1000);
+        CharSequence guarded = MatchBudget.get().guard("Refresh 144Hz");
+        
+        assertTrue(Pattern.compile("(\\d+)\\s*hz", Pattern.CASE_INSENSITIVE).matcher(guarded).find());
+        assertEquals("Refresh 144Hz", guarded.toString());
+        assertTrue(MatchBudget.get().getRemaining() < 1000);
+    }
+    
+    @Test
+    public void testBacktrackingPatternIsInterrupted() {
+        StringBuilder value = new StringBuilder();
+        for (int i = 0; i < 40; i++) {
+            value.append('a');
+        }
+        value.append('c');
+        MatchBudget.get().reset(100000);
+        
+        assertThrows(MatchBudgetExceededException.class, () -> CATASTROPHIC.matcher(MatchBudget.get().guard(value.toString())).find());
+        assertEquals(0, MatchBudget.get().getRemaining());
+    }
+    
+    @Test
+    public void testResetRestoresBudget() {
+        MatchBudget.get().reset(10);
+        CharSequence guarded = MatchBudget.get().guard("a long enough value");
+        assertThrows(MatchBudgetExceededException.class, () -> Pattern.compile("\\d").matcher(guarded.subSequence(2, guarded.length())).find());
+        
+        MatchBudget.get().reset(10);
+        assertEquals(10, MatchBudget.get().getRemaining());
+        assertTrue(Pattern.compile("or").matcher(MatchBudget.get().guard("short")).find());
+    }
+}
@@ -0,0 +1,78 @@
+package rules;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import fields.Fields;
+
+public class NormalizationCacheTest {
+    
+    private CompiledRules emptyRules() {
+        return CompiledRules.compile(new LinkedHashMap<String, Map<String, String[]>>(), new LinkedHashMap<String, String>(),
+                new LinkedHashMap<String, String>());
+    }
+    
+    @Test
+    public void testHitsAndMisses() {
+        NormalizationCache cache = new NormalizationCache();
+        CompiledRules rules = emptyRules();
+        
+        assertNull(cache.get(rules, Fields.RESPONSE_TIME, "4 ms"));
+        cache.put(rules, Fields.RESPONSE_TIME, "4 ms", "4");
+        cache.put(rules, Fields.PANEL_TYPE, "foo", "");
+        
+        assertEquals("4", cache.get(rules, Fields.RESPONSE_TIME, "4 ms"));
+        assertEquals("", cache.get(rules, Fields.PANEL_TYPE, "foo"));
+        assertNull(cache.get(rules, Fields.REFRESH_RATE, "4 ms"));
+        assertEquals(2, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+    }
+    
+    @Test
+    public void testDisabledCacheKeepsNothing() {
+        NormalizationCache cache = new NormalizationCache();
+        CompiledRules rules = emptyRules();
+        cache.put(rules, Fields.RESPONSE_TIME, "4 ms", "4");
+        
+        cache.setEnabled(false);
+        assertEquals(0, cache.size());
+        cache.put(rules, Fields.RESPONSE_TIME, "4 ms", "4");
+        assertNull(cache.get(rules, Fields.RESPONSE_TIME, "4 ms"));
+        assertEquals(0, cache.size());
+        
+        cache.setEnabled(true);
+        cache.put(rules, Fields.RESPONSE_TIME, "4 ms", "4");
+        assertEquals("4", cache.get(rules, Fields.RESPONSE_TIME, "4 ms"));
+    }
+    
+    @Test
+    public void testLeastRecentlyUsedIsEvicted() {
+        NormalizationCache cache = new NormalizationCache(16, NormalizationCache.DEFAULT_MAX_VALUE_LENGTH);
+        CompiledRules rules = emptyRules();
+        
+        for (int i = 0; i < 1000; i++) {
+            cache.put(rules, Fields.HDMI, String.valueOf(i), String.valueOf(i));
+        }
+        
+        assertEquals(16, cache.size());
+        assertEquals(1000 - 16, cache.getEvictionCount());
+        assertEquals("999", cache.get(rules, Fields.HDMI, "999"));
+    }
+    
+    @Test
+    public void testRuleChangeClearsCache() {
+        NormalizationCache cache = new NormalizationCache();
+        CompiledRules oldRules = emptyRules();
+        CompiledRules newRules = emptyRules();
+        
+        cache.put(oldRules, Fields.BRAND, "mimo", "MIMO");
+        
+        assertNull(cache.get(newRules, Fields.BRAND, "mimo"));
+        assertEquals(0, cache.size());
+    }
+}
@@ -0,0 +1,68 @@
+package rules;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+public class NumberScannerTest {
+    
+    private String[] supportedRegexes = {
+            "(\\d+(?:\\.\\d+)?)\\s*(?:\"|in|inch|inches)",
+            "(\\d+)\\s*ms",
+            "(\\d+)\\s*(?:hz|hertz)",
+            "(\\d+)",
+            "~?(\\d+\\.\\d+)\\s*mm.*",
+            "(\\d+)\\s*ppi.*",
+            "(\\d+(?:\\.\\d+)?)\\s*cd/m2",
+            ".*?~?(\\d+)\\s*mm.*",
+            "[-+]?(\\d+)\\s*degrees",
+            "(\\d+)\\*",
+            "(\\d+)\\s?deg",
+            "(\\d+)\\s*cm",
+            "(\\d+\\.\\d+)%",
+            ".*?(\\d+(?:\\.\\d+)?)\\s?in.*?"
+    };
+    
+    @Test
+    public void testUnsupportedRegexesAreLeftToRegex() {
+        assertNull(NumberScanner.compile("(\\d+:\\d+)"));
+        assertNull(NumberScanner.compile(".*?(\\d+)\\s*mm\\s*x\\s*(\\d+)\\s*mm.*"));
+        assertNull(NumberScanner.compile("\\d+\\s*hz\\s*-\\s*(\\d+)\\s*hz"));
+        assertNull(NumberScanner.compile("(\\d+)\\s*(?:hz|h[e]rtz)"));
+        assertEquals(RulePattern.class, ValueScanners.finderFor("(\\d+:\\d+)").getClass());
+        assertEquals(NumberScanner.class, ValueScanners.finderFor("(\\d+)\\s*ms").getClass());
+    }
+    
+    @Test
+    public void testScannerMatchesRegex() {
+        assertEquals(" 24.3", NumberScanner.compile(supportedRegexes[0]).find("24.3 inches"));
+        assertEquals(" 455.50", NumberScanner.compile(supportedRegexes[6]).find("455.50cd/m2"));
+        assertEquals(" 100", NumberScanner.compile(supportedRegexes[7]).find("VESA ~100 MM"));
+        assertNull(NumberScanner.compile(supportedRegexes[1]).find("5 ms GTG"));
+    }
+    
+    @Test
+    public void testScannerAgreesWithRegexOnRandomValues() {
+        String alphabet = "0123456789....  ~-+%*\"inchesINCHESmsMSHzhertzcd/m2ppiPPIdegreesDEGx\t\n\r\u2028";
+        Random random = new Random(42);
+        
+        for (String regex : supportedRegexes) {
+            NumberScanner scanner = NumberScanner.compile(regex);
+            RulePattern pattern = new RulePattern(regex);
+            assertNotNull(scanner, regex);
+            
+            for (int i = 0; i < 20000; i++) {
+                StringBuilder value = new StringBuilder();
+                int length = random.nextInt(16);
+                for (int j = 0; j < length; j++) {
+                    value.append(alphabet.charAt(random.nextInt(alphabet.length())));
+                }
+                assertEquals(pattern.find(value), scanner.find(value), regex+" on \""+value+"\"");
+            }
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package rules;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+public class RuleProfilerTest {
+    
+    private RuleProfiler profiler = RuleProfiler.get();
+    
+    @AfterEach
+    public void resetProfiler() {
+        profiler.setSampleRate(0);
+        profiler.reset();
+    }
+    
+    @Test
+    public void testDisabledProfilerNeverSamples() {
+        for (int i = 0; i < 100; i++) {
+            assertFalse(profiler.sample());
+        }
+        assertEquals(0, profiler.getSampledValueCount());
+    }
+    
+    @Test
+    public void testSamplesOneInEveryRate() {
+        profiler.setSampleRate(4);
+        int sampled = 0;
+        for (int i = 0; i < 400; i++) {
+            if (profiler.sample()) {
+                sampled++;
+            }
+        }
+        assertEquals(100, sampled);
+        assertEquals(100, profiler.getSampledValueCount());
+    }
+    
+    @Test
+    public void testProfiledCandidatesAreRecorded() {
+        Map<String, String[]> possibleValues = new LinkedHashMap<String, String[]>();
+        possibleValues.put("Geekbuying", new String[] {"geek\\s*buying"});
+        possibleValues.put("Acer", new String[] {"acer"});
+        FieldRules fieldRules = new FieldRules("Brand", possibleValues);
+        
+        assertEquals("Geekbuying", fieldRules.findCandidate("geek buying", true));
+        assertEquals("Geekbuying", fieldRules.findCandidate("Geek Buying", true));
+        assertEquals("Acer", fieldRules.findCandidate("acer", false));
+        
+        Map<String, RuleProfiler.RuleStats> stats = statsByRegex();
+        assertEquals(2, stats.get(RuleProfiler.KEYWORD_INDEX).getCalls());
+        assertEquals(2, stats.get("geek\\s*buying").getCalls());
+        assertEquals(2, stats.get("geek\\s*buying").getHits());
+        assertEquals("Brand", stats.get("geek\\s*buying").getField());
+        assertEquals("Geekbuying", stats.get("geek\\s*buying").getValue());
+        assertFalse(stats.containsKey("acer"));
+    }
+    
+    @Test
+    public void testProbeReportsFallbackPatterns() {
+        KeywordMatcher matcher = new KeywordMatcher(Arrays.asList(new RulePattern("hdmi"), new RulePattern("usb\\s*c")));
+        List<Integer> rules = new ArrayList<Integer>();
+        List<Boolean> hits = new ArrayList<Boolean>();
+        boolean[] matched = new boolean[2];
+        
+        matcher.match("1 x usb c", matched, (rule, start, isHit) -> {
+            rules.add(rule);
+            hits.add(isHit);
+        });
+        assertEquals(Arrays.asList(-1, 1), rules);
+        assertEquals(Arrays.asList(false, true), hits);
+        assertTrue(matched[1]);
+    }
+    
+    @Test
+    public void testReportAndDumpOrderByTime() throws Exception {
+        profiler.record("Brand", "Acer", "acer", System.nanoTime() - 1000, true);
+        profiler.record("Brand", "Geekbuying", "geek\\s*buying", System.nanoTime() - 5000000, false);
+        
+        assertEquals("geek\\s*buying", profiler.getTop(1).get(0).getRegex());
+        assertTrue(profiler.report(1).contains("Brand / Geekbuying / geek\\s*buying"));
+        assertFalse(profiler.report(1).contains("Brand / Acer"));
+        
+        Path dumpFile = Files.createTempFile("scylla-rule-profile", ".tsv");
+        try {
+            profiler.dump(dumpFile);
+            List<String> lines = Files.readAllLines(dumpFile, StandardCharsets.UTF_8);
+            assertEquals(3, lines.size());
+            assertTrue(lines.get(1).startsWith("Brand\tGeekbuying\tgeek\\s*buying\t1\t0\t"));
+            assertTrue(lines.get(2).startsWith("Brand\tAcer\tacer\t1\t1\t"));
+        } finally {
+            Files.delete(dumpFile);
+        }
+    }
+    
+    private Map<String, RuleProfiler.RuleStats> statsByRegex() {
+        Map<String, RuleProfiler.RuleStats> stats = new LinkedHashMap<String, RuleProfiler.RuleStats>();
+        for (RuleProfiler.RuleStats ruleStats : profiler.getTop(Integer.MAX_VALUE)) {
+            stats.put(ruleStats.getRegex(), ruleStats);
+        }
+        return stats;
+    }
+}
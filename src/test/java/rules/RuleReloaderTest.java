@@ -0,0 +1,88 @@
+package rules;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import fields.Fields;
+
+public class RuleReloaderTest {
+    
+    private String brandRules = "{\"fieldValues\":{\"Brand\":{\"ASUS\":[\"asus\"],\"Acer\":[\"acer\"]}},"
+            + "\"connectorTypes\":{\"hdmi\":\"HDMI\"}}";
+    
+    @AfterEach
+    public void restoreRules() {
+        CompiledRules.set(CompiledRules.fromFields(new Fields()));
+    }
+    
+    @Test
+    public void testFieldsRoundTrip() throws IOException {
+        CompiledRules fieldsRules = CompiledRules.fromFields(new Fields());
+        CompiledRules documentRules = RulesDocument.parse(RulesDocument.fromFields(new Fields()));
+        
+        assertEquals(fieldsRules.getFieldRules().keySet(), documentRules.getFieldRules().keySet());
+        assertEquals(fieldsRules.getConnectorRules().size(), documentRules.getConnectorRules().size());
+        assertEquals(fieldsRules.getErgonomicRules().size(), documentRules.getErgonomicRules().size());
+    }
+    
+    @Test
+    public void testInvalidRulesAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> RulesDocument.parse(bytes("{\"fieldValues\":{\"Brand\":{\"ASUS\":[\"(asus\"]}}}")));
+        assertThrows(IllegalArgumentException.class, () -> RulesDocument.parse(bytes("{\"fieldValues\":{}}")));
+        assertThrows(IllegalArgumentException.class, () -> RulesDocument.parse(bytes("{\"fieldValues\":")));
+        
+        CompiledRules rules = CompiledRules.get();
+        try (RuleReloader reloader = new RuleReloader()) {
+            assertFalse(reloader.reload("test", bytes("not rules")));
+        }
+        assertSame(rules, CompiledRules.get());
+    }
+    
+    @Test
+    public void testReloadSwapsRules() throws InterruptedException {
+        CompiledRules rules = CompiledRules.get();
+        try (RuleReloader reloader = new RuleReloader()) {
+            reloader.submit("test", bytes(brandRules));
+            for (int i = 0; i < 100 && CompiledRules.get() == rules; i++) {
+                Thread.sleep(50);
+            }
+        }
+        
+        assertNotSame(rules, CompiledRules.get());
+        assertEquals(1, CompiledRules.get().getFieldRules().size());
+        assertEquals("ASUS", CompiledRules.get().getFieldRules(Fields.BRAND).getCandidates().get(0).getValue());
+        
+        boolean[] matchedConnectors = new boolean[1];
+        CompiledRules.get().getConnectorMatcher().match("HDMI x2", matchedConnectors);
+        assertTrue(matchedConnectors[0]);
+    }
+    
+    @Test
+    public void testWatchLoadsFile() throws IOException {
+        Path rulesFile = Files.createTempFile("scylla-rules", ".json");
+        try (RuleReloader reloader = new RuleReloader()) {
+            Files.write(rulesFile, bytes(brandRules));
+            
+            assertTrue(reloader.watch(rulesFile, 60000L));
+            assertEquals(1, CompiledRules.get().getFieldRules().size());
+        } finally {
+            Files.delete(rulesFile);
+        }
+    }
+    
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
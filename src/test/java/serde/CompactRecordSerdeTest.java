@@ -0,0 +1,86 @@
+package serde;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+import fields.Fields;
+import model.ProductRecord;
+
+public class CompactRecordSerdeTest {
+    
+    private String nestedRecord = "{\"Category\":\"Display\",\"Brand\":\"Geekbuying\",\"ScreenSize\":\"24.3\","
+            + "\"URL\":\"https://www.newegg.ca/Product/Product.aspx?Item=N82E16824236174\",\"Price\":null,\"Unknown\":\"-12\","
+            + "\"Ergonomics\":{\"VesaMount\":\"100 150\",\"TiltAdjustment\":\"false\",\"BackwardTilt\":\"007\"},"
+            + "\"Connectivity\":{\"VGA\":\"1\",\"DVI\":\"true\"},\"Extras\":{\"Weight\":\"0.50\"}}";
+    
+    @Test
+    public void testRoundTrip() {
+        CompactRecordSerde serde = new CompactRecordSerde();
+        
+        byte[] compact = serde.serializer().serialize(null, ProductRecordSerde.fromJson(nestedRecord));
+        ProductRecord record = serde.deserializer().deserialize(null, compact);
+        
+        assertTrue(CompactRecordDeserializer.isCompact(compact));
+        assertFalse(record.isMalformed());
+        assertEquals(nestedRecord, ProductRecordSerde.toJson(record));
+        assertTrue(compact.length < nestedRecord.length() / 2, compact.length+" bytes");
+    }
+    
+    @Test
+    public void testNumbersAreReadBackAsTheSameString() {
+        for (String value : new String[] {"0", "-1", "24.3", "0.05", "-0.5", "1920", "999999999999999999", "-0", "-0.0", "007",
+                "1.", ".5", "1e3", "+5", "24.30", "1..2", "-", "1920x1080", "9999999999999999999", "", "true", "TRUE"}) {
+            ProductRecord record = new ProductRecord();
+            record.put(Fields.SCREEN_SIZE, value);
+            
+            byte[] compact = new CompactRecordSerializer().serialize(null, record);
+            
+            assertEquals(value, new CompactRecordDeserializer().deserialize(null, compact).get(Fields.SCREEN_SIZE), value);
+        }
+        assertEquals(CompactRecordSerializer.TYPE_DECIMAL, CompactRecordSerializer.typeOf("24.30"));
+        assertEquals(CompactRecordSerializer.TYPE_INTEGER, CompactRecordSerializer.typeOf("-12"));
+        assertEquals(CompactRecordSerializer.TYPE_STRING, CompactRecordSerializer.typeOf("-0"));
+    }
+    
+    @Test
+    public void testJsonFallback() {
+        byte[] json = nestedRecord.getBytes(StandardCharsets.UTF_8);
+        CompactRecordDeserializer deserializer = new CompactRecordDeserializer();
+        
+        assertFalse(CompactRecordDeserializer.isCompact(json));
+        assertEquals(nestedRecord, ProductRecordSerde.toJson(deserializer.deserialize(null, json)));
+        assertEquals(nestedRecord, deserializer.toJson(new CompactRecordSerializer().serialize(null, ProductRecordSerde.fromJson(nestedRecord))));
+    }
+    
+    @Test
+    public void testRecordIsOnlyReadWithItsSchema() {
+        RecordSchema writerSchema = new RecordSchema(Arrays.asList("Brand", "Category", "Connectivity", "VGA"));
+        byte[] compact = new CompactRecordSerializer(writerSchema).serialize(null, ProductRecordSerde.fromJson(nestedRecord));
+        
+        assertTrue(new CompactRecordDeserializer().deserialize(null, compact).isMalformed());
+        
+        RecordSchema parsedSchema = RecordSchema.parse("# version "+writerSchema.getVersion()+"\n"+writerSchema);
+        assertEquals(writerSchema.getVersion(), parsedSchema.getVersion());
+        assertEquals(nestedRecord, new CompactRecordDeserializer(parsedSchema).toJson(compact));
+        
+        byte[] truncated = Arrays.copyOf(compact, compact.length - 1);
+        assertTrue(new CompactRecordDeserializer(parsedSchema).deserialize(null, truncated).isMalformed());
+    }
+    
+    @Test
+    public void testSchemaFromFields() {
+        RecordSchema schema = RecordSchema.fromFields(new Fields());
+        
+        assertTrue(schema.idOf(Fields.BRAND) > 0);
+        assertTrue(schema.idOf(Fields.ERGONOMICS) > 0);
+        assertEquals(Fields.URL, schema.nameOf(schema.idOf(Fields.URL)));
+        assertEquals(0, schema.idOf("Unknown"));
+        assertEquals(schema.getVersion(), RecordSchema.fromFields(new Fields()).getVersion());
+    }
+}
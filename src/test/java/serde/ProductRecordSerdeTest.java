@@ -0,0 +1,54 @@
+package serde;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+import model.ProductRecord;
+
+public class ProductRecordSerdeTest {
+    
+    private String nestedRecord = "{\"Category\":\"Display\",\"Brand\":\"Geekbuying\",\"ScreenSize\":\"24.3\","
+            + "\"URL\":\"https://www.newegg.ca/Product/Product.aspx?Item=N82E16824236174\",\"Price\":null,"
+            + "\"Ergonomics\":{\"VesaMount\":\"100 150\",\"TiltAdjustment\":\"false\"},"
+            + "\"Connectivity\":{\"VGA\":\"1\",\"DVI\":\"true\"}}";
+    
+    @Test
+    public void testRoundTrip() {
+        ProductRecord record = ProductRecordSerde.fromJson(nestedRecord);
+        
+        assertFalse(record.isMalformed());
+        assertEquals("Geekbuying", record.get("Brand"));
+        assertTrue(record.has("Price"));
+        assertEquals("100 150", record.getCategory("Ergonomics").get("VesaMount"));
+        
+        assertEquals(nestedRecord, ProductRecordSerde.toJson(record));
+    }
+    
+    @Test
+    public void testScalarValuesAreKeptAsText() {
+        ProductRecord record = ProductRecordSerde.fromJson("{\"VGA\":1,\"DVI\":true,\"ScreenSize\":24.30,\"Brand\":\"Ac\\u00e9r\"}");
+        
+        assertEquals("1", record.get("VGA"));
+        assertEquals("true", record.get("DVI"));
+        assertEquals("24.30", record.get("ScreenSize"));
+        assertEquals("Ac\u00e9r", record.get("Brand"));
+        assertTrue(ProductRecordSerde.fromJson("{\"Brand\":[\"mimo\"]}").isMalformed());
+    }
+    
+    @Test
+    public void testMalformedRecordIsForwardedUntouched() {
+        byte[] raw = "{\"Brand\":\"mimo\",".getBytes(StandardCharsets.UTF_8);
+        ProductRecordSerde serde = new ProductRecordSerde();
+        
+        ProductRecord record = serde.deserializer().deserialize(null, raw);
+        
+        assertTrue(record.isMalformed());
+        assertArrayEquals(raw, serde.serializer().serialize(null, record));
+    }
+}
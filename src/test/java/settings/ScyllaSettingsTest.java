@@ -0,0 +1,99 @@
+package settings;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import org.apache.kafka.streams.StreamsConfig;
+import org.junit.jupiter.api.Test;
+
+public class ScyllaSettingsTest {
+    
+    @Test
+    public void testPrecedence() throws IOException {
+        Path settingsFile = Files.createTempFile("scylla", ".properties");
+        try {
+            Files.write(settingsFile, ("scylla.streams.threads=3\nscylla.producer.linger.ms=20\nscylla.streams.commit.interval.ms=500\n")
+                    .getBytes(StandardCharsets.UTF_8));
+            
+            Properties systemProperties = new Properties();
+            systemProperties.setProperty(ScyllaSettings.CONFIG_FILE, settingsFile.toString());
+            systemProperties.setProperty("scylla.streams.threads", "8");
+            systemProperties.setProperty("scylla.profile", "throughput");
+            Map<String, String> environment = new HashMap<String, String>();
+            environment.put("SCYLLA_STREAMS_THREADS", "4");
+            environment.put("SCYLLA_PRODUCER_LINGER_MS", "10");
+            
+            ScyllaSettings settings = ScyllaSettings.load(systemProperties, environment);
+            
+            assertEquals(Profile.THROUGHPUT, settings.getProfile());
+            assertEquals(8, (int) settings.get(ScyllaSettings.STREAM_THREADS));
+            assertEquals(10L, (long) settings.get(ScyllaSettings.PRODUCER_LINGER_MS));
+            assertEquals(500L, (long) settings.get(ScyllaSettings.COMMIT_INTERVAL_MS));
+            assertEquals("lz4", settings.get(ScyllaSettings.PRODUCER_COMPRESSION));
+            assertEquals(0, (int) settings.get(ScyllaSettings.STANDBY_REPLICAS));
+        } finally {
+            Files.delete(settingsFile);
+        }
+    }
+    
+    @Test
+    public void testStreamsProperties() {
+        Properties systemProperties = new Properties();
+        systemProperties.setProperty("scylla.profile", "latency");
+        systemProperties.setProperty("scylla.kafka.producer.buffer.memory", "1048576");
+        
+        ScyllaSettings settings = ScyllaSettings.load(systemProperties, new HashMap<String, String>());
+        Properties streamsProperties = settings.streamsProperties();
+        
+        assertEquals(0L, streamsProperties.get(StreamsConfig.CACHE_MAX_BYTES_BUFFERING_CONFIG));
+        assertEquals(100L, streamsProperties.get(StreamsConfig.COMMIT_INTERVAL_MS_CONFIG));
+        assertEquals("1048576", streamsProperties.get("producer.buffer.memory"));
+        assertEquals("1048576", settings.producerProperties().get("buffer.memory"));
+        assertFalse(settings.consumerProperties().containsKey("buffer.memory"));
+    }
+    
+    @Test
+    public void testCredentialsAreMaskedInEffectiveValues() {
+        Properties systemProperties = new Properties();
+        systemProperties.setProperty("scylla.kafka.sasl.jaas.config", "PlainLoginModule required username=\"scylla\" password=\"hunter2\";");
+        systemProperties.setProperty("scylla.kafka.ssl.keystore.password", "keystore-secret");
+        systemProperties.setProperty("scylla.kafka.producer.ssl.key.password", "key-secret");
+        systemProperties.setProperty("scylla.kafka.producer.buffer.memory", "1048576");
+        
+        ScyllaSettings settings = ScyllaSettings.load(systemProperties, new HashMap<String, String>());
+        String values = settings.describeEffectiveValues();
+        
+        assertFalse(values.contains("hunter2"), values);
+        assertFalse(values.contains("keystore-secret"), values);
+        assertFalse(values.contains("key-secret"), values);
+        assertTrue(values.contains("scylla.kafka.sasl.jaas.config = ******"), values);
+        assertTrue(values.contains("scylla.kafka.producer.buffer.memory = 1048576"), values);
+        assertEquals("keystore-secret", settings.streamsProperties().get("ssl.keystore.password"));
+    }
+    
+    @Test
+    public void testDynamicAndInvalidSettings() {
+        Properties systemProperties = new Properties();
+        systemProperties.setProperty("scylla.display.dedup.enabled", "true");
+        systemProperties.setProperty("scylla.streams.threads", "many");
+        
+        ScyllaSettings settings = ScyllaSettings.load(systemProperties, new HashMap<String, String>());
+        
+        assertTrue(settings.getBoolean("scylla.display.dedup.enabled", false));
+        assertFalse(settings.getBoolean("scylla.keyboard.dedup.enabled", false));
+        assertThrows(IllegalArgumentException.class, () -> settings.get(ScyllaSettings.STREAM_THREADS));
+        
+        systemProperties.setProperty("scylla.profile", "fastest");
+        assertThrows(IllegalArgumentException.class, () -> ScyllaSettings.load(systemProperties, new HashMap<String, String>()));
+    }
+}